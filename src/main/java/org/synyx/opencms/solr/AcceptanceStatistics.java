@@ -0,0 +1,53 @@
+package org.synyx.opencms.solr;
+
+/**
+ * Learns which part of the hits returned by Solr are typically readable for a permission context. The ratio is kept
+ * as an exponentially weighted moving average, so it follows changes of the content without jumping on every search.
+ */
+public class AcceptanceStatistics {
+
+    private static final double WEIGHT = 0.2;
+    private static final double MIN_RATIO = 0.01;
+    private static final int MAX_CONTEXTS = 1000;
+
+    private final BoundedCache<String, Ratio> ratios = new BoundedCache<String, Ratio>(MAX_CONTEXTS, 0);
+
+    /**
+     * Returns the part of the hits that is typically readable.
+     * @param context the permission context
+     * @return the ratio between 0.01 and 1, 1 if nothing is known about the context yet
+     */
+    public double getRatio(String context) {
+        Ratio ratio = ratios.get(context);
+        return ratio == null ? 1d : ratio.value;
+    }
+
+    /**
+     * Records the outcome of a search.
+     * @param context the permission context
+     * @param examined the number of hits that have been checked
+     * @param accepted the number of hits that were readable
+     */
+    public void record(String context, int examined, int accepted) {
+        if (examined == 0) {
+            return;
+        }
+        double observed = Math.max(MIN_RATIO, (double) accepted / examined);
+        Ratio ratio = ratios.get(context);
+        if (ratio == null) {
+            ratios.put(context, new Ratio(observed));
+        } else {
+            // concurrent updates may get lost, which doesn't matter for an average
+            ratio.value = ratio.value + WEIGHT * (observed - ratio.value);
+        }
+    }
+
+    private static class Ratio {
+
+        private volatile double value;
+
+        Ratio(double value) {
+            this.value = value;
+        }
+    }
+}
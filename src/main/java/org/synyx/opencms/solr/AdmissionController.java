@@ -0,0 +1,260 @@
+package org.synyx.opencms.solr;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of searches that run on an index at the same time. Searches over the limit wait in a bounded
+ * queue for a free slot; if the queue is full or the slot isn't free within the queue timeout the search is rejected
+ * right away with a {@link SearchRejectedException}, so an overloaded index answers quickly instead of piling up
+ * request threads.
+ * <p>
+ * Searches in the online project and searches of editors in offline projects have separate limits, so a burst of
+ * public traffic doesn't lock out the editors and the other way round.
+ */
+public class AdmissionController {
+
+    /**
+     * The classes of searches that are limited separately.
+     */
+    public enum SearchClass {
+
+        /** Searches in the online project, i.e. of the public site. */
+        ONLINE,
+        /** Searches in offline projects, i.e. of the editors. */
+        OFFLINE
+    }
+
+    private final String indexName;
+    private final long queueTimeoutMillis;
+    private final Map<SearchClass, Lane> lanes = new EnumMap<SearchClass, Lane>(SearchClass.class);
+
+    /**
+     * Creates a new controller.
+     * @param indexName the name of the index, used for the messages
+     * @param onlineLimit the maximum number of online searches at the same time, 0 for no limit
+     * @param offlineLimit the maximum number of offline searches at the same time, 0 for no limit
+     * @param queueSize the maximum number of searches of each class that wait for a slot
+     * @param queueTimeoutMillis the maximum time a search waits for a slot
+     */
+    public AdmissionController(String indexName, int onlineLimit, int offlineLimit, int queueSize,
+            long queueTimeoutMillis) {
+        this.indexName = indexName;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        lanes.put(SearchClass.ONLINE, new Lane(SearchClass.ONLINE, onlineLimit, queueSize));
+        lanes.put(SearchClass.OFFLINE, new Lane(SearchClass.OFFLINE, offlineLimit, queueSize));
+    }
+
+    /**
+     * Waits for a slot to run a search. Every successful call has to be followed by a call of
+     * {@link #release(SearchClass)} once the search is done.
+     * @param searchClass the class of the search
+     * @throws SearchRejectedException if the queue is full or no slot got free in time
+     */
+    public void acquire(SearchClass searchClass) {
+        Lane lane = lanes.get(searchClass);
+        if (lane.slots == null) {
+            return;
+        }
+        if (lane.waiting.get() == 0 && tryAcquireFairly(lane)) {
+            lane.admittedCount.incrementAndGet();
+            return;
+        }
+
+        if (lane.waiting.incrementAndGet() > lane.queueSize) {
+            lane.waiting.decrementAndGet();
+            lane.queueFullCount.incrementAndGet();
+            throw new SearchRejectedException("Too many " + searchClass + " searches are waiting for index "
+                    + indexName, searchClass);
+        }
+        long start = System.nanoTime();
+        boolean admitted;
+        try {
+            admitted = lane.slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        } finally {
+            lane.waiting.decrementAndGet();
+            lane.waitNanos.addAndGet(System.nanoTime() - start);
+            lane.waitCount.incrementAndGet();
+        }
+        if (!admitted) {
+            lane.timeoutCount.incrementAndGet();
+            throw new SearchRejectedException("No slot for a " + searchClass + " search of index " + indexName
+                    + " got free within " + queueTimeoutMillis + " ms", searchClass);
+        }
+        lane.admittedCount.incrementAndGet();
+    }
+
+    /**
+     * Takes a free slot unless other searches are waiting for one. The untimed <code>tryAcquire()</code> would take
+     * it even from a fair semaphore, ahead of the searches in the queue.
+     */
+    private boolean tryAcquireFairly(Lane lane) {
+        try {
+            return lane.slots.tryAcquire(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // the search is rejected in the queue as well
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether the controller has been created with the given limits, so it can be kept when the index is
+     * re-initialized and the searches that are running or waiting keep their slots.
+     * @return true if all limits are the same
+     */
+    public boolean hasLimits(int onlineLimit, int offlineLimit, int queueSize, long queueTimeoutMillis) {
+        Lane online = lanes.get(SearchClass.ONLINE);
+        Lane offline = lanes.get(SearchClass.OFFLINE);
+        return online.limit == onlineLimit && offline.limit == offlineLimit && online.queueSize == queueSize
+                && this.queueTimeoutMillis == queueTimeoutMillis;
+    }
+
+    /**
+     * Frees the slot of a search.
+     * @param searchClass the class of the search
+     */
+    public void release(SearchClass searchClass) {
+        Lane lane = lanes.get(searchClass);
+        if (lane.slots != null) {
+            lane.slots.release();
+        }
+    }
+
+    /**
+     * Returns the state of the queues.
+     * @return a snapshot of the statistics, one entry per search class
+     */
+    public List<AdmissionStatistics> getStatistics() {
+        List<AdmissionStatistics> statistics = new ArrayList<AdmissionStatistics>(lanes.size());
+        for (Lane lane : lanes.values()) {
+            statistics.add(lane.getStatistics());
+        }
+        return statistics;
+    }
+
+    /**
+     * A snapshot of the state of one search class.
+     */
+    public static class AdmissionStatistics {
+
+        private final SearchClass searchClass;
+        private final int limit;
+        private final int running;
+        private final int queueDepth;
+        private final long admittedCount;
+        private final long queueFullCount;
+        private final long timeoutCount;
+        private final double averageWaitMillis;
+
+        AdmissionStatistics(SearchClass searchClass, int limit, int running, int queueDepth, long admittedCount,
+                long queueFullCount, long timeoutCount, double averageWaitMillis) {
+            this.searchClass = searchClass;
+            this.limit = limit;
+            this.running = running;
+            this.queueDepth = queueDepth;
+            this.admittedCount = admittedCount;
+            this.queueFullCount = queueFullCount;
+            this.timeoutCount = timeoutCount;
+            this.averageWaitMillis = averageWaitMillis;
+        }
+
+        public SearchClass getSearchClass() {
+            return searchClass;
+        }
+
+        /**
+         * Returns the maximum number of searches that run at the same time.
+         * @return the limit, 0 if the searches are not limited
+         */
+        public int getLimit() {
+            return limit;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        /**
+         * Returns the number of searches that are waiting for a slot right now.
+         * @return the queue depth
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getAdmittedCount() {
+            return admittedCount;
+        }
+
+        /**
+         * Returns the number of searches that were rejected because the queue was full.
+         * @return the rejected count
+         */
+        public long getQueueFullCount() {
+            return queueFullCount;
+        }
+
+        /**
+         * Returns the number of searches that were rejected because they waited longer than the queue timeout.
+         * @return the rejected count
+         */
+        public long getTimeoutCount() {
+            return timeoutCount;
+        }
+
+        /**
+         * Returns the average time the searches that had to wait spent in the queue.
+         * @return the average wait time in milliseconds
+         */
+        public double getAverageWaitMillis() {
+            return averageWaitMillis;
+        }
+
+        @Override
+        public String toString() {
+            return searchClass + ": " + running + " running (max " + limit + "), " + queueDepth + " waiting, "
+                    + admittedCount + " admitted, " + (queueFullCount + timeoutCount) + " rejected, "
+                    + averageWaitMillis + " ms average wait";
+        }
+    }
+
+    private static class Lane {
+
+        private final SearchClass searchClass;
+        private final int limit;
+        private final int queueSize;
+        private final Semaphore slots;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicLong admittedCount = new AtomicLong();
+        private final AtomicLong queueFullCount = new AtomicLong();
+        private final AtomicLong timeoutCount = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong waitCount = new AtomicLong();
+
+        Lane(SearchClass searchClass, int limit, int queueSize) {
+            this.searchClass = searchClass;
+            this.limit = limit;
+            this.queueSize = queueSize;
+            // fair, so the searches waiting the longest get the next free slot
+            this.slots = limit > 0 ? new Semaphore(limit, true) : null;
+        }
+
+        AdmissionStatistics getStatistics() {
+            long waits = waitCount.get();
+            double averageWaitMillis = waits == 0 ? 0d : waitNanos.get() / 1000000d / waits;
+            int running = slots != null ? limit - slots.availablePermits() : 0;
+            return new AdmissionStatistics(searchClass, limit, running, waiting.get(), admittedCount.get(),
+                    queueFullCount.get(), timeoutCount.get(), averageWaitMillis);
+        }
+    }
+}
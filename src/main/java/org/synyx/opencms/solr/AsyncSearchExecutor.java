@@ -0,0 +1,135 @@
+package org.synyx.opencms.solr;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs searches of an index in the background so that several independent searches can wait for Solr at the same
+ * time. Each search can be given a timeout after which it is cancelled.
+ * <p>
+ * Cancelling a search never interrupts its thread, as the search may be reading permissions from the VFS. The caller
+ * stops waiting, the search runs to its end in the background and its result is dropped.
+ */
+public class AsyncSearchExecutor {
+
+    private static final ScheduledExecutorService TIMEOUT_SCHEDULER = createTimeoutScheduler();
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a new executor with its own thread pool.
+     * @param indexName the name of the index, used for the thread names
+     * @param threads the maximum number of searches that run at the same time
+     * @param queueSize the maximum number of searches that wait for a thread
+     */
+    public AsyncSearchExecutor(final String indexName, int threads, int queueSize) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "solr-search-" + indexName + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts a search in the background.
+     * @param search the search to run
+     * @param timeoutMillis the time after which the search is cancelled, 0 for no timeout
+     * @return the future result, cancelled if the timeout is reached before the search finished
+     * @throws RejectedExecutionException if too many searches are waiting already or the module is shut down
+     */
+    public <T> Future<T> submit(Callable<T> search, long timeoutMillis) {
+        TimeoutFutureTask<T> future = new TimeoutFutureTask<T>(search);
+        executor.execute(future);
+        if (timeoutMillis > 0) {
+            try {
+                future.scheduleTimeout(timeoutMillis);
+            } catch (RejectedExecutionException e) {
+                future.cancel(false);
+                throw e;
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Stops the thread pool once the running and waiting searches are finished.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Stops the thread that cancels the searches when their timeout is reached, called when the module is shut down.
+     */
+    static void shutdownTimeoutScheduler() {
+        TIMEOUT_SCHEDULER.shutdownNow();
+    }
+
+    private static ScheduledExecutorService createTimeoutScheduler() {
+        return new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "solr-search-timeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * A future that cancels itself when its timeout is reached.
+     */
+    private static class TimeoutFutureTask<T> extends FutureTask<T> {
+
+        private volatile ScheduledFuture<?> timeout;
+
+        TimeoutFutureTask(Callable<T> callable) {
+            super(callable);
+        }
+
+        void scheduleTimeout(long timeoutMillis) {
+            timeout = TIMEOUT_SCHEDULER.schedule(new Runnable() {
+
+                public void run() {
+                    cancel(false);
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            if (isDone()) {
+                timeout.cancel(false);
+            }
+        }
+
+        /**
+         * Cancels the search without interrupting its thread, whatever the caller asks for.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return super.cancel(false);
+        }
+
+        @Override
+        protected void done() {
+            ScheduledFuture<?> scheduledTimeout = timeout;
+            if (scheduledTimeout != null) {
+                scheduledTimeout.cancel(false);
+            }
+        }
+    }
+}
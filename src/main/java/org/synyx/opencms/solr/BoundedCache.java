@@ -0,0 +1,222 @@
+package org.synyx.opencms.solr;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded least recently used cache that can be used concurrently. The entries are distributed over several
+ * segments that are locked independently. Entries can optionally expire after a fixed time to live.
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class BoundedCache<K, V> {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final List<Segment> segments;
+    private final long timeToLiveMillis;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum number of entries
+     * @param timeToLiveMillis the time after which an entry expires, 0 if entries should never expire
+     */
+    public BoundedCache(int maxSize, long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+        int segmentCount = Math.max(1, Math.min(SEGMENT_COUNT, maxSize));
+        int segmentSize = Math.max(1, maxSize / segmentCount);
+        this.segments = new ArrayList<Segment>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(new Segment(segmentSize));
+        }
+    }
+
+    /**
+     * Returns the value that is cached for the key.
+     * @param key
+     * @return the value or null if there is no valid entry
+     */
+    public V get(K key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            CacheEntry<V> entry = segment.get(key);
+            if (entry != null && isExpired(entry, System.currentTimeMillis())) {
+                segment.remove(key);
+                evictionCount.incrementAndGet();
+                entry = null;
+            }
+            if (entry == null) {
+                missCount.incrementAndGet();
+                return null;
+            }
+            hitCount.incrementAndGet();
+            return entry.getValue();
+        }
+    }
+
+    /**
+     * Adds a value to the cache, replacing any previous value for the key.
+     * @param key
+     * @param value
+     */
+    public void put(K key, V value) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new CacheEntry<V>(value, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Removes the entry for the key.
+     * @param key
+     */
+    public void remove(K key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (segment.remove(key) != null) {
+                invalidationCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries with a key that is accepted by the filter.
+     * @param filter
+     */
+    public void removeAll(KeyFilter<K> filter) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                Iterator<K> keys = segment.keySet().iterator();
+                while (keys.hasNext()) {
+                    if (filter.accept(keys.next())) {
+                        keys.remove();
+                        invalidationCount.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                invalidationCount.addAndGet(segment.size());
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries that are currently cached.
+     * @return the number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of entries that were removed because the cache was full or because they expired.
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Returns the number of entries that were removed explicitly.
+     * @return the invalidation count
+     */
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    private boolean isExpired(CacheEntry<V> entry, long now) {
+        return timeToLiveMillis > 0 && now - entry.getCreated() > timeToLiveMillis;
+    }
+
+    private Segment segmentFor(K key) {
+        int hash = key.hashCode();
+        // spread the bits as the lower ones of string hash codes are not well distributed
+        hash ^= (hash >>> 16);
+        return segments.get((hash & 0x7fffffff) % segments.size());
+    }
+
+    /**
+     * Decides which entries are removed by {@link BoundedCache#removeAll(KeyFilter)}.
+     * @param <K> the type of the keys
+     */
+    public interface KeyFilter<K> {
+
+        /**
+         * Checks if the entry for a key should be removed.
+         * @param key
+         * @return true if the entry should be removed
+         */
+        boolean accept(K key);
+    }
+
+    private static class CacheEntry<V> {
+
+        private final V value;
+        private final long created;
+
+        CacheEntry(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+
+        V getValue() {
+            return value;
+        }
+
+        long getCreated() {
+            return created;
+        }
+    }
+
+    private class Segment extends LinkedHashMap<K, CacheEntry<V>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+            if (size() > maxSize) {
+                evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.synyx.opencms.solr;
+
+/**
+ * Stops sending queries to Solr for a while when too many of them fail, so that searches fail fast instead of piling
+ * up while Solr is unavailable or overloaded.
+ * <p>
+ * The failure rate is counted in fixed time windows. When it reaches the threshold the breaker opens and rejects all
+ * requests. After the open time a single trial request is let through: if it succeeds the breaker closes again,
+ * otherwise it stays open for another period.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states of the breaker.
+     */
+    public enum State {
+
+        /** Requests are sent. */
+        CLOSED,
+        /** Requests are rejected. */
+        OPEN,
+        /** A trial request is sent to check whether Solr is available again. */
+        HALF_OPEN
+    }
+
+    private final int failureRateThreshold;
+    private final int minimumRequests;
+    private final long windowMillis;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private long windowStart = System.currentTimeMillis();
+    private int requestCount;
+    private int failureCount;
+    private long openedAt;
+    private boolean trialRunning;
+    private long rejectedCount;
+    private long openCount;
+
+    /**
+     * Creates a new closed breaker.
+     * @param failureRateThreshold the percentage of failed requests in a window that opens the breaker
+     * @param minimumRequests the number of requests in a window below which the breaker stays closed
+     * @param windowMillis the length of the window in which the failures are counted
+     * @param openMillis the time the breaker stays open before a trial request is let through
+     */
+    public CircuitBreaker(int failureRateThreshold, int minimumRequests, long windowMillis, long openMillis) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumRequests = Math.max(1, minimumRequests);
+        this.windowMillis = windowMillis;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Checks whether a request may be sent. Every request that is allowed has to report its outcome with
+     * {@link #recordSuccess()} or {@link #recordFailure()}.
+     * @return false if the request has to be rejected
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                rejectedCount++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialRunning = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialRunning) {
+                rejectedCount++;
+                return false;
+            }
+            trialRunning = true;
+        }
+        return true;
+    }
+
+    /**
+     * Reports a request that was answered by Solr.
+     */
+    public synchronized void recordSuccess() {
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            resetWindow(System.currentTimeMillis());
+        } else if (state == State.CLOSED) {
+            count(false);
+        }
+    }
+
+    /**
+     * Reports a request that failed or was not answered in time.
+     */
+    public synchronized void recordFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            count(true);
+            if (requestCount >= minimumRequests && failureCount * 100L >= (long) failureRateThreshold * requestCount) {
+                open();
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the number of requests that were rejected because the breaker was open.
+     * @return the rejected count
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Returns how often the breaker has been opened.
+     * @return the open count
+     */
+    public synchronized long getOpenCount() {
+        return openCount;
+    }
+
+    private void count(boolean failure) {
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= windowMillis) {
+            resetWindow(now);
+        }
+        requestCount++;
+        if (failure) {
+            failureCount++;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        trialRunning = false;
+        openCount++;
+    }
+
+    private void resetWindow(long now) {
+        windowStart = now;
+        requestCount = 0;
+        failureCount = 0;
+    }
+}
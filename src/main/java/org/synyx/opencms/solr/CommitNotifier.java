@@ -0,0 +1,90 @@
+package org.synyx.opencms.solr;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Informs the interested parties when changes to a Solr index have been committed. The index writers and the
+ * {@link org.synyx.opencms.solr.indexing.IndexService} don't know about the search indexes that use the same Solr
+ * server, so the listeners are registered for the url of the server.
+ */
+public final class CommitNotifier {
+
+    private static final Log LOG = LogFactory.getLog(CommitNotifier.class);
+    private static final ConcurrentMap<String, List<CommitListener>> LISTENERS =
+            new ConcurrentHashMap<String, List<CommitListener>>();
+
+    private CommitNotifier() {
+    }
+
+    /**
+     * Registers a listener for commits on the Solr server with the given url.
+     * @param url the url of the Solr server
+     * @param listener
+     */
+    public static void addListener(String url, CommitListener listener) {
+        if (url == null) {
+            return;
+        }
+        List<CommitListener> listeners = LISTENERS.get(url);
+        if (listeners == null) {
+            listeners = new CopyOnWriteArrayList<CommitListener>();
+            List<CommitListener> existing = LISTENERS.putIfAbsent(url, listeners);
+            if (existing != null) {
+                listeners = existing;
+            }
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener that has been registered before.
+     * @param url the url of the Solr server
+     * @param listener
+     */
+    public static void removeListener(String url, CommitListener listener) {
+        if (url == null) {
+            return;
+        }
+        List<CommitListener> listeners = LISTENERS.get(url);
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Notifies all listeners that a commit has been performed on the Solr server with the given url.
+     * @param url the url of the Solr server
+     */
+    public static void fireCommit(String url) {
+        if (url == null) {
+            return;
+        }
+        List<CommitListener> listeners = LISTENERS.get(url);
+        if (listeners != null) {
+            for (CommitListener listener : listeners) {
+                try {
+                    listener.committed(url);
+                } catch (RuntimeException e) {
+                    LOG.error("Failed to notify listener about a commit on " + url, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets notified when changes to an index have been committed.
+     */
+    public interface CommitListener {
+
+        /**
+         * Called after the changes have been committed.
+         * @param url the url of the Solr server
+         */
+        void committed(String url);
+    }
+}
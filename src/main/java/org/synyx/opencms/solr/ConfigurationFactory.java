@@ -1,38 +1,251 @@
 package org.synyx.opencms.solr;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 /**
  * Configures the access to solr.
+ * <p>
+ * The <code>/solr.properties</code> are read once into a snapshot that is shared by all indexes. The file is checked
+ * for changes every <code>configurationCheckInterval</code> milliseconds (10 seconds by default, 0 to never check);
+ * a changed file is read into a new snapshot that replaces the old one and the indexes whose configuration changed
+ * are re-initialized. Searches that are running keep the settings they started with.
  * @author Florian Hopf, Synyx GmbH & Co. KG, hopf@synyx.de
  */
 public class ConfigurationFactory {
 
+    private static final Log LOG = LogFactory.getLog(ConfigurationFactory.class);
+    private static final String RESOURCE = "/solr.properties";
+    private static final String CONFIG_CHECK_INTERVAL = "configurationCheckInterval";
+    private static final ConcurrentMap<String, ConfigurationListener> LISTENERS =
+            new ConcurrentHashMap<String, ConfigurationListener>();
+
+    private static volatile Snapshot snapshot;
+    private static ScheduledExecutorService watcher;
+
     /**
-     * Creates the index configuration from the properties file.
+     * Returns the index configuration from the properties file. It is created once and shared until the file is
+     * modified.
      * @param indexName
-     * @return a Map that only contains the configuration values for the index requested. The
+     * @return the configuration that only contains the values for the index requested. The
      * key is in a simple format, i.e. without the index name prefix.
      */
-    public synchronized static IndexConfiguration initIndexConfiguration(String indexName) {
-        Map<String, String> configurationMap = new HashMap<String, String>();
+    public static IndexConfiguration initIndexConfiguration(String indexName) {
+        return getSnapshot().getIndexConfiguration(indexName);
+    }
+
+    /**
+     * Registers the listener of an index that is re-initialized when its configuration changes. An index has only
+     * one listener, registering another one replaces it.
+     * @param indexName the name of the index
+     * @param listener
+     */
+    public static void setListener(String indexName, ConfigurationListener listener) {
+        LISTENERS.put(indexName, listener);
+    }
+
+    /**
+     * Reads the properties file again if it has been modified since it was read last.
+     * @return true if a new configuration has been loaded
+     */
+    public static boolean reloadIfModified() {
+        Snapshot current;
+        Snapshot changed;
+        synchronized (ConfigurationFactory.class) {
+            current = getSnapshot();
+            long lastModified = getLastModified();
+            if (lastModified == current.lastModified) {
+                return false;
+            }
+            changed = load();
+            snapshot = changed;
+        }
+        LOG.info(RESOURCE + " has been modified, the configuration is reloaded");
+
+        for (Map.Entry<String, ConfigurationListener> entry : LISTENERS.entrySet()) {
+            String indexName = entry.getKey();
+            if (changed.getIndexProperties(indexName).equals(current.getIndexProperties(indexName))) {
+                continue;
+            }
+            try {
+                entry.getValue().configurationChanged(changed.getIndexConfiguration(indexName));
+            } catch (RuntimeException e) {
+                LOG.error("Failed to apply the changed configuration of index " + indexName, e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops checking the properties file for changes, called when the module is shut down.
+     */
+    static synchronized void shutdown() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Returns the current snapshot. Only the first call locks, later ones just read the volatile field.
+     */
+    private static Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (ConfigurationFactory.class) {
+                current = snapshot;
+                if (current == null) {
+                    current = load();
+                    snapshot = current;
+                    startWatcher(current);
+                }
+            }
+        }
+        return current;
+    }
+
+    private static Snapshot load() {
+        long lastModified = getLastModified();
+        InputStream in = ConfigurationFactory.class.getResourceAsStream(RESOURCE);
+        if (in == null) {
+            throw new IllegalStateException(RESOURCE + " not found");
+        }
         Properties props = new Properties();
         try {
-            props.load(ConfigurationFactory.class.getResourceAsStream("/solr.properties"));
-            for (Object key : props.keySet()) {
-                String keyValue = key.toString();
-                if (keyValue.startsWith(indexName)) {
-                    String value = props.getProperty(keyValue);
-                    String simpleKey = keyValue.substring(indexName.length() + 1);
-                    configurationMap.put(simpleKey, value);
-                }
+            props.load(in);
+        } catch (IOException ex) {
+            throw new IllegalStateException(RESOURCE + " can't be read", ex);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                LOG.warn("Failed to close " + RESOURCE, ex);
+            }
+        }
+        Map<String, String> properties = new HashMap<String, String>();
+        for (String key : props.stringPropertyNames()) {
+            properties.put(key, props.getProperty(key));
+        }
+        return new Snapshot(properties, lastModified);
+    }
+
+    /**
+     * Returns the modification time of the properties file, 0 if it is unknown.
+     */
+    private static long getLastModified() {
+        URL url = ConfigurationFactory.class.getResource(RESOURCE);
+        if (url == null) {
+            return 0;
+        }
+        try {
+            if ("file".equals(url.getProtocol())) {
+                return new File(url.toURI()).lastModified();
             }
+            return url.openConnection().getLastModified();
+        } catch (URISyntaxException ex) {
+            return 0;
         } catch (IOException ex) {
-            throw new IllegalStateException("/solr.properties not found", ex);
+            return 0;
+        }
+    }
+
+    private static void startWatcher(Snapshot firstSnapshot) {
+        String value = firstSnapshot.properties.get(CONFIG_CHECK_INTERVAL);
+        long interval = value != null ? Long.parseLong(value.trim()) : 10000;
+        if (interval <= 0 || watcher != null) {
+            return;
+        }
+        watcher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "solr-configuration-watcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        watcher.scheduleWithFixedDelay(new Runnable() {
+
+            public void run() {
+                try {
+                    reloadIfModified();
+                } catch (RuntimeException e) {
+                    // the last configuration that could be read stays active
+                    LOG.error("Failed to reload " + RESOURCE, e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets notified when the configuration of an index has changed.
+     */
+    public interface ConfigurationListener {
+
+        /**
+         * Called after a changed configuration has been loaded.
+         * @param indexConfiguration the new configuration of the index
+         */
+        void configurationChanged(IndexConfiguration indexConfiguration);
+    }
+
+    /**
+     * The immutable content of one version of the properties file. The configuration of each index is created once
+     * per snapshot.
+     */
+    private static final class Snapshot {
+
+        private final Map<String, String> properties;
+        private final long lastModified;
+        private final ConcurrentMap<String, IndexConfiguration> indexConfigurations =
+                new ConcurrentHashMap<String, IndexConfiguration>();
+
+        Snapshot(Map<String, String> properties, long lastModified) {
+            this.properties = properties;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Returns the values for one index, the keys without the index name prefix.
+         */
+        Map<String, String> getIndexProperties(String indexName) {
+            // the separator is part of the prefix, otherwise index "foo" would get the values of index "foobar"
+            String prefix = indexName + ".";
+            Map<String, String> configurationMap = new HashMap<String, String>();
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                String keyValue = entry.getKey();
+                if (keyValue.startsWith(prefix) && keyValue.length() > prefix.length()) {
+                    configurationMap.put(keyValue.substring(prefix.length()), entry.getValue());
+                }
+            }
+            return Collections.unmodifiableMap(configurationMap);
+        }
+
+        IndexConfiguration getIndexConfiguration(String indexName) {
+            IndexConfiguration indexConfiguration = indexConfigurations.get(indexName);
+            if (indexConfiguration == null) {
+                // creating it twice is harmless, the Solr clients are shared anyway
+                indexConfiguration = new IndexConfiguration(indexName, getIndexProperties(indexName));
+                IndexConfiguration existing = indexConfigurations.putIfAbsent(indexName, indexConfiguration);
+                if (existing != null) {
+                    indexConfiguration = existing;
+                }
+            }
+            return indexConfiguration;
         }
-        return new IndexConfiguration(configurationMap);
     }
 }
@@ -1,39 +1,81 @@
 package org.synyx.opencms.solr;
 
-import java.text.ParseException;
-import java.util.Date;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import org.apache.lucene.document.DateTools;
+import java.util.Map;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrInputDocument;
 import org.opencms.search.CmsTimeWindowSearchFieldSupport;
 import org.opencms.search.fields.CmsSearchField;
+import org.opencms.search.fields.CmsSearchFieldConfiguration;
+import org.synyx.opencms.solr.indexing.AvailabilityAwareSearchFieldConfiguration;
 
 /**
- * Converts from lucene documents to solr documents and vice versa.
+ * Converts from lucene documents to solr documents and vice versa. How a field is converted is decided once when the
+ * converter is created, so a converter can be reused for all documents of an index and by several threads at once.
  * @author Florian Hopf, Synyx GmbH & Co. KG, hopf@synyx.de
  * @author Oliver Messner, Synyx GmbH & Co. KG, messner@synyx.de
  */
 public class DocumentConverter {
 
+    private static final String[] DATE_FIELDS = {CmsSearchField.FIELD_DATE_CONTENT,
+        CmsSearchField.FIELD_DATE_CREATED, CmsSearchField.FIELD_DATE_LASTMODIFIED,
+        CmsTimeWindowSearchFieldSupport.FIELD_RELEASE, CmsTimeWindowSearchFieldSupport.FIELD_EXPIRED,
+        AvailabilityAwareSearchFieldConfiguration.FIELD_RELEASE, AvailabilityAwareSearchFieldConfiguration.FIELD_EXPIRED};
+
+    private final Map<String, FieldConverter> converters;
+    private final FieldConverter defaultConverter;
+
     /**
-     * Converts the SolrDocument into a lucene Document.
+     * Creates a converter that knows the date fields of OpenCms and converts all other fields as Strings.
+     */
+    public DocumentConverter() {
+        this(null, Collections.<String, FieldConverter>emptyMap());
+    }
+
+    /**
+     * Creates a converter for the fields of an index.
+     * @param fieldConfiguration the field configuration of the index, may be null
+     * @param fieldConverters converters for single fields that replace the default handling
+     */
+    public DocumentConverter(CmsSearchFieldConfiguration fieldConfiguration,
+            Map<String, FieldConverter> fieldConverters) {
+        Map<String, FieldConverter> table = new HashMap<String, FieldConverter>();
+        if (fieldConfiguration != null) {
+            for (CmsSearchField field : fieldConfiguration.getFields()) {
+                table.put(field.getName(), FieldConverters.STRING);
+            }
+        }
+        for (String dateField : DATE_FIELDS) {
+            table.put(dateField, FieldConverters.DATE);
+        }
+        table.putAll(fieldConverters);
+        this.converters = table;
+        this.defaultConverter = FieldConverters.STRING;
+    }
+
+    /**
+     * Converts the SolrDocument into a lucene Document. Multi-valued fields are added as one field per value.
      * @param solrDocument
      * @return the lucene Document
      */
     public Document asDocument(SolrDocument solrDocument) {
         Document result = new Document();
-        for (String name : solrDocument.getFieldNames()) {
-            String value = null;
-            if (isDateField(name)) {
-                value = DateTools.dateToString((Date) solrDocument.getFieldValue(name),
-                        DateTools.Resolution.MILLISECOND);
+        for (Map.Entry<String, Object> entry : solrDocument) {
+            String name = entry.getKey();
+            FieldConverter converter = getConverter(name);
+            if (entry.getValue() instanceof Collection<?>) {
+                for (Object value : (Collection<?>) entry.getValue()) {
+                    addField(result, name, converter, value);
+                }
             } else {
-                value = solrDocument.getFieldValue(name).toString();
+                addField(result, name, converter, entry.getValue());
             }
-            result.add(new Field(name, value, Field.Store.YES, Field.Index.NO));
         }
         return result;
     }
@@ -46,35 +88,35 @@ public class DocumentConverter {
      */
     public SolrInputDocument asSolrInputDocument(Document document, String documentId) {
         SolrInputDocument inputDocument = new SolrInputDocument();
-        inputDocument.addField("id", documentId);
+        inputDocument.addField(SolrSearchIndex.FIELD_ID, documentId);
 
         @SuppressWarnings("unchecked")
-        List<Field> fields = document.getFields();
+        List<Fieldable> fields = document.getFields();
 
-        for (Field field: fields) {
-            if (isDateField(field)) {
-                try {
-                    inputDocument.addField(field.name(), DateTools.stringToDate(field.stringValue()));
-                } catch (ParseException ex) {
-                    throw new IllegalArgumentException("Failed to parse date for field " + field.name(), ex);
+        for (Fieldable field : fields) {
+            String stringValue = field.stringValue();
+            if (stringValue != null) {
+                Object value = getConverter(field.name()).toSolrValue(stringValue);
+                if (value != null) {
+                    inputDocument.addField(field.name(), value);
                 }
-            } else {
-                inputDocument.addField(field.name(), field.stringValue());
             }
         }
 
         return inputDocument;
     }
 
-    private boolean isDateField(Field field) {
-        return isDateField(field.name());
+    private void addField(Document document, String name, FieldConverter converter, Object value) {
+        if (value != null) {
+            String stringValue = converter.toLuceneValue(value);
+            if (stringValue != null) {
+                document.add(new Field(name, stringValue, Field.Store.YES, Field.Index.NO));
+            }
+        }
     }
 
-    private boolean isDateField(String name) {
-        return name.equals(CmsSearchField.FIELD_DATE_CONTENT)
-                || name.equals(CmsSearchField.FIELD_DATE_CREATED)
-                || name.equals(CmsSearchField.FIELD_DATE_LASTMODIFIED)
-                || name.equals(CmsTimeWindowSearchFieldSupport.FIELD_RELEASE)
-                || name.equals(CmsTimeWindowSearchFieldSupport.FIELD_EXPIRED);
+    private FieldConverter getConverter(String name) {
+        FieldConverter converter = converters.get(name);
+        return converter != null ? converter : defaultConverter;
     }
 }
@@ -0,0 +1,236 @@
+package org.synyx.opencms.solr;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.solr.client.solrj.SolrServer;
+
+/**
+ * Creates Solr servers that run inside the OpenCms JVM, so that searches and updates don't need a network hop and
+ * no separate Solr installation is needed. One core container is started per Solr home and shared by all indexes
+ * using it, Solr can't open the same index twice.
+ * <p>
+ * Solr 3.1 needs Lucene 3.1, but OpenCms uses Lucene 2.4 for its own indexes and this module parses queries with it.
+ * solr-core, Lucene 3.1 and their dependencies are therefore not added to the web application but loaded from the
+ * jars of a separate directory by their own class loader. Only the classes of SolrJ and the JDK are shared with the
+ * web application, so the returned servers can be used like any other {@link SolrServer}.
+ * <p>
+ * The cores are closed when the module is shut down, or by a shutdown hook if OpenCms isn't shut down properly.
+ */
+final class EmbeddedSolrServerFactory {
+
+    private static final Log LOG = LogFactory.getLog(EmbeddedSolrServerFactory.class);
+    private static final Map<String, ClassLoader> CLASS_LOADERS = new HashMap<String, ClassLoader>();
+    private static final Map<String, Object> CONTAINERS = new HashMap<String, Object>();
+    private static final Map<String, SolrServer> SERVERS = new HashMap<String, SolrServer>();
+    private static final Map<String, Thread> SHUTDOWN_HOOKS = new HashMap<String, Thread>();
+    private static final String CORE_CONTAINER_CLASS = "org.apache.solr.core.CoreContainer";
+    private static final String EMBEDDED_SERVER_CLASS = "org.apache.solr.client.solrj.embedded.EmbeddedSolrServer";
+    private static final String LUCENE_VERSION_CLASS = "org.apache.lucene.util.Version";
+    private static final String REQUIRED_LUCENE_VERSION = "LUCENE_31";
+
+    private EmbeddedSolrServerFactory() {
+    }
+
+    /**
+     * Returns the server for a core of the Solr home, starting the cores of the Solr home if needed.
+     * @param solrLib the directory that contains the jars of solr-core 3.1, Lucene 3.1 and their dependencies
+     * @param solrHome the directory that contains the solr.xml
+     * @param coreName the name of the core, the empty String for the default core
+     * @return the server
+     * @throws IllegalStateException if the cores can't be loaded or solr-core or Lucene 3.1 are missing
+     */
+    static synchronized SolrServer getSolrServer(String solrLib, String solrHome, String coreName) {
+        String key = solrHome + '#' + coreName;
+        SolrServer server = SERVERS.get(key);
+        if (server == null) {
+            ClassLoader classLoader = getClassLoader(solrLib);
+            if (!isLuceneVersionSupported(classLoader)) {
+                throw new IllegalStateException("The embedded Solr server needs Lucene 3.1, put lucene-core-3.1.0.jar "
+                        + "into " + solrLib);
+            }
+            Object container = getCoreContainer(classLoader, solrHome);
+            try {
+                server = (SolrServer) classLoader.loadClass(EMBEDDED_SERVER_CLASS)
+                        .getConstructor(container.getClass(), String.class).newInstance(container, coreName);
+            } catch (Exception ex) {
+                throw new IllegalStateException("Failed to create the embedded Solr server for core " + key, ex);
+            }
+            SERVERS.put(key, server);
+        }
+        return server;
+    }
+
+    /**
+     * Returns the class loader for the jars of the directory. Classes are looked up in the jars first, except for
+     * the classes that are shared with the web application.
+     * @param solrLib the directory of the jars
+     * @return the class loader, the same for all indexes using the directory
+     */
+    static synchronized ClassLoader getClassLoader(String solrLib) {
+        File libDir = new File(solrLib).getAbsoluteFile();
+        ClassLoader classLoader = CLASS_LOADERS.get(libDir.getPath());
+        if (classLoader == null) {
+            File[] jars = libDir.listFiles(new FileFilter() {
+
+                public boolean accept(File file) {
+                    return file.isFile() && file.getName().endsWith(".jar");
+                }
+            });
+            if (jars == null || jars.length == 0) {
+                throw new IllegalStateException("The embedded Solr server needs solr-core 3.1 and its dependencies in "
+                        + libDir);
+            }
+            URL[] urls = new URL[jars.length];
+            for (int i = 0; i < jars.length; i++) {
+                try {
+                    urls[i] = jars[i].toURI().toURL();
+                } catch (MalformedURLException ex) {
+                    throw new IllegalStateException("Failed to add " + jars[i] + " to the class path of Solr", ex);
+                }
+            }
+            classLoader = new SolrClassLoader(urls, SolrServer.class.getClassLoader());
+            CLASS_LOADERS.put(libDir.getPath(), classLoader);
+        }
+        return classLoader;
+    }
+
+    private static Object getCoreContainer(ClassLoader classLoader, String solrHome) {
+        Object container = CONTAINERS.get(solrHome);
+        if (container == null) {
+            File home = new File(solrHome);
+            // Solr loads its plugins with the context class loader
+            Thread thread = Thread.currentThread();
+            ClassLoader contextClassLoader = thread.getContextClassLoader();
+            thread.setContextClassLoader(classLoader);
+            try {
+                container = classLoader.loadClass(CORE_CONTAINER_CLASS).getConstructor(String.class, File.class)
+                        .newInstance(home.getAbsolutePath(), new File(home, "solr.xml"));
+            } catch (InvocationTargetException ex) {
+                throw new IllegalStateException("Failed to load the Solr cores of " + solrHome, ex.getCause());
+            } catch (Exception ex) {
+                throw new IllegalStateException("The embedded Solr server needs solr-core 3.1 and its dependencies",
+                        ex);
+            } finally {
+                thread.setContextClassLoader(contextClassLoader);
+            }
+            LOG.info("Started embedded Solr with home " + home.getAbsolutePath());
+            CONTAINERS.put(solrHome, container);
+
+            // the index is locked while the cores are open
+            final Object shutdownContainer = container;
+            Thread shutdownHook = new Thread("solr-embedded-shutdown") {
+
+                @Override
+                public void run() {
+                    shutdown(shutdownContainer);
+                }
+            };
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+            SHUTDOWN_HOOKS.put(solrHome, shutdownHook);
+        }
+        return container;
+    }
+
+    /**
+     * Closes the cores of all Solr homes, called when the module is shut down.
+     */
+    static synchronized void shutdown() {
+        for (Map.Entry<String, Object> entry : CONTAINERS.entrySet()) {
+            try {
+                shutdown(entry.getValue());
+                LOG.info("Stopped embedded Solr with home " + entry.getKey());
+            } catch (RuntimeException e) {
+                LOG.error("Failed to stop embedded Solr with home " + entry.getKey(), e);
+            }
+            Thread shutdownHook = SHUTDOWN_HOOKS.get(entry.getKey());
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // the JVM is shutting down already
+            }
+        }
+        CONTAINERS.clear();
+        SERVERS.clear();
+        SHUTDOWN_HOOKS.clear();
+        CLASS_LOADERS.clear();
+    }
+
+    private static void shutdown(Object container) {
+        try {
+            container.getClass().getMethod("shutdown").invoke(container);
+        } catch (InvocationTargetException ex) {
+            throw new IllegalStateException("Failed to close the Solr cores", ex.getCause());
+        } catch (Exception ex) {
+            throw new IllegalStateException("Failed to close the Solr cores", ex);
+        }
+    }
+
+    /**
+     * Checks whether the Lucene version Solr 3.1 is built with is available. Lucene 2.4 of OpenCms is used if the
+     * directory doesn't contain Lucene, its classes would only fail once Solr writes to the index.
+     * @param classLoader the class loader of the embedded Solr
+     * @return true if Lucene 3.1 or later is loaded
+     */
+    static boolean isLuceneVersionSupported(ClassLoader classLoader) {
+        try {
+            Class.forName(LUCENE_VERSION_CLASS, false, classLoader).getField(REQUIRED_LUCENE_VERSION);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (NoSuchFieldException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Loads the classes from its jars before asking the web application, so Lucene 3.1 is used instead of the
+     * Lucene 2.4 of OpenCms. SolrJ is always loaded from the web application, the servers are used through its
+     * classes.
+     */
+    private static final class SolrClassLoader extends URLClassLoader {
+
+        SolrClassLoader(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (isShared(name)) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> loadedClass = findLoadedClass(name);
+            if (loadedClass == null) {
+                try {
+                    loadedClass = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    return super.loadClass(name, resolve);
+                }
+            }
+            if (resolve) {
+                resolveClass(loadedClass);
+            }
+            return loadedClass;
+        }
+
+        private boolean isShared(String name) {
+            if (name.startsWith("org.apache.solr.client.solrj.embedded.")) {
+                // part of solr-core
+                return false;
+            }
+            return name.startsWith("java.")
+                    || name.startsWith("javax.")
+                    || name.startsWith("org.apache.solr.client.solrj.")
+                    || name.startsWith("org.apache.solr.common.")
+                    || name.startsWith("org.apache.commons.logging.")
+                    || name.startsWith("org.slf4j.");
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.synyx.opencms.solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.params.HighlightParams;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * Caches the facet counts of searches for one index, independent of the hits. The counts only depend on the query,
+ * the filter queries and the facet parameters, so the key leaves out paging, sorting, the returned fields,
+ * highlighting and the filter query of a {@link SearchCursor}. Paging through a result only computes the facet
+ * counts for the first page.
+ * <p>
+ * All entries are dropped when a commit is performed on the Solr server.
+ */
+public class FacetCountCache implements CommitNotifier.CommitListener {
+
+    static final String FACET_PIVOT = "facet.pivot";
+    private static final List<String> NON_FACET_PARAMS = Arrays.asList(CommonParams.START, CommonParams.ROWS,
+            CommonParams.SORT, CommonParams.FL);
+
+    private final BoundedCache<String, FacetCounts> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum number of cached facet counts
+     * @param timeToLiveMillis the time after which facet counts are computed again
+     */
+    public FacetCountCache(int maxSize, long timeToLiveMillis) {
+        this.cache = new BoundedCache<String, FacetCounts>(maxSize, timeToLiveMillis);
+    }
+
+    /**
+     * Checks whether facets are requested with the query.
+     * @param solrQuery the query
+     * @return true if the query requests facets
+     */
+    static boolean isFaceted(SolrQuery solrQuery) {
+        return solrQuery.getBool(FacetParams.FACET, false);
+    }
+
+    /**
+     * Builds the key of the facet counts for a query.
+     * @param solrQuery the query, it is not modified
+     * @return the key
+     */
+    static String createKey(SolrQuery solrQuery) {
+        SolrQuery facetQuery = solrQuery.getCopy();
+        for (String param : new ArrayList<String>(facetQuery.getParameterNames())) {
+            if (NON_FACET_PARAMS.contains(param) || param.startsWith(HighlightParams.HIGHLIGHT)) {
+                facetQuery.remove(param);
+            }
+        }
+        // the facets of a cursor search are counted without the filter query of the cursor
+        String[] filterQueries = facetQuery.getFilterQueries();
+        if (filterQueries != null) {
+            for (String filterQuery : filterQueries) {
+                if (SearchCursor.isFilterQuery(filterQuery)) {
+                    facetQuery.removeFilterQuery(filterQuery);
+                }
+            }
+        }
+        return QueryResultCache.createKey(facetQuery);
+    }
+
+    /**
+     * Returns the cached facet counts.
+     * @param key the key created with {@link #createKey(SolrQuery)}
+     * @return the facet counts or null if they are not cached
+     */
+    FacetCounts get(String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Returns the current generation, to be passed to {@link #put(String, QueryResponse, long)} once the query is
+     * done.
+     * @return the generation
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Caches the facet counts of a response.
+     * @param key the key created with {@link #createKey(SolrQuery)}
+     * @param response the response with the facet counts
+     * @param queryGeneration the generation before the query was sent
+     * @return the facet counts
+     */
+    FacetCounts put(String key, QueryResponse response, long queryGeneration) {
+        FacetCounts facetCounts = FacetCounts.of(response);
+        // counts that were computed before a commit may already be outdated
+        if (facetCounts != null && generation.get() == queryGeneration) {
+            cache.put(key, facetCounts);
+        }
+        return facetCounts;
+    }
+
+    /**
+     * Drops all cached facet counts.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    @Override
+    public void committed(String url) {
+        clear();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * The facet counts of one response.
+     */
+    static class FacetCounts {
+
+        private final List<FacetField> facetFields;
+        private final NamedList<Object> facetPivots;
+
+        FacetCounts(List<FacetField> facetFields, NamedList<Object> facetPivots) {
+            this.facetFields = facetFields;
+            this.facetPivots = facetPivots;
+        }
+
+        /**
+         * Reads the facet counts of a response.
+         * @return the facet counts or null if the response contains none
+         */
+        @SuppressWarnings("unchecked")
+        static FacetCounts of(QueryResponse response) {
+            NamedList<Object> facetInfo = (NamedList<Object>) response.getResponse().get("facet_counts");
+            if (facetInfo == null) {
+                return null;
+            }
+            return new FacetCounts(response.getFacetFields(), (NamedList<Object>) facetInfo.get("facet_pivot"));
+        }
+
+        List<FacetField> getFacetFields() {
+            return facetFields;
+        }
+
+        NamedList<Object> getFacetPivots() {
+            return facetPivots;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package org.synyx.opencms.solr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.opencms.file.CmsObject;
+import org.opencms.main.CmsException;
+import org.opencms.main.OpenCms;
+import org.opencms.search.CmsIndexException;
+import org.opencms.search.CmsSearchException;
+import org.opencms.search.CmsSearchIndex;
+import org.opencms.search.CmsSearchParameters;
+import org.opencms.search.CmsSearchResult;
+import org.opencms.search.CmsSearchResultList;
+import org.opencms.search.I_CmsIndexWriter;
+import org.opencms.search.Messages;
+
+/**
+ * A search index that doesn't have any documents of its own but searches several {@link SolrSearchIndex}es in
+ * parallel and merges their hits. The member indexes are configured as a comma separated list of index names in the
+ * <code>members</code> property of the index in <code>solr.properties</code>.
+ * <p>
+ * Every member is asked for the hits up to the end of the requested page. The hits are merged by their sort fields,
+ * or by their normalized score for results sorted by relevance, and the requested page is cut out afterwards. Members
+ * that don't answer within <code>memberTimeout</code> milliseconds are left out and the result is marked as partial.
+ * Facets and cursors are not supported.
+ */
+public class FederatedSolrSearchIndex extends CmsSearchIndex {
+
+    private static final String CONFIG_MEMBERS = "members";
+    private static final String CONFIG_MEMBER_TIMEOUT = "memberTimeout";
+    private static final String CONFIG_THREADS = "threads";
+    private static final String CONFIG_QUEUE_SIZE = "queueSize";
+
+    private static final Log LOG = LogFactory.getLog(FederatedSolrSearchIndex.class);
+
+    // the members, their timeout and the pool are swapped together, a search reads them once
+    private volatile Federation federation = new Federation(new ArrayList<String>(), 0, null);
+
+    @Override
+    public void initialize() throws CmsSearchException {
+        super.initialize();
+        IndexConfiguration indexConfiguration = ConfigurationFactory.initIndexConfiguration(getName());
+        initialize(indexConfiguration);
+        ConfigurationFactory.setListener(getName(), new ConfigurationFactory.ConfigurationListener() {
+
+            public void configurationChanged(IndexConfiguration changedConfiguration) {
+                initialize(changedConfiguration);
+            }
+        });
+    }
+
+    /**
+     * Applies the configuration of the federated index, the searches that are running keep the old members.
+     */
+    void initialize(IndexConfiguration indexConfiguration) {
+        List<String> newMemberNames = new ArrayList<String>();
+        String members = indexConfiguration.getConfigurationMap().get(CONFIG_MEMBERS);
+        if (members != null) {
+            for (String member : members.split(",")) {
+                if (member.trim().length() > 0) {
+                    newMemberNames.add(member.trim());
+                }
+            }
+        }
+        int threads = indexConfiguration.getIntValue(CONFIG_THREADS, Math.max(1, newMemberNames.size()) * 4);
+        int queueSize = indexConfiguration.getIntValue(CONFIG_QUEUE_SIZE, 100);
+        int newMemberTimeout = indexConfiguration.getIntValue(CONFIG_MEMBER_TIMEOUT, 3000);
+        // the pool is started only once the configuration has been read completely
+        AsyncSearchExecutor newExecutor = new AsyncSearchExecutor(getName(), threads, queueSize);
+        Federation oldFederation = federation;
+
+        this.federation = new Federation(newMemberNames, newMemberTimeout, newExecutor);
+        if (oldFederation.executor != null) {
+            oldFederation.executor.shutdown();
+        }
+    }
+
+    /**
+     * Searches all member indexes in parallel and returns the requested page of the merged hits.
+     * @param cms the current user's Cms object
+     * @param params the parameters to use for the search
+     * @return the merged results
+     * @throws CmsSearchException if no member could be searched
+     */
+    @Override
+    public CmsSearchResultList search(CmsObject cms, final CmsSearchParameters params) throws CmsSearchException {
+        // the pool of a re-initialization is used by the next search
+        Federation federation = this.federation;
+        int memberTimeout = federation.memberTimeout;
+        List<SolrSearchIndex> members = getMembers(federation.memberNames, params);
+        int matchesPerPage = params.getMatchesPerPage();
+        int page = params.getSearchPage();
+        // every member has to return all hits up to the end of the page, 0 returns all hits
+        final int count = (matchesPerPage > 0) && (page > 0) ? matchesPerPage * page : 0;
+        final long deadline = System.currentTimeMillis() + memberTimeout;
+
+        AsyncSearchExecutor executor = federation.executor;
+        List<Future<SolrSearchResultList>> futures = new ArrayList<Future<SolrSearchResultList>>(members.size());
+        try {
+            for (final SolrSearchIndex member : members) {
+                final CmsObject memberCms = initMemberCms(cms);
+                futures.add(executor.submit(new Callable<SolrSearchResultList>() {
+
+                    public SolrSearchResultList call() throws CmsSearchException {
+                        return member.searchTopHits(memberCms, params, count, deadline);
+                    }
+                }, memberTimeout));
+            }
+        } catch (CmsException e) {
+            cancelAll(futures);
+            throw new CmsSearchException(Messages.get().container(Messages.ERR_SEARCH_PARAMS_1, params), e);
+        } catch (RejectedExecutionException e) {
+            cancelAll(futures);
+            throw new CmsSearchException(Messages.get().container(Messages.ERR_SEARCH_PARAMS_1, params), e);
+        }
+
+        SolrSearchResultList searchResults = new SolrSearchResultList();
+        List<SolrSearchResultList> memberResults = new ArrayList<SolrSearchResultList>(members.size());
+        boolean partial = false;
+        boolean hitCountExact = true;
+        int hitCount = 0;
+        Throwable failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<SolrSearchResultList> future = futures.get(i);
+            String memberName = members.get(i).getName();
+            try {
+                SolrSearchResultList memberResult =
+                        future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                memberResults.add(memberResult);
+                hitCount += memberResult.getHitCount();
+                hitCountExact &= memberResult.isHitCountExact();
+                partial |= memberResult.isPartial();
+            } catch (TimeoutException e) {
+                // the member search may be reading from the VFS, so it is not interrupted
+                future.cancel(false);
+                LOG.warn("Search in index " + memberName + " did not finish in time, its hits are left out");
+                partial = true;
+            } catch (CancellationException e) {
+                LOG.warn("Search in index " + memberName + " did not finish in time, its hits are left out");
+                partial = true;
+            } catch (ExecutionException e) {
+                LOG.error("Search in index " + memberName + " failed, its hits are left out", e.getCause());
+                failure = e.getCause();
+                partial = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelAll(futures);
+                throw new CmsSearchException(Messages.get().container(Messages.ERR_SEARCH_PARAMS_1, params), e);
+            }
+        }
+        if (memberResults.isEmpty() && failure != null) {
+            throw new CmsSearchException(Messages.get().container(Messages.ERR_SEARCH_PARAMS_1, params), failure);
+        }
+
+        int start = count > 0 ? matchesPerPage * (page - 1) : 0;
+        searchResults.addAll(merge(memberResults, params.getSort(), start, count > 0 ? count : Integer.MAX_VALUE));
+        searchResults.setHitCount(hitCount);
+        searchResults.setHitCountExact(hitCountExact && !partial);
+        searchResults.setPartial(partial);
+        return searchResults;
+    }
+
+    /**
+     * Merges the sorted hits of the members with a heap that contains the next hit of every member.
+     */
+    private List<CmsSearchResult> merge(List<SolrSearchResultList> memberResults, Sort sort, int start, int end) {
+        final Comparator<CmsSearchResult> hitComparator = new HitComparator(sort);
+        PriorityQueue<MemberHits> heap = new PriorityQueue<MemberHits>(Math.max(1, memberResults.size()),
+                new Comparator<MemberHits>() {
+
+            public int compare(MemberHits first, MemberHits second) {
+                int result = hitComparator.compare(first.peek(), second.peek());
+                // equal hits keep the order of the members
+                return result != 0 ? result : first.member - second.member;
+            }
+        });
+        for (int i = 0; i < memberResults.size(); i++) {
+            if (!memberResults.get(i).isEmpty()) {
+                heap.add(new MemberHits(memberResults.get(i), i));
+            }
+        }
+
+        List<CmsSearchResult> page = new ArrayList<CmsSearchResult>();
+        for (int position = 0; !heap.isEmpty() && position < end; position++) {
+            MemberHits next = heap.poll();
+            CmsSearchResult hit = next.poll();
+            if (position >= start) {
+                page.add(hit);
+            }
+            if (next.hasNext()) {
+                heap.add(next);
+            }
+        }
+        return page;
+    }
+
+    private List<SolrSearchIndex> getMembers(List<String> memberNames, CmsSearchParameters params)
+            throws CmsSearchException {
+        List<SolrSearchIndex> members = new ArrayList<SolrSearchIndex>();
+        for (String memberName : memberNames) {
+            CmsSearchIndex member = getIndex(memberName);
+            if (!(member instanceof SolrSearchIndex)) {
+                throw new CmsSearchException(Messages.get().container(Messages.ERR_SEARCH_PARAMS_1, params),
+                        new IllegalStateException("Member " + memberName + " of index " + getName()
+                        + " is not a Solr search index"));
+            }
+            members.add((SolrSearchIndex) member);
+        }
+        return members;
+    }
+
+    /**
+     * Returns the index with the given name from the search manager of OpenCms.
+     */
+    CmsSearchIndex getIndex(String indexName) {
+        return OpenCms.getSearchManager().getIndex(indexName);
+    }
+
+    /**
+     * Creates the context of a member search, the Cms object of the user stays in use by the calling thread.
+     */
+    CmsObject initMemberCms(CmsObject cms) throws CmsException {
+        return OpenCms.initCmsObject(cms);
+    }
+
+    private void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Returns the document from the first member index that contains it.
+     * @param rootPath the root path of the document to get
+     * @return the document or null if no member contains it
+     */
+    @Override
+    public Document getDocument(String rootPath) {
+        for (String memberName : federation.memberNames) {
+            CmsSearchIndex member = getIndex(memberName);
+            if (member != null) {
+                Document document = member.getDocument(rootPath);
+                if (document != null) {
+                    return document;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns an index writer that ignores all changes, the documents are indexed by the member indexes.
+     * @param create ignored
+     * @return the index writer
+     * @throws CmsIndexException never
+     */
+    @Override
+    public I_CmsIndexWriter getIndexWriter(boolean create) throws CmsIndexException {
+        return new I_CmsIndexWriter() {
+
+            public void close() throws IOException {
+                // NOOP
+            }
+
+            public void commit() throws IOException {
+                // NOOP
+            }
+
+            public void deleteDocuments(String rootPath) throws IOException {
+                // NOOP
+            }
+
+            public void optimize() throws IOException {
+                // NOOP
+            }
+
+            public void updateDocument(String rootPath, Document document) throws IOException {
+                // NOOP
+            }
+        };
+    }
+
+    @Override
+    public IndexSearcher getSearcher() {
+        throw new UnsupportedOperationException("Invalid call to getSearcher for FederatedSolrSearchIndex");
+    }
+
+    @Override
+    protected String createIndexBackup() {
+        return null;
+    }
+
+    @Override
+    protected synchronized void indexSearcherClose() {
+        // NOOP
+    }
+
+    @Override
+    protected synchronized void indexSearcherOpen(String path) {
+        // NOOP
+    }
+
+    /**
+     * The configuration of the federated index together with the pool that searches its members.
+     */
+    private static class Federation {
+
+        private final List<String> memberNames;
+        private final int memberTimeout;
+        private final AsyncSearchExecutor executor;
+
+        Federation(List<String> memberNames, int memberTimeout, AsyncSearchExecutor executor) {
+            this.memberNames = memberNames;
+            this.memberTimeout = memberTimeout;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Orders hits like Solr does for the sort of the search. Hits sorted by relevance are compared by their score,
+     * which is normalized to the best hit of each member.
+     */
+    private static class HitComparator implements Comparator<CmsSearchResult> {
+
+        private final SortField[] sortFields;
+
+        HitComparator(Sort sort) {
+            this.sortFields = sort != null ? sort.getSort() : new SortField[]{SortField.FIELD_SCORE};
+        }
+
+        public int compare(CmsSearchResult first, CmsSearchResult second) {
+            for (SortField sortField : sortFields) {
+                int result = 0;
+                if (sortField.getType() == SortField.SCORE || sortField.getField() == null) {
+                    // higher scores first
+                    result = second.getScore() - first.getScore();
+                } else if (sortField.getType() != SortField.DOC) {
+                    Object firstValue = getValue(first, sortField.getField());
+                    Object secondValue = getValue(second, sortField.getField());
+                    if (firstValue == null || secondValue == null) {
+                        // missing values last, whatever the direction is
+                        if (firstValue != secondValue) {
+                            return firstValue == null ? 1 : -1;
+                        }
+                    } else {
+                        result = compareValues(firstValue, secondValue);
+                    }
+                }
+                if (sortField.getReverse()) {
+                    result = -result;
+                }
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        }
+
+        private Object getValue(CmsSearchResult hit, String field) {
+            return hit instanceof SolrSearchResult ? ((SolrSearchResult) hit).getFieldValue(field) : null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private int compareValues(Object first, Object second) {
+            if (first instanceof Comparable<?> && first.getClass().equals(second.getClass())) {
+                return ((Comparable<Object>) first).compareTo(second);
+            }
+            return first.toString().compareTo(second.toString());
+        }
+    }
+
+    /**
+     * The remaining hits of one member.
+     */
+    private static class MemberHits {
+
+        private final List<CmsSearchResult> hits;
+        private final int member;
+        private int position;
+
+        MemberHits(List<CmsSearchResult> hits, int member) {
+            this.hits = hits;
+            this.member = member;
+        }
+
+        CmsSearchResult peek() {
+            return hits.get(position);
+        }
+
+        CmsSearchResult poll() {
+            return hits.get(position++);
+        }
+
+        boolean hasNext() {
+            return position < hits.size();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.synyx.opencms.solr;
+
+/**
+ * Converts the value of one field between the String stored in a Lucene document and the value of a Solr document.
+ * Implementations have to be thread safe as one instance is used for all documents of an index.
+ * @see FieldConverters
+ */
+public interface FieldConverter {
+
+    /**
+     * Converts the value of a Lucene field to the value that is sent to Solr.
+     * @param luceneValue the String value of the Lucene field
+     * @return the Solr value or null if the field should not be sent to Solr
+     */
+    Object toSolrValue(String luceneValue);
+
+    /**
+     * Converts a value returned by Solr to the String value of a Lucene field. Multi-valued fields are converted
+     * value by value.
+     * @param solrValue a single value of the Solr field
+     * @return the String value or null if the field should not be added to the Lucene document
+     */
+    String toLuceneValue(Object solrValue);
+}
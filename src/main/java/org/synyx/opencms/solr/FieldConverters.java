@@ -0,0 +1,212 @@
+package org.synyx.opencms.solr;
+
+import java.text.ParseException;
+import java.util.Date;
+import org.apache.lucene.document.DateTools;
+
+/**
+ * The {@link FieldConverter}s for the common field types.
+ */
+public final class FieldConverters {
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /** Passes the value on as a String. */
+    public static final FieldConverter STRING = new FieldConverter() {
+
+        public Object toSolrValue(String luceneValue) {
+            return luceneValue;
+        }
+
+        public String toLuceneValue(Object solrValue) {
+            return solrValue.toString();
+        }
+    };
+
+    /** Converts between the {@link DateTools} format of OpenCms and Solr dates, in UTC with millisecond resolution. */
+    public static final FieldConverter DATE = new FieldConverter() {
+
+        public Object toSolrValue(String luceneValue) {
+            return luceneValue != null ? new Date(parseDate(luceneValue)) : null;
+        }
+
+        public String toLuceneValue(Object solrValue) {
+            return formatDate(((Date) solrValue).getTime());
+        }
+    };
+
+    /** Sends the value as an Integer. */
+    public static final FieldConverter INTEGER = new FieldConverter() {
+
+        public Object toSolrValue(String luceneValue) {
+            return luceneValue != null ? Integer.valueOf(luceneValue.trim()) : null;
+        }
+
+        public String toLuceneValue(Object solrValue) {
+            return solrValue.toString();
+        }
+    };
+
+    /** Sends the value as a Long. */
+    public static final FieldConverter LONG = new FieldConverter() {
+
+        public Object toSolrValue(String luceneValue) {
+            return luceneValue != null ? Long.valueOf(luceneValue.trim()) : null;
+        }
+
+        public String toLuceneValue(Object solrValue) {
+            return solrValue.toString();
+        }
+    };
+
+    /** Sends the value as a Double. */
+    public static final FieldConverter DOUBLE = new FieldConverter() {
+
+        public Object toSolrValue(String luceneValue) {
+            return luceneValue != null ? Double.valueOf(luceneValue.trim()) : null;
+        }
+
+        public String toLuceneValue(Object solrValue) {
+            return solrValue.toString();
+        }
+    };
+
+    /** Leaves the field out in both directions. */
+    public static final FieldConverter SKIP = new FieldConverter() {
+
+        public Object toSolrValue(String luceneValue) {
+            return null;
+        }
+
+        public String toLuceneValue(Object solrValue) {
+            return null;
+        }
+    };
+
+    private FieldConverters() {
+    }
+
+    /**
+     * Returns the converter for a type name as used in <code>solr.properties</code>.
+     * @param name one of string, date, integer, long, double or skip
+     * @return the converter
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static FieldConverter forName(String name) {
+        String type = name.trim().toLowerCase();
+        if ("string".equals(type)) {
+            return STRING;
+        } else if ("date".equals(type)) {
+            return DATE;
+        } else if ("integer".equals(type)) {
+            return INTEGER;
+        } else if ("long".equals(type)) {
+            return LONG;
+        } else if ("double".equals(type)) {
+            return DOUBLE;
+        } else if ("skip".equals(type)) {
+            return SKIP;
+        }
+        throw new IllegalArgumentException("Unknown field converter " + name);
+    }
+
+    /**
+     * Parses a date in the format of {@link DateTools} (yyyyMMddHHmmssSSS in UTC, possibly shortened to a lower
+     * resolution) without creating a date format and calendar for every value.
+     */
+    static long parseDate(String value) {
+        int length = value.length();
+        if ((length != 17 && (length > 14 || length < 4 || length % 2 != 0)) || !isDigits(value)) {
+            return parseDateWithDateTools(value);
+        }
+        int year = parseInt(value, 0, 4, 0);
+        int month = parseInt(value, 4, 6, 1);
+        int day = parseInt(value, 6, 8, 1);
+        int hour = parseInt(value, 8, 10, 0);
+        int minute = parseInt(value, 10, 12, 0);
+        int second = parseInt(value, 12, 14, 0);
+        int millis = parseInt(value, 14, 17, 0);
+        if (month < 1 || month > 12 || day < 1 || day > 31) {
+            return parseDateWithDateTools(value);
+        }
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+    }
+
+    /**
+     * Formats a date like {@link DateTools#dateToString(Date, DateTools.Resolution)} with millisecond resolution.
+     */
+    static String formatDate(long time) {
+        long days = time / MILLIS_PER_DAY;
+        long millisOfDay = time % MILLIS_PER_DAY;
+        if (millisOfDay < 0) {
+            days--;
+            millisOfDay += MILLIS_PER_DAY;
+        }
+        // civil date from the days since 1970-01-01, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        char[] result = new char[17];
+        appendDigits(result, 0, year, 4);
+        appendDigits(result, 4, month, 2);
+        appendDigits(result, 6, day, 2);
+        appendDigits(result, 8, (int) (millisOfDay / 3600000), 2);
+        appendDigits(result, 10, (int) (millisOfDay / 60000 % 60), 2);
+        appendDigits(result, 12, (int) (millisOfDay / 1000 % 60), 2);
+        appendDigits(result, 14, (int) (millisOfDay % 1000), 3);
+        return new String(result);
+    }
+
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static long parseDateWithDateTools(String value) {
+        try {
+            return DateTools.stringToTime(value);
+        } catch (ParseException ex) {
+            throw new IllegalArgumentException("Failed to parse date " + value, ex);
+        }
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parseInt(String value, int start, int end, int defaultValue) {
+        if (value.length() < end) {
+            return defaultValue;
+        }
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            result = result * 10 + (value.charAt(i) - '0');
+        }
+        return result;
+    }
+
+    private static void appendDigits(char[] target, int offset, int value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            target[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.synyx.opencms.solr;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.solr.client.solrj.SolrQuery;
+
+/**
+ * Collects the filter queries of a search and produces them in a canonical form. Solr caches the documents matching
+ * a filter query by its string, so equivalent searches should always produce the same strings: the filter queries are
+ * sorted and duplicates are removed, alternative values for the same field are merged into a single filter query.
+ */
+public class FilterQueryCompiler {
+
+    private final Set<String> filterQueries = new TreeSet<String>();
+    private final Map<String, Set<String>> alternativesByField = new TreeMap<String, Set<String>>();
+
+    /**
+     * Adds a filter query for a single field value.
+     * @param fieldName the name of the field
+     * @param value the value or range the field has to match
+     * @param occur whether documents must or must not match
+     * @return this compiler
+     */
+    public FilterQueryCompiler add(String fieldName, String value, Occur occur) {
+        filterQueries.add(toFilterQuery(fieldName, value, occur));
+        return this;
+    }
+
+    /**
+     * Adds a filter query that has already been built.
+     * @param filterQuery the complete filter query
+     * @return this compiler
+     */
+    public FilterQueryCompiler add(String filterQuery) {
+        filterQueries.add(filterQuery);
+        return this;
+    }
+
+    /**
+     * Adds an alternative value for a field. All alternatives of a field are combined into one filter query that
+     * matches if any of the values matches.
+     * @param fieldName the name of the field
+     * @param value one of the values the field may match
+     * @return this compiler
+     */
+    public FilterQueryCompiler addAlternative(String fieldName, String value) {
+        Set<String> alternatives = alternativesByField.get(fieldName);
+        if (alternatives == null) {
+            alternatives = new TreeSet<String>();
+            alternativesByField.put(fieldName, alternatives);
+        }
+        alternatives.add(value);
+        return this;
+    }
+
+    /**
+     * Returns the canonical filter queries.
+     * @return the filter queries in sorted order
+     */
+    public String[] compile() {
+        Set<String> result = new TreeSet<String>(filterQueries);
+        for (Map.Entry<String, Set<String>> entry : alternativesByField.entrySet()) {
+            result.add(toFilterQuery(entry.getKey(), entry.getValue()));
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Adds the canonical filter queries to the query.
+     * @param solrQuery
+     */
+    public void addTo(SolrQuery solrQuery) {
+        solrQuery.addFilterQuery(compile());
+    }
+
+    /**
+     * Builds a single filter query.
+     * @param fieldName the name of the field
+     * @param value the value or range the field has to match
+     * @param occur whether documents must or must not match
+     * @return the filter query
+     */
+    public static String toFilterQuery(String fieldName, String value, Occur occur) {
+        StringBuilder builder = new StringBuilder(fieldName.length() + value.length() + 2);
+        if (occur == Occur.MUST_NOT) {
+            builder.append('-');
+        } else if (occur == Occur.MUST) {
+            builder.append('+');
+        }
+        // SHOULD or unspecified doesn't need a prefix
+        return builder.append(fieldName).append(':').append(value).toString();
+    }
+
+    private static String toFilterQuery(String fieldName, Set<String> values) {
+        if (values.size() == 1) {
+            return toFilterQuery(fieldName, values.iterator().next(), Occur.SHOULD);
+        }
+
+        int length = fieldName.length() + 3;
+        for (String value : values) {
+            length += value.length() + 4;
+        }
+        StringBuilder builder = new StringBuilder(length).append(fieldName).append(":(");
+        Iterator<String> iterator = values.iterator();
+        builder.append(iterator.next());
+        while (iterator.hasNext()) {
+            builder.append(" OR ").append(iterator.next());
+        }
+        return builder.append(')').toString();
+    }
+}
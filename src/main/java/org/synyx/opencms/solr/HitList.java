@@ -0,0 +1,111 @@
+package org.synyx.opencms.solr;
+
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.opencms.search.fields.CmsSearchField;
+
+/**
+ * Compact representation of the hits returned by Solr. Only the values needed to check the permissions and to rank
+ * the hits are kept, in plain arrays instead of one map per document.
+ */
+public class HitList {
+
+    /** The fields that have to be requested from Solr to create a hit list. */
+    public static final String[] FIELDS = {
+        SolrSearchIndex.FIELD_ID, CmsSearchField.FIELD_PATH, CmsSearchField.FIELD_TYPE, SolrSearchIndex.FIELD_SCORE};
+
+    private final String[] ids;
+    private final String[] paths;
+    private final String[] types;
+    private final float[] scores;
+    private final long numFound;
+    private final float maxScore;
+
+    private HitList(int size, long numFound, float maxScore) {
+        this.ids = new String[size];
+        this.paths = new String[size];
+        this.types = new String[size];
+        this.scores = new float[size];
+        this.numFound = numFound;
+        this.maxScore = maxScore;
+    }
+
+    /**
+     * Creates a hit list from the documents of a Solr response.
+     * @param documents
+     * @return the hit list
+     */
+    public static HitList fromDocuments(SolrDocumentList documents) {
+        HitList hitList = new HitList(documents.size(), documents.getNumFound(),
+                documents.getMaxScore() == null ? 1f : documents.getMaxScore());
+        for (int i = 0; i < documents.size(); i++) {
+            SolrDocument document = documents.get(i);
+            hitList.ids[i] = (String) document.getFieldValue(SolrSearchIndex.FIELD_ID);
+            hitList.paths[i] = (String) document.getFieldValue(CmsSearchField.FIELD_PATH);
+            hitList.types[i] = (String) document.getFieldValue(CmsSearchField.FIELD_TYPE);
+            Object score = document.getFieldValue(SolrSearchIndex.FIELD_SCORE);
+            hitList.scores[i] = score == null ? 0f : (Float) score;
+        }
+        return hitList;
+    }
+
+    /**
+     * Returns the number of hits in this list.
+     * @return the size
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Returns the number of documents that matched the query, which can be more than the hits in this list.
+     * @return the number of documents found
+     */
+    public long getNumFound() {
+        return numFound;
+    }
+
+    public float getMaxScore() {
+        return maxScore;
+    }
+
+    public String getId(int index) {
+        return ids[index];
+    }
+
+    public String getPath(int index) {
+        return paths[index];
+    }
+
+    public String getType(int index) {
+        return types[index];
+    }
+
+    public float getScore(int index) {
+        return scores[index];
+    }
+
+    /**
+     * Returns the paths for a range of hits.
+     * @param from the first hit, inclusive
+     * @param to the last hit, exclusive
+     * @return the paths
+     */
+    public String[] getPaths(int from, int to) {
+        String[] result = new String[to - from];
+        System.arraycopy(paths, from, result, 0, to - from);
+        return result;
+    }
+
+    /**
+     * Returns the types for a range of hits.
+     * @param from the first hit, inclusive
+     * @param to the last hit, exclusive
+     * @return the types
+     */
+    public String[] getTypes(int from, int to) {
+        String[] result = new String[to - from];
+        System.arraycopy(types, from, result, 0, to - from);
+        return result;
+    }
+}
@@ -0,0 +1,378 @@
+package org.synyx.opencms.solr;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.BinaryRequestWriter;
+import org.apache.solr.client.solrj.impl.CommonsHttpSolrServer;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * Keeps one Solr client with a pooled connection manager per Solr server for the whole process, so that all indexes,
+ * index writers and index services that use the same server share their connections. An index can be isolated from
+ * the others by giving it its own <code>connectionPool</code> name.
+ * <p>
+ * The pool is configured with the properties of the index in <code>solr.properties</code>. If several indexes share a
+ * pool, the configuration of the index that was initialized last is used.
+ * <p>
+ * An index with a <code>queryDeadline</code> sends its queries with a socket timeout of the deadline plus a margin,
+ * so a query the search gave up on doesn't block its thread and connection for longer than necessary. Updates and
+ * commits keep the <code>socketTimeout</code> of the pool. Both use the same connections.
+ * <p>
+ * A routing server is replaced when the replicas or the health check interval of its index change. The old one is
+ * shut down as soon as no index uses it anymore.
+ */
+public final class HttpClientRegistry {
+
+    private static final Log LOG = LogFactory.getLog(HttpClientRegistry.class);
+    private static final String CONFIG_CONNECTION_POOL = "connectionPool";
+    private static final String CONFIG_MAX_CONNECTIONS = "maxConnections";
+    private static final String CONFIG_MAX_CONNECTIONS_PER_HOST = "maxConnectionsPerHost";
+    private static final String CONFIG_CONNECT_TIMEOUT = "connectTimeout";
+    private static final String CONFIG_SOCKET_TIMEOUT = "socketTimeout";
+    private static final String CONFIG_IDLE_CONNECTION_TIMEOUT = "idleConnectionTimeout";
+    private static final String CONFIG_ALLOW_COMPRESSION = "allowCompression";
+    private static final String CONFIG_HEDGE_REQUESTS = "hedgeRequests";
+    private static final String CONFIG_QUERY_DEADLINE = "queryDeadline";
+    private static final int QUERY_TIMEOUT_MARGIN_MILLIS = 1000;
+    private static final long IDLE_CHECK_INTERVAL_SECONDS = 10;
+
+    private static final Map<String, PooledClient> CLIENTS = new LinkedHashMap<String, PooledClient>();
+    private static final Map<String, ReplicaRoutingSolrServer> ROUTERS =
+            new LinkedHashMap<String, ReplicaRoutingSolrServer>();
+    private static final Map<String, String> ROUTER_KEYS_BY_INDEX = new HashMap<String, String>();
+    private static ScheduledExecutorService idleConnectionEvictor;
+
+    private HttpClientRegistry() {
+    }
+
+    /**
+     * Returns the shared client for the Solr server of an index, creating it if it doesn't exist yet. The settings
+     * of the connection pool are updated from the configuration.
+     * @param indexConfiguration the configuration of the index
+     * @return the client
+     * @throws IllegalStateException if the url of the server is invalid
+     */
+    public static SolrServer getSolrServer(IndexConfiguration indexConfiguration) {
+        return getSolrServer(indexConfiguration, indexConfiguration.getUrl());
+    }
+
+    /**
+     * Returns the shared client for a Solr server that is used by an index, e.g. one of its replicas.
+     * @param indexConfiguration the configuration of the index
+     * @param url the url of the server
+     * @return the client
+     * @throws IllegalStateException if the url of the server is invalid
+     */
+    public static synchronized SolrServer getSolrServer(IndexConfiguration indexConfiguration, String url) {
+        String poolName = indexConfiguration.getConfigurationMap().get(CONFIG_CONNECTION_POOL);
+        String key = poolName != null ? poolName + '|' + url : url;
+
+        PooledClient client = CLIENTS.get(key);
+        if (client == null) {
+            client = new PooledClient(poolName, url);
+            CLIENTS.put(key, client);
+            startIdleConnectionEvictor();
+        }
+        client.configure(indexConfiguration);
+        int queryDeadline = indexConfiguration.getIntValue(CONFIG_QUERY_DEADLINE, 0);
+        int socketTimeout = indexConfiguration.getIntValue(CONFIG_SOCKET_TIMEOUT, 0);
+        if (queryDeadline > 0 && (socketTimeout == 0 || socketTimeout > queryDeadline + QUERY_TIMEOUT_MARGIN_MILLIS)) {
+            return client.getDeadlineServer(queryDeadline + QUERY_TIMEOUT_MARGIN_MILLIS);
+        }
+        return client.server;
+    }
+
+    /**
+     * Returns the shared server that routes the queries of an index to its replicas and everything else to the
+     * server at the url of the index. Indexes with the same replicas and health check interval share the server,
+     * hedging is configured by the index that was initialized last. The server the index used before is shut down if
+     * it isn't used by another index.
+     * @param indexConfiguration the configuration of the index
+     * @param queryUrls the urls of the replicas
+     * @param healthCheckIntervalMillis the interval in which ejected replicas are checked
+     * @return the routing server
+     */
+    public static synchronized ReplicaRoutingSolrServer getReplicaRoutingSolrServer(
+            IndexConfiguration indexConfiguration, List<String> queryUrls, long healthCheckIntervalMillis) {
+        String poolName = indexConfiguration.getConfigurationMap().get(CONFIG_CONNECTION_POOL);
+        String key = poolName + '|' + indexConfiguration.getUrl() + '|' + queryUrls + '|' + healthCheckIntervalMillis;
+        ReplicaRoutingSolrServer router = ROUTERS.get(key);
+        if (router == null) {
+            Map<String, SolrServer> replicas = new LinkedHashMap<String, SolrServer>();
+            for (String queryUrl : queryUrls) {
+                replicas.put(queryUrl, getSolrServer(indexConfiguration, queryUrl));
+            }
+            router = new ReplicaRoutingSolrServer(getSolrServer(indexConfiguration), replicas,
+                    healthCheckIntervalMillis);
+            ROUTERS.put(key, router);
+        }
+        router.setHedging(indexConfiguration.getBooleanValue(CONFIG_HEDGE_REQUESTS, false));
+        String indexName = indexConfiguration.getIndexName();
+        if (indexName != null) {
+            String previousKey = ROUTER_KEYS_BY_INDEX.put(indexName, key);
+            if (previousKey != null && !previousKey.equals(key)) {
+                releaseRouter(previousKey);
+            }
+        }
+        return router;
+    }
+
+    /**
+     * Releases the routing server of an index that doesn't use read replicas anymore. It is shut down if it isn't used
+     * by another index.
+     * @param indexConfiguration the configuration of the index
+     */
+    public static synchronized void releaseReplicaRoutingSolrServer(IndexConfiguration indexConfiguration) {
+        String indexName = indexConfiguration.getIndexName();
+        if (indexName != null) {
+            String previousKey = ROUTER_KEYS_BY_INDEX.remove(indexName);
+            if (previousKey != null) {
+                releaseRouter(previousKey);
+            }
+        }
+    }
+
+    /**
+     * Shuts down the routing servers, the connection pools and the idle connection evictor, called when the module is
+     * shut down.
+     */
+    static synchronized void shutdown() {
+        for (ReplicaRoutingSolrServer router : ROUTERS.values()) {
+            router.shutdown();
+        }
+        ROUTERS.clear();
+        ROUTER_KEYS_BY_INDEX.clear();
+        if (idleConnectionEvictor != null) {
+            idleConnectionEvictor.shutdownNow();
+            idleConnectionEvictor = null;
+        }
+        for (PooledClient client : CLIENTS.values()) {
+            client.connectionManager.shutdown();
+        }
+        CLIENTS.clear();
+    }
+
+    /**
+     * Returns the statistics of all connection pools.
+     * @return a snapshot of the statistics, one entry per pool
+     */
+    public static synchronized List<PoolStatistics> getStatistics() {
+        List<PoolStatistics> statistics = new ArrayList<PoolStatistics>(CLIENTS.size());
+        for (PooledClient client : CLIENTS.values()) {
+            statistics.add(client.getStatistics());
+        }
+        return statistics;
+    }
+
+    private static void releaseRouter(String key) {
+        if (ROUTER_KEYS_BY_INDEX.containsValue(key)) {
+            return;
+        }
+        ReplicaRoutingSolrServer router = ROUTERS.remove(key);
+        if (router != null) {
+            router.shutdown();
+            LOG.info("Shut down the replica routing of " + key + ", it isn't used anymore");
+        }
+    }
+
+    private static void startIdleConnectionEvictor() {
+        if (idleConnectionEvictor != null) {
+            return;
+        }
+        idleConnectionEvictor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "solr-idle-connection-evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        idleConnectionEvictor.scheduleWithFixedDelay(new Runnable() {
+
+            public void run() {
+                for (PooledClient client : getClients()) {
+                    try {
+                        client.closeIdleConnections();
+                    } catch (RuntimeException e) {
+                        LOG.warn("Failed to close idle connections to " + client.url, e);
+                    }
+                }
+            }
+        }, IDLE_CHECK_INTERVAL_SECONDS, IDLE_CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static synchronized List<PooledClient> getClients() {
+        return new ArrayList<PooledClient>(CLIENTS.values());
+    }
+
+    /**
+     * A snapshot of the state of one connection pool.
+     */
+    public static class PoolStatistics {
+
+        private final String poolName;
+        private final String url;
+        private final int maxConnections;
+        private final int maxConnectionsPerHost;
+        private final int connectionsInPool;
+
+        PoolStatistics(String poolName, String url, int maxConnections, int maxConnectionsPerHost,
+                int connectionsInPool) {
+            this.poolName = poolName;
+            this.url = url;
+            this.maxConnections = maxConnections;
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            this.connectionsInPool = connectionsInPool;
+        }
+
+        /**
+         * Returns the name of the pool.
+         * @return the name or null for the pool that is shared by all indexes using the server
+         */
+        public String getPoolName() {
+            return poolName;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public int getMaxConnectionsPerHost() {
+            return maxConnectionsPerHost;
+        }
+
+        /**
+         * Returns the number of open connections, whether they are in use or idle.
+         * @return the number of connections
+         */
+        public int getConnectionsInPool() {
+            return connectionsInPool;
+        }
+
+        @Override
+        public String toString() {
+            return (poolName != null ? poolName + " " : "") + url + ": " + connectionsInPool + " connections (max "
+                    + maxConnections + ", " + maxConnectionsPerHost + " per host)";
+        }
+    }
+
+    private static class PooledClient {
+
+        private final String poolName;
+        private final String url;
+        private final MultiThreadedHttpConnectionManager connectionManager;
+        private final CommonsHttpSolrServer server;
+        private final Map<Integer, DeadlineSolrServer> deadlineServers = new HashMap<Integer, DeadlineSolrServer>();
+        private volatile long idleConnectionTimeout;
+        private boolean allowCompression;
+
+        PooledClient(String poolName, String url) {
+            this.poolName = poolName;
+            this.url = url;
+            this.connectionManager = new MultiThreadedHttpConnectionManager();
+            this.server = createServer(new HttpClient(connectionManager));
+        }
+
+        void configure(IndexConfiguration indexConfiguration) {
+            HttpConnectionManagerParams params = connectionManager.getParams();
+            params.setMaxTotalConnections(indexConfiguration.getIntValue(CONFIG_MAX_CONNECTIONS, 128));
+            params.setDefaultMaxConnectionsPerHost(indexConfiguration.getIntValue(CONFIG_MAX_CONNECTIONS_PER_HOST, 32));
+            params.setConnectionTimeout(indexConfiguration.getIntValue(CONFIG_CONNECT_TIMEOUT, 5000));
+            params.setSoTimeout(indexConfiguration.getIntValue(CONFIG_SOCKET_TIMEOUT, 0));
+            allowCompression = indexConfiguration.getBooleanValue(CONFIG_ALLOW_COMPRESSION, false);
+            server.setAllowCompression(allowCompression);
+            for (DeadlineSolrServer deadlineServer : deadlineServers.values()) {
+                deadlineServer.queryServer.setAllowCompression(allowCompression);
+            }
+            idleConnectionTimeout = indexConfiguration.getIntValue(CONFIG_IDLE_CONNECTION_TIMEOUT, 60000);
+        }
+
+        /**
+         * Returns the server that sends queries with the given socket timeout. The timeout is set on its own
+         * {@link HttpClient}, the timeout of a method overrides the one of the connection.
+         */
+        DeadlineSolrServer getDeadlineServer(int socketTimeout) {
+            DeadlineSolrServer deadlineServer = deadlineServers.get(socketTimeout);
+            if (deadlineServer == null) {
+                HttpClient httpClient = new HttpClient(connectionManager);
+                httpClient.getParams().setSoTimeout(socketTimeout);
+                CommonsHttpSolrServer queryServer = createServer(httpClient);
+                queryServer.setAllowCompression(allowCompression);
+                deadlineServer = new DeadlineSolrServer(queryServer, server);
+                deadlineServers.put(socketTimeout, deadlineServer);
+            }
+            return deadlineServer;
+        }
+
+        private CommonsHttpSolrServer createServer(HttpClient httpClient) {
+            CommonsHttpSolrServer solrServer;
+            try {
+                solrServer = new CommonsHttpSolrServer(url, httpClient);
+            } catch (MalformedURLException ex) {
+                throw new IllegalStateException(ex);
+            }
+            solrServer.setRequestWriter(new BinaryRequestWriter());
+            return solrServer;
+        }
+
+        void closeIdleConnections() {
+            if (idleConnectionTimeout > 0) {
+                connectionManager.closeIdleConnections(idleConnectionTimeout);
+            }
+            connectionManager.deleteClosedConnections();
+        }
+
+        PoolStatistics getStatistics() {
+            HttpConnectionManagerParams params = connectionManager.getParams();
+            return new PoolStatistics(poolName, url, params.getMaxTotalConnections(),
+                    params.getDefaultMaxConnectionsPerHost(), connectionManager.getConnectionsInPool());
+        }
+    }
+
+    /**
+     * Sends queries with the socket timeout of the query deadline and everything else, e.g. commits, with the socket
+     * timeout of the pool.
+     */
+    private static class DeadlineSolrServer extends SolrServer {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CommonsHttpSolrServer queryServer;
+        private final SolrServer updateServer;
+
+        DeadlineSolrServer(CommonsHttpSolrServer queryServer, SolrServer updateServer) {
+            this.queryServer = queryServer;
+            this.updateServer = updateServer;
+        }
+
+        @Override
+        public NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException {
+            if (request instanceof QueryRequest) {
+                return queryServer.request(request);
+            }
+            return updateServer.request(request);
+        }
+    }
+}
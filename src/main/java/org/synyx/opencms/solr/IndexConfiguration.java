@@ -1,28 +1,71 @@
 package org.synyx.opencms.solr;
 
 import org.apache.solr.client.solrj.SolrServer;
-import org.apache.solr.client.solrj.impl.CommonsHttpSolrServer;
-import org.apache.solr.client.solrj.impl.BinaryRequestWriter;
-import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
  * This class encapsulates the index configuration properties (these are dependency injected) and also provides an
- * instance of SolrServer (which is created in this classes constructor).
+ * instance of SolrServer (which is looked up in this classes constructor, it is shared by all configurations of the
+ * same server, see {@link HttpClientRegistry}). If an index has read replicas, the queries are sent to the
+ * <code>queryUrls</code> and all updates to the <code>url</code> of the index. With <code>mode=embedded</code> the
+ * index uses a Solr core in the same JVM that is loaded from <code>solrHome</code> instead, the classes of Solr are
+ * loaded from the jars in <code>solrLib</code>.
  * @author Oliver Messner, Synyx GmbH & Co. KG, messner@synyx.de
  */
 public class IndexConfiguration {
 
     private static final String CONFIG_URL = "url";
+    private static final String CONFIG_QUERY_URLS = "queryUrls";
+    private static final String CONFIG_HEALTH_CHECK_INTERVAL = "healthCheckInterval";
+    private static final String CONFIG_MODE = "mode";
+    private static final String CONFIG_SOLR_HOME = "solrHome";
+    private static final String CONFIG_SOLR_LIB = "solrLib";
+    private static final String CONFIG_SOLR_CORE = "solrCore";
+    private static final String MODE_EMBEDDED = "embedded";
 
+    private String indexName;
     private Map<String, String> configurationMap;
     private SolrServer solrServer;
+    private SolrServer updateSolrServer;
 
     public IndexConfiguration(Map<String, String> configurationMap) {
+        this(null, configurationMap);
+    }
+
+    /**
+     * Creates the configuration of a named index. The name identifies the index when the Solr clients it used before
+     * are released.
+     * @param indexName the name of the index
+     * @param configurationMap the values of the index
+     */
+    IndexConfiguration(String indexName, Map<String, String> configurationMap) {
+        this.indexName = indexName;
         this.configurationMap = configurationMap;
         initServer();
     }
 
+    /**
+     * Creates a configuration for a server that is not looked up from the configuration, e.g. an in-process
+     * stand-in. All requests of the index are sent to this server.
+     * @param configurationMap the values of the index
+     * @param solrServer the server to use
+     */
+    public IndexConfiguration(Map<String, String> configurationMap, SolrServer solrServer) {
+        this.configurationMap = configurationMap;
+        this.solrServer = solrServer;
+        this.updateSolrServer = solrServer;
+    }
+
+    /**
+     * Returns the name of the index.
+     * @return the name or null if the configuration has not been read from <code>solr.properties</code>
+     */
+    String getIndexName() {
+        return indexName;
+    }
+
     public Map<String, String> getConfigurationMap() {
         return configurationMap;
     }
@@ -31,6 +74,35 @@ public class IndexConfiguration {
         return solrServer;
     }
 
+    /**
+     * Returns the server at the url of the index, without routing the queries to the replicas. Used when documents
+     * are read to be written back, as the replicas may not have received the latest changes yet.
+     * @return the server the index is written to
+     */
+    public SolrServer getUpdateSolrServer() {
+        return updateSolrServer;
+    }
+
+    /**
+     * Returns the url of the Solr server. For an embedded server this is a pseudo url built from the Solr home and
+     * the core, so commits can be announced to the indexes that use the same core.
+     * @return the url
+     */
+    public String getUrl() {
+        if (isEmbedded()) {
+            return "embedded:" + configurationMap.get(CONFIG_SOLR_HOME) + "#" + getSolrCore();
+        }
+        return configurationMap.get(CONFIG_URL);
+    }
+
+    /**
+     * Returns whether the index uses a Solr core in the same JVM.
+     * @return true for <code>mode=embedded</code>
+     */
+    public boolean isEmbedded() {
+        return MODE_EMBEDDED.equals(configurationMap.get(CONFIG_MODE));
+    }
+
     public boolean getBooleanValue(String key, boolean defaultValue) {
         String value = configurationMap.get(key);
         if (value == null) {
@@ -50,12 +122,57 @@ public class IndexConfiguration {
     }
 
     private void initServer() {
-        try {
-            CommonsHttpSolrServer httpSolrServer = new CommonsHttpSolrServer(configurationMap.get(CONFIG_URL));
-            httpSolrServer.setRequestWriter(new BinaryRequestWriter());
-            solrServer = httpSolrServer;
-        } catch (MalformedURLException ex) {
-            throw new IllegalStateException(ex);
+        if (isEmbedded()) {
+            String solrHome = configurationMap.get(CONFIG_SOLR_HOME);
+            if (solrHome == null) {
+                throw new IllegalStateException("solrHome is required for an embedded Solr server");
+            }
+            String solrLib = configurationMap.get(CONFIG_SOLR_LIB);
+            if (solrLib == null) {
+                throw new IllegalStateException("solrLib is required for an embedded Solr server");
+            }
+            solrServer = EmbeddedSolrServerFactory.getSolrServer(solrLib, solrHome, getSolrCore());
+            updateSolrServer = solrServer;
+            HttpClientRegistry.releaseReplicaRoutingSolrServer(this);
+            return;
+        }
+        if (configurationMap.get(CONFIG_URL) == null) {
+            // e.g. a federated index that only searches other indexes
+            return;
+        }
+        updateSolrServer = HttpClientRegistry.getSolrServer(this);
+        List<String> queryUrls = getQueryUrls();
+        if (queryUrls.isEmpty()) {
+            solrServer = updateSolrServer;
+            HttpClientRegistry.releaseReplicaRoutingSolrServer(this);
+        } else {
+            solrServer = HttpClientRegistry.getReplicaRoutingSolrServer(this, queryUrls,
+                    getIntValue(CONFIG_HEALTH_CHECK_INTERVAL, 5000));
+        }
+    }
+
+    /**
+     * Closes the embedded Solr cores, called when the module is shut down.
+     */
+    static void shutdownEmbeddedServers() {
+        EmbeddedSolrServerFactory.shutdown();
+    }
+
+    private String getSolrCore() {
+        String solrCore = configurationMap.get(CONFIG_SOLR_CORE);
+        return solrCore != null ? solrCore : "";
+    }
+
+    private List<String> getQueryUrls() {
+        List<String> queryUrls = new ArrayList<String>();
+        String value = configurationMap.get(CONFIG_QUERY_URLS);
+        if (value != null) {
+            for (String queryUrl : value.split(",")) {
+                if (queryUrl.trim().length() > 0) {
+                    queryUrls.add(queryUrl.trim());
+                }
+            }
         }
+        return queryUrls;
     }
 }
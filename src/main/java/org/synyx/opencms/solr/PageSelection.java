@@ -0,0 +1,152 @@
+package org.synyx.opencms.solr;
+
+/**
+ * Keeps track of the hits that are shown on the requested page while the hits are checked in Solr ranking order.
+ * The hits may be fetched from Solr in several chunks, so each selected hit is stored as the number of the chunk
+ * and its position in the chunk.
+ */
+class PageSelection {
+
+    private final boolean useSolrPaging;
+    private final long numFound;
+    private final int start;
+    private final int end;
+    private int[] chunks = new int[16];
+    private int[] hits = new int[16];
+    private int size;
+    private int accepted;
+    private int rejected;
+
+    /**
+     * Creates a new selection.
+     * @param matchesPerPage the number of matches per page, 0 for all matches
+     * @param page the requested page
+     * @param numFound the number of documents Solr found
+     * @param useSolrPaging whether Solr only returned the hits of the requested page
+     */
+    PageSelection(int matchesPerPage, int page, long numFound, boolean useSolrPaging) {
+        this.useSolrPaging = useSolrPaging;
+        this.numFound = numFound;
+        int hitCount = (int) numFound;
+        if ((matchesPerPage > 0) && (page > 0) && (hitCount > 0)) {
+            // calculate the final size of the search result
+            int pageStart = matchesPerPage * (page - 1);
+            int pageEnd = pageStart + matchesPerPage;
+            // ensure that both are inside the range of the documents found
+            this.start = (pageStart > hitCount) ? hitCount : pageStart;
+            this.end = (pageEnd > hitCount) ? hitCount : pageEnd;
+        } else {
+            // return all found documents in the search result
+            this.start = 0;
+            this.end = hitCount;
+        }
+    }
+
+    /**
+     * Adds a hit the user may read. It is only selected if it is in the current pagination window or if Solr paging
+     * is used anyway.
+     * @param chunk the number of the chunk the hit belongs to
+     * @param hit the position of the hit in the chunk
+     */
+    void accept(int chunk, int hit) {
+        if (useSolrPaging || accepted >= start) {
+            if (size == hits.length) {
+                chunks = grow(chunks);
+                hits = grow(hits);
+            }
+            chunks[size] = chunk;
+            hits[size] = hit;
+            size++;
+        }
+        accepted++;
+    }
+
+    /**
+     * Counts a hit the user may not read.
+     */
+    void reject() {
+        rejected++;
+    }
+
+    /**
+     * Returns whether enough readable hits have been found to fill the requested page.
+     * @return true if no more hits are needed
+     */
+    boolean isFull() {
+        return !useSolrPaging && accepted >= end;
+    }
+
+    /**
+     * Returns the number of readable hits that are still needed to fill the requested page.
+     * @return the number of missing hits
+     */
+    int getMissingHitCount() {
+        return Math.max(0, end - accepted);
+    }
+
+    int getEnd() {
+        return end;
+    }
+
+    int getAcceptedCount() {
+        return accepted;
+    }
+
+    int getExaminedCount() {
+        return accepted + rejected;
+    }
+
+    /**
+     * Returns the number of documents found minus the ones the user may not read.
+     * @return the visible hit count
+     */
+    int getVisibleHitCount() {
+        return (int) numFound - rejected;
+    }
+
+    /**
+     * Returns the number of readable hits extrapolated from the ratio of readable hits seen so far.
+     * @return the estimated visible hit count
+     */
+    int getEstimatedVisibleHitCount() {
+        int examined = getExaminedCount();
+        if (examined == 0 || examined >= numFound) {
+            return getVisibleHitCount();
+        }
+        return accepted + (int) Math.round((numFound - examined) * ((double) accepted / examined));
+    }
+
+    /**
+     * Returns whether all documents found have been checked.
+     * @return true if the visible hit count is exact
+     */
+    boolean isComplete() {
+        return getExaminedCount() >= numFound;
+    }
+
+    /**
+     * Returns the position of the hit that was selected last.
+     * @return the index for {@link #get(int)} and {@link #getChunk(int)} or -1 if no hit was selected
+     */
+    int getLast() {
+        return size - 1;
+    }
+
+    int getChunk(int index) {
+        return chunks[index];
+    }
+
+    int get(int index) {
+        return hits[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] result = new int[array.length * 2];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+}
@@ -0,0 +1,217 @@
+package org.synyx.opencms.solr;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.opencms.main.CmsException;
+
+/**
+ * Spreads the read permission checks of the hits over a bounded thread pool of an index. The hits are split into
+ * small slices in ranking order; a search only keeps a limited number of slices ahead of the hit it is currently
+ * looking at in flight, so the remaining work can be cancelled as soon as the requested page is filled.
+ * <p>
+ * The queue of the pool is bounded. Slices that are rejected because the pool is busy, and slices whose check did not
+ * finish in time, are checked by the thread of the search, so no readable hit is left out. Each worker thread checks
+ * with its own copy of the Cms object of the search.
+ */
+public class ParallelPermissionChecker {
+
+    private static final Log LOG = LogFactory.getLog(ParallelPermissionChecker.class);
+
+    private static final int SLICE_SIZE = 10;
+    private static final int QUEUED_SLICES_PER_THREAD = 4;
+
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final long timeoutMillis;
+
+    /**
+     * Creates a new checker with its own thread pool.
+     * @param indexName the name of the index, used for the thread names
+     * @param threads the number of threads
+     * @param timeoutMillis the maximum time a search waits for the worker threads before it checks the hits itself
+     */
+    public ParallelPermissionChecker(final String indexName, int threads, long timeoutMillis) {
+        this.threads = threads;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * QUEUED_SLICES_PER_THREAD), new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "solr-permissions-" + indexName + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts checking the permissions of the given hits.
+     * @param resolver the resolver of the search
+     * @param types the document types
+     * @param paths the root paths of the documents
+     * @return the check whose results are available in ranking order
+     */
+    public Check start(ReadPermissionResolver resolver, String[] types, String[] paths) {
+        return new Check(resolver, types, paths, System.currentTimeMillis() + timeoutMillis);
+    }
+
+    /**
+     * Stops the thread pool once the running checks are finished.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Submits a task to the pool.
+     * @return the future of the task or null if the pool is busy or has been shut down by a re-initialization of the
+     * index, the task then has to be run by the calling thread
+     */
+    private Future<boolean[]> submit(Callable<boolean[]> task) {
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The permission checks for the hits of one chunk.
+     */
+    public class Check {
+
+        private final ReadPermissionResolver resolver;
+        private final String[] types;
+        private final String[] paths;
+        private final long deadline;
+        private final Future<boolean[]>[] slices;
+        private final boolean[][] results;
+        private final ConcurrentLinkedQueue<ReadPermissionResolver> workerResolvers =
+                new ConcurrentLinkedQueue<ReadPermissionResolver>();
+        private int submitted;
+
+        @SuppressWarnings("unchecked")
+        private Check(ReadPermissionResolver resolver, String[] types, String[] paths, long deadline) {
+            this.resolver = resolver;
+            this.types = types;
+            this.paths = paths;
+            this.deadline = deadline;
+            int sliceCount = (paths.length + SLICE_SIZE - 1) / SLICE_SIZE;
+            this.slices = new Future[sliceCount];
+            this.results = new boolean[sliceCount][];
+        }
+
+        /**
+         * Returns whether the hit at the given position is readable, waits for its slice if necessary. The slice is
+         * checked by the calling thread if it could not be submitted or did not finish in time.
+         * @param index the position of the hit
+         * @return true if the hit is readable
+         */
+        public boolean isReadable(int index) {
+            int slice = index / SLICE_SIZE;
+            if (results[slice] == null) {
+                // keep the pool busy with the slices that follow
+                int window = Math.min(slices.length, slice + threads * 2);
+                while (submitted < window) {
+                    slices[submitted] = submit(new SliceTask(submitted));
+                    submitted++;
+                }
+                results[slice] = await(slice);
+            }
+            return results[slice][index - slice * SLICE_SIZE];
+        }
+
+        /**
+         * Cancels all checks that are not needed anymore.
+         */
+        public void cancel() {
+            for (int i = 0; i < submitted; i++) {
+                if (results[i] == null && slices[i] != null) {
+                    // interrupting a thread that reads from the VFS could break its database connection
+                    slices[i].cancel(false);
+                }
+            }
+        }
+
+        private boolean[] await(int slice) {
+            Future<boolean[]> future = slices[slice];
+            if (future == null) {
+                return check(resolver, slice);
+            }
+            try {
+                try {
+                    return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (!future.cancel(false)) {
+                        // the check finished right after the timeout
+                        return future.get();
+                    }
+                    LOG.warn("Permission check of search hits timed out, hits " + slice * SLICE_SIZE + " to "
+                            + Math.min(paths.length, (slice + 1) * SLICE_SIZE) + " are checked by the search thread");
+                    return check(resolver, slice);
+                }
+            } catch (CancellationException e) {
+                return check(resolver, slice);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new SolrSearchIndexException("Interrupted while checking the permissions of the hits", e);
+            } catch (ExecutionException e) {
+                cancel();
+                throw new SolrSearchIndexException("Checking the permissions of the hits failed: "
+                        + e.getCause().getMessage(), e.getCause());
+            }
+        }
+
+        private int getSliceLength(int slice) {
+            return Math.min(SLICE_SIZE, paths.length - slice * SLICE_SIZE);
+        }
+
+        private boolean[] check(ReadPermissionResolver sliceResolver, int slice) {
+            int from = slice * SLICE_SIZE;
+            int length = getSliceLength(slice);
+            String[] sliceTypes = new String[length];
+            String[] slicePaths = new String[length];
+            System.arraycopy(types, from, sliceTypes, 0, length);
+            System.arraycopy(paths, from, slicePaths, 0, length);
+            return sliceResolver.hasReadPermissions(sliceTypes, slicePaths);
+        }
+
+        private class SliceTask implements Callable<boolean[]> {
+
+            private final int slice;
+
+            SliceTask(int slice) {
+                this.slice = slice;
+            }
+
+            public boolean[] call() throws CmsException {
+                // a copy is only used by one worker at a time
+                ReadPermissionResolver workerResolver = workerResolvers.poll();
+                if (workerResolver == null) {
+                    workerResolver = resolver.copy();
+                }
+                try {
+                    return check(workerResolver, slice);
+                } finally {
+                    workerResolvers.offer(workerResolver);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package org.synyx.opencms.solr;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.opencms.file.CmsResource;
+import org.opencms.main.CmsEvent;
+import org.opencms.main.I_CmsEventListener;
+import org.opencms.main.OpenCms;
+import org.opencms.util.CmsUUID;
+
+/**
+ * Caches the read permission decisions of the VFS for search hits. A decision is stored per user, project and root
+ * path; access control entries may be set for single users, so the user is the smallest context that can be shared
+ * safely. Guest requests on the Online project all share one context.
+ * <p>
+ * Entries are invalidated when OpenCms fires an event for the resource, e.g. when it is modified, moved or deleted or
+ * its access control list changes. Changes to folders invalidate the entries of all resources below. An event doesn't
+ * search the cache for the entries to remove, it only records the generation at which the path was invalidated; an
+ * entry is used only if neither its path nor one of its parent folders has been invalidated since the decision was
+ * read. Publishing a project clears the cache completely. As group memberships can change without any event, entries
+ * also expire after a while.
+ */
+public class PermissionCache implements I_CmsEventListener {
+
+    private static final int MAX_SIZE = 20000;
+    private static final long TIME_TO_LIVE_MILLIS = 10 * 60 * 1000L;
+    private static final int MAX_INVALIDATIONS = 10000;
+    private static final Log LOG = LogFactory.getLog(PermissionCache.class);
+    private static PermissionCache instance;
+
+    private final BoundedCache<PermissionKey, CachedDecision> cache =
+            new BoundedCache<PermissionKey, CachedDecision>(MAX_SIZE, TIME_TO_LIVE_MILLIS);
+    private final AtomicLong generation = new AtomicLong();
+    // the generation at which a root path has been invalidated, folders end with a slash
+    private final ConcurrentMap<String, Invalidation> invalidations = new ConcurrentHashMap<String, Invalidation>();
+    private volatile long clearedGeneration;
+
+    /**
+     * Returns the cache that is shared by all indexes. The cache registers itself for the OpenCms events when it is
+     * requested for the first time.
+     * @return the shared cache
+     */
+    public static synchronized PermissionCache getInstance() {
+        if (instance == null) {
+            instance = new PermissionCache();
+            OpenCms.addCmsEventListener(instance, new int[]{
+                        I_CmsEventListener.EVENT_PUBLISH_PROJECT,
+                        I_CmsEventListener.EVENT_CLEAR_CACHES,
+                        I_CmsEventListener.EVENT_CLEAR_ONLINE_CACHES,
+                        I_CmsEventListener.EVENT_CLEAR_OFFLINE_CACHES,
+                        I_CmsEventListener.EVENT_RESOURCE_MODIFIED,
+                        I_CmsEventListener.EVENT_RESOURCE_AND_PROPERTIES_MODIFIED,
+                        I_CmsEventListener.EVENT_RESOURCES_MODIFIED,
+                        I_CmsEventListener.EVENT_RESOURCES_AND_PROPERTIES_MODIFIED,
+                        I_CmsEventListener.EVENT_RESOURCE_MOVED,
+                        I_CmsEventListener.EVENT_RESOURCE_DELETED});
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the current generation of the cache. It has to be read before the permissions are read from the VFS
+     * and passed to {@link #put(CmsUUID, CmsUUID, String, PermissionDecision, long)}, so a decision that was read
+     * while the resource changed is not used.
+     * @return the generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Returns the cached decision.
+     * @param userId the user the decision was made for
+     * @param projectId the project the decision was made in
+     * @param rootPath the root path of the resource
+     * @return the decision or null if it is not cached
+     */
+    public PermissionDecision get(CmsUUID userId, CmsUUID projectId, String rootPath) {
+        PermissionKey key = new PermissionKey(userId, projectId, rootPath);
+        CachedDecision cached = cache.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (!isValid(rootPath, cached.generation)) {
+            cache.remove(key);
+            return null;
+        }
+        return cached.decision;
+    }
+
+    /**
+     * Caches a decision.
+     * @param userId the user the decision was made for
+     * @param projectId the project the decision was made in
+     * @param rootPath the root path of the resource
+     * @param decision the decision
+     * @param readGeneration the generation of the cache before the decision was read from the VFS
+     */
+    public void put(CmsUUID userId, CmsUUID projectId, String rootPath, PermissionDecision decision,
+            long readGeneration) {
+        if (!isValid(rootPath, readGeneration)) {
+            // the resource has changed while its permissions were read
+            return;
+        }
+        cache.put(new PermissionKey(userId, projectId, rootPath), new CachedDecision(decision, readGeneration));
+    }
+
+    @Override
+    public void cmsEvent(CmsEvent event) {
+        switch (event.getType()) {
+            case I_CmsEventListener.EVENT_RESOURCE_MODIFIED:
+            case I_CmsEventListener.EVENT_RESOURCE_AND_PROPERTIES_MODIFIED:
+                removeResource(event.getData().get(I_CmsEventListener.KEY_RESOURCE));
+                break;
+            case I_CmsEventListener.EVENT_RESOURCES_MODIFIED:
+            case I_CmsEventListener.EVENT_RESOURCES_AND_PROPERTIES_MODIFIED:
+            case I_CmsEventListener.EVENT_RESOURCE_MOVED:
+            case I_CmsEventListener.EVENT_RESOURCE_DELETED:
+                Object resources = event.getData().get(I_CmsEventListener.KEY_RESOURCES);
+                if (resources instanceof List<?>) {
+                    for (Object resource : (List<?>) resources) {
+                        removeResource(resource);
+                    }
+                } else {
+                    clear();
+                }
+                break;
+            default:
+                // publishing and clearing the caches
+                clear();
+                break;
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        clearedGeneration = generation.incrementAndGet();
+        cache.clear();
+        invalidations.clear();
+    }
+
+    private void removeResource(Object resource) {
+        if (!(resource instanceof CmsResource)) {
+            // we don't know what changed
+            clear();
+            return;
+        }
+
+        // the permissions of a folder are inherited by all resources below, its root path ends with a slash
+        String rootPath = ((CmsResource) resource).getRootPath();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Removing cached permissions for " + rootPath);
+        }
+        if (invalidations.size() >= MAX_INVALIDATIONS) {
+            removeOldInvalidations();
+        }
+        invalidations.put(rootPath, new Invalidation(generation.incrementAndGet(), System.currentTimeMillis()));
+    }
+
+    /**
+     * Forgets the invalidations that are older than the entries of the cache. If there are too many recent ones,
+     * the cache is cleared.
+     */
+    private void removeOldInvalidations() {
+        long expired = System.currentTimeMillis() - TIME_TO_LIVE_MILLIS;
+        Iterator<Invalidation> iterator = invalidations.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().time < expired) {
+                iterator.remove();
+            }
+        }
+        if (invalidations.size() >= MAX_INVALIDATIONS) {
+            clear();
+        }
+    }
+
+    /**
+     * Checks that neither the resource nor one of its parent folders has been invalidated after the given generation.
+     */
+    private boolean isValid(String rootPath, long readGeneration) {
+        if (readGeneration < clearedGeneration) {
+            return false;
+        }
+        if (invalidations.isEmpty()) {
+            return true;
+        }
+        if (isInvalidated(rootPath, readGeneration)) {
+            return false;
+        }
+        for (int end = rootPath.lastIndexOf('/', rootPath.length() - 2); end >= 0;
+                end = rootPath.lastIndexOf('/', end - 1)) {
+            if (isInvalidated(rootPath.substring(0, end + 1), readGeneration)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isInvalidated(String rootPath, long readGeneration) {
+        Invalidation invalidation = invalidations.get(rootPath);
+        return invalidation != null && invalidation.generation > readGeneration;
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.getEvictionCount() + cache.getInvalidationCount();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * The cached outcome of a read permission check. The availability dates are kept so the decision stays valid when
+     * the resource gets released or expires, and can be used in time warp mode as well.
+     */
+    public static class PermissionDecision {
+
+        /** Decision for resources that don't exist or may not be read. */
+        public static final PermissionDecision DENIED = new PermissionDecision(false, 0, 0);
+
+        private final boolean readable;
+        private final long dateReleased;
+        private final long dateExpired;
+
+        /**
+         * Creates a new decision for a readable resource.
+         * @param resource the resource that could be read
+         */
+        public PermissionDecision(CmsResource resource) {
+            this(true, resource.getDateReleased(), resource.getDateExpired());
+        }
+
+        private PermissionDecision(boolean readable, long dateReleased, long dateExpired) {
+            this.readable = readable;
+            this.dateReleased = dateReleased;
+            this.dateExpired = dateExpired;
+        }
+
+        /**
+         * Checks if the resource may be read at the given time.
+         * @param time the request or time warp date
+         * @return true if the resource is readable and available
+         */
+        public boolean isReadable(long time) {
+            return readable && dateReleased <= time && dateExpired >= time;
+        }
+    }
+
+    private static class CachedDecision {
+
+        private final PermissionDecision decision;
+        private final long generation;
+
+        CachedDecision(PermissionDecision decision, long generation) {
+            this.decision = decision;
+            this.generation = generation;
+        }
+    }
+
+    private static class Invalidation {
+
+        private final long generation;
+        private final long time;
+
+        Invalidation(long generation, long time) {
+            this.generation = generation;
+            this.time = time;
+        }
+    }
+
+    private static class PermissionKey {
+
+        private final CmsUUID userId;
+        private final CmsUUID projectId;
+        private final String rootPath;
+
+        PermissionKey(CmsUUID userId, CmsUUID projectId, String rootPath) {
+            this.userId = userId;
+            this.projectId = projectId;
+            this.rootPath = rootPath;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PermissionKey)) {
+                return false;
+            }
+            PermissionKey other = (PermissionKey) obj;
+            return rootPath.equals(other.rootPath) && userId.equals(other.userId) && projectId.equals(other.projectId);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = rootPath.hashCode();
+            hash = 31 * hash + userId.hashCode();
+            hash = 31 * hash + projectId.hashCode();
+            return hash;
+        }
+    }
+}
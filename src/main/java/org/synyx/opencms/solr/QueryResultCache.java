@@ -0,0 +1,222 @@
+package org.synyx.opencms.solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+
+/**
+ * Caches the responses of Solr queries for one index. The key of an entry is built from the normalized query
+ * parameters, so the order in which filter queries were added does not matter.
+ * <p>
+ * Entries are evicted when the cache is full or their time to live is over. Entries that are older than the refresh
+ * time are still returned but are refreshed in the background, so frequently used queries never have to wait for
+ * Solr. All entries are dropped when a commit is performed on the Solr server.
+ */
+public class QueryResultCache implements CommitNotifier.CommitListener {
+
+    private static final Log LOG = LogFactory.getLog(QueryResultCache.class);
+    private static final ExecutorService REFRESH_EXECUTOR = createRefreshExecutor();
+
+    private final SolrServer solrServer;
+    private final long refreshAfterMillis;
+    private final BoundedCache<String, CachedResponse> cache;
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     * @param solrServer the server to query
+     * @param maxSize the maximum number of cached responses
+     * @param timeToLiveMillis the time after which a response is not used anymore
+     * @param refreshAfterMillis the time after which a response is refreshed in the background, 0 to never refresh
+     */
+    public QueryResultCache(SolrServer solrServer, int maxSize, long timeToLiveMillis, long refreshAfterMillis) {
+        this.solrServer = solrServer;
+        this.refreshAfterMillis = refreshAfterMillis;
+        this.cache = new BoundedCache<String, CachedResponse>(maxSize, timeToLiveMillis);
+    }
+
+    /**
+     * Returns the cached response for the query or performs the query if there is none.
+     * @param params the query parameters
+     * @return the response
+     * @throws SolrServerException if the query fails
+     */
+    public QueryResponse query(SolrParams params) throws SolrServerException {
+        String key = createKey(params);
+        CachedResponse cached = cache.get(key);
+        if (cached != null) {
+            if (refreshAfterMillis > 0 && System.currentTimeMillis() - cached.created > refreshAfterMillis) {
+                refresh(key, cached);
+            }
+            return cached.response;
+        }
+
+        // copy the parameters so the caller can't change them afterwards
+        ModifiableSolrParams paramsCopy = new ModifiableSolrParams(params);
+        long queryGeneration = generation.get();
+        QueryResponse response = solrServer.query(paramsCopy);
+        store(key, paramsCopy, response, queryGeneration);
+        return response;
+    }
+
+    /**
+     * Returns the cached response for the query without querying Solr, e.g. while Solr is not available.
+     * @param params the query parameters
+     * @return the response or null if there is none
+     */
+    public QueryResponse getCached(SolrParams params) {
+        CachedResponse cached = cache.get(createKey(params));
+        return cached != null ? cached.response : null;
+    }
+
+    /**
+     * Drops all cached responses.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    @Override
+    public void committed(String url) {
+        clear();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private void store(String key, SolrParams params, QueryResponse response, long queryGeneration) {
+        // a response that was requested before a commit may already be outdated
+        if (generation.get() == queryGeneration) {
+            cache.put(key, new CachedResponse(params, response));
+        }
+    }
+
+    private void refresh(final String key, final CachedResponse cached) {
+        if (!cached.refreshing.compareAndSet(false, true)) {
+            // some other request already triggered the refresh
+            return;
+        }
+        final long queryGeneration = generation.get();
+        try {
+            REFRESH_EXECUTOR.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        store(key, cached.params, solrServer.query(cached.params), queryGeneration);
+                        refreshCount.incrementAndGet();
+                    } catch (Exception e) {
+                        LOG.warn("Failed to refresh cached query " + key, e);
+                        cached.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // the executor is busy, the next request will try again
+            cached.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Builds the key for the parameters. The parameter names are sorted, as are the values of filter queries which
+     * don't depend on their order.
+     */
+    static String createKey(SolrParams params) {
+        List<String> names = new ArrayList<String>();
+        Iterator<String> nameIterator = params.getParameterNamesIterator();
+        while (nameIterator.hasNext()) {
+            names.add(nameIterator.next());
+        }
+        Collections.sort(names);
+
+        StringBuilder key = new StringBuilder();
+        for (String name : names) {
+            String[] values = params.getParams(name);
+            if (values == null) {
+                continue;
+            }
+            if (values.length > 1 && CommonParams.FQ.equals(name)) {
+                values = values.clone();
+                Arrays.sort(values);
+            }
+            for (String value : values) {
+                key.append(name).append('=').append(value).append('&');
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Stops the threads that refresh the cached responses, called when the module is shut down. Expired responses
+     * are not refreshed in the background anymore afterwards.
+     */
+    static void shutdownRefreshExecutor() {
+        REFRESH_EXECUTOR.shutdownNow();
+    }
+
+    private static ExecutorService createRefreshExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(100), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "solr-query-cache-refresh-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static class CachedResponse {
+
+        private final SolrParams params;
+        private final QueryResponse response;
+        private final long created = System.currentTimeMillis();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        CachedResponse(SolrParams params, QueryResponse response) {
+            this.params = params;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.synyx.opencms.solr;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.opencms.db.CmsUserSettings;
+import org.opencms.file.CmsObject;
+import org.opencms.file.CmsResource;
+import org.opencms.file.CmsResourceFilter;
+import org.opencms.main.CmsException;
+import org.opencms.main.OpenCms;
+import org.opencms.search.fields.CmsSearchFieldConfiguration;
+import org.opencms.util.CmsUUID;
+import org.synyx.opencms.solr.PermissionCache.PermissionDecision;
+
+/**
+ * Resolves the read permissions for a window of search hits at once. The user, project and time warp context is
+ * determined once when the resolver is created, hits that live in the same small folder are read with a single VFS
+ * call.
+ * If a {@link PermissionCache} is used, only the hits without a cached decision are read from the VFS.
+ * Instances are meant to be used for one search only. The permissions of different hits may be resolved by several
+ * threads at once, the Cms object of the search is only read.
+ */
+public class ReadPermissionResolver {
+
+    /** Minimum number of hits in one folder before the whole folder is read instead of the single resources. */
+    private static final int MIN_FOLDER_BATCH_SIZE = 3;
+    /** Minimum number of hits in a folder of unknown size before it is read as a whole to learn its size. */
+    private static final int MIN_UNKNOWN_FOLDER_BATCH_SIZE = 10;
+    /** Maximum number of resources in a folder per hit in it for the folder to be read as a whole. */
+    private static final int MAX_FOLDER_RESOURCES_PER_HIT = 4;
+    private static final int FOLDER_SIZE_CACHE_SIZE = 1000;
+    private static final long FOLDER_SIZE_TIME_TO_LIVE_MILLIS = 10 * 60 * 1000L;
+    // the number of resources of the folders that have been read, by root path
+    private static final BoundedCache<String, Integer> FOLDER_SIZES =
+            new BoundedCache<String, Integer>(FOLDER_SIZE_CACHE_SIZE, FOLDER_SIZE_TIME_TO_LIVE_MILLIS);
+
+    private static final Log LOG = LogFactory.getLog(ReadPermissionResolver.class);
+
+    private final CmsObject cms;
+    private final boolean checkingPermissions;
+    private final long timeWarp;
+    private final long availabilityTime;
+    private final PermissionCache permissionCache;
+    private final CmsUUID userId;
+    private final CmsUUID projectId;
+
+    /**
+     * Creates a new resolver for the given context.
+     * @param cms the Cms object of the search, already set to the project of the index
+     * @param checkingPermissions whether permissions should be checked at all
+     */
+    public ReadPermissionResolver(CmsObject cms, boolean checkingPermissions) {
+        this(cms, checkingPermissions, null);
+    }
+
+    /**
+     * Creates a new resolver for the given context that caches its decisions.
+     * @param cms the Cms object of the search, already set to the project of the index
+     * @param checkingPermissions whether permissions should be checked at all
+     * @param permissionCache the cache to use or null if decisions should not be cached
+     */
+    public ReadPermissionResolver(CmsObject cms, boolean checkingPermissions, PermissionCache permissionCache) {
+        this(cms, checkingPermissions, permissionCache, new CmsUserSettings(cms).getTimeWarp());
+    }
+
+    /**
+     * Creates a new resolver for the given context and time warp date.
+     * @param cms the Cms object of the search, already set to the project of the index
+     * @param checkingPermissions whether permissions should be checked at all
+     * @param permissionCache the cache to use or null if decisions should not be cached
+     * @param timeWarp the time warp date of the user or -1 if time warp is not active
+     */
+    ReadPermissionResolver(CmsObject cms, boolean checkingPermissions, PermissionCache permissionCache,
+            long timeWarp) {
+        this.cms = cms;
+        this.checkingPermissions = checkingPermissions;
+        this.permissionCache = permissionCache;
+        this.timeWarp = timeWarp;
+        // resources are always read ignoring their availability which is then checked against this date
+        this.availabilityTime = timeWarp == -1 ? cms.getRequestContext().getRequestTime() : timeWarp;
+        this.userId = cms.getRequestContext().currentUser().getId();
+        this.projectId = cms.getRequestContext().currentProject().getUuid();
+    }
+
+    /**
+     * Creates a resolver for the same context with a copy of the Cms object, for checks in another thread. The Cms
+     * object of the search is only used by the thread of the search.
+     * @return the new resolver
+     * @throws CmsException if the Cms object can't be copied
+     */
+    ReadPermissionResolver copy() throws CmsException {
+        return new ReadPermissionResolver(OpenCms.initCmsObject(cms), checkingPermissions, permissionCache,
+                timeWarp);
+    }
+
+    /**
+     * Returns the time warp date of the user or -1 if time warp is not active.
+     * @return the time warp date
+     */
+    public long getTimeWarp() {
+        return timeWarp;
+    }
+
+    /**
+     * Returns a key that identifies the user and project the permissions are checked for.
+     * @return the permission context
+     */
+    public String getContextKey() {
+        return userId + "/" + projectId;
+    }
+
+    /**
+     * Checks if the user may read the document with the given type and path.
+     * @param type the document type
+     * @param path the root path of the document
+     * @return true if the document may be shown to the user
+     */
+    public boolean hasReadPermission(String type, String path) {
+        return hasReadPermissions(new String[]{type}, new String[]{path})[0];
+    }
+
+    /**
+     * Checks the read permissions for several documents.
+     * @param types the document types
+     * @param paths the root paths of the documents, must have the same length as types
+     * @return an array that contains the permission for the document at the same position
+     */
+    public boolean[] hasReadPermissions(String[] types, String[] paths) {
+        boolean[] result = new boolean[paths.length];
+        // decisions read while a resource changes are not cached
+        long cacheGeneration = permissionCache != null ? permissionCache.getGeneration() : 0;
+        Map<String, List<Integer>> indexesByFolder = new HashMap<String, List<Integer>>();
+
+        for (int i = 0; i < paths.length; i++) {
+            if (!needsCheck(types[i], paths[i])) {
+                result[i] = true;
+                continue;
+            }
+            if (permissionCache != null) {
+                PermissionDecision decision = permissionCache.get(userId, projectId, paths[i]);
+                if (decision != null) {
+                    result[i] = decision.isReadable(availabilityTime);
+                    continue;
+                }
+            }
+            String folder = CmsResource.getParentFolder(paths[i]);
+            List<Integer> indexes = indexesByFolder.get(folder);
+            if (indexes == null) {
+                indexes = new ArrayList<Integer>();
+                indexesByFolder.put(folder, indexes);
+            }
+            indexes.add(i);
+        }
+
+        for (Map.Entry<String, List<Integer>> entry : indexesByFolder.entrySet()) {
+            List<Integer> indexes = entry.getValue();
+            Map<String, CmsResource> folderContent = null;
+            if (entry.getKey() != null && isFolderBatch(entry.getKey(), indexes.size())) {
+                folderContent = readFolder(entry.getKey());
+            }
+            for (Integer index : indexes) {
+                CmsResource resource = folderContent != null ? folderContent.get(paths[index]) : readResource(paths[index]);
+                PermissionDecision decision = resource != null ? new PermissionDecision(resource) : PermissionDecision.DENIED;
+                if (permissionCache != null) {
+                    permissionCache.put(userId, projectId, paths[index], decision, cacheGeneration);
+                }
+                result[index] = decision.isReadable(availabilityTime);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Permission check needs only to be performed for VFS documents that contain both fields.
+     */
+    private boolean needsCheck(String type, String path) {
+        if (!checkingPermissions || (type == null) || (path == null)) {
+            return false;
+        }
+        // a type that is not a known VFS resource type (also not the generic "VFS" type of OpenCms before 7.0)
+        // does not need to be checked
+        return CmsSearchFieldConfiguration.VFS_DOCUMENT_KEY_PREFIX.equals(type)
+                || OpenCms.getResourceManager().hasResourceType(type);
+    }
+
+    /**
+     * Decides whether the hits in a folder are checked by reading the whole folder. Reading a folder costs about as
+     * much as reading each of its resources, so it only pays off if the hits are a good part of the folder. A folder
+     * whose size is not known yet could be large, so it is only read if it contains many hits; afterwards it is read
+     * if it is small enough for the number of hits.
+     */
+    private boolean isFolderBatch(String folder, int hitCount) {
+        if (hitCount < MIN_FOLDER_BATCH_SIZE) {
+            return false;
+        }
+        Integer size = FOLDER_SIZES.get(folder);
+        if (size == null) {
+            return hitCount >= MIN_UNKNOWN_FOLDER_BATCH_SIZE;
+        }
+        return size.intValue() <= hitCount * MAX_FOLDER_RESOURCES_PER_HIT;
+    }
+
+    private CmsResource readResource(String rootPath) {
+        try {
+            return cms.readResource(cms.getRequestContext().removeSiteRoot(rootPath), CmsResourceFilter.IGNORE_EXPIRATION);
+        } catch (CmsException e) {
+            // the resource does not exist or the user is not allowed to read it
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(e.getMessage(), e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Reads all resources in a folder the user may read.
+     * @return the readable resources by root path or null if the folder itself could not be read
+     */
+    private Map<String, CmsResource> readFolder(String rootPath) {
+        try {
+            List<CmsResource> resources =
+                    cms.readResources(cms.getRequestContext().removeSiteRoot(rootPath), CmsResourceFilter.IGNORE_EXPIRATION, false);
+            FOLDER_SIZES.put(rootPath, Integer.valueOf(resources.size()));
+            Map<String, CmsResource> result = new HashMap<String, CmsResource>(resources.size() * 2);
+            for (CmsResource resource : resources) {
+                result.put(resource.getRootPath(), resource);
+            }
+            return result;
+        } catch (CmsException e) {
+            // fall back to reading the resources one by one
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(e.getMessage(), e);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package org.synyx.opencms.solr;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * Sends queries to several read replicas of an index and all other requests, e.g. updates and commits, to the node
+ * the index is written to.
+ * <p>
+ * A query goes to the replica with the lowest product of its average response time (an exponentially weighted moving
+ * average) and the number of its outstanding requests. A replica that can't be reached is ejected and the query is
+ * retried on the next one. Ejected replicas are checked in the background and re-admitted as soon as they answer
+ * again. Any {@link SolrServer} can be used as replica, so the routing also works with embedded servers.
+ * <p>
+ * A read timeout (<code>socketTimeout</code>) means the replica is reachable but the query is slow. The replica is
+ * not ejected and the query is not retried, another replica would most likely be just as slow and the retry would
+ * only double the load.
+ * <p>
+ * With hedging enabled a query that takes longer than most recent queries is sent to the second best replica as well,
+ * so a single slow replica doesn't determine the tail latency of the searches.
+ */
+public class ReplicaRoutingSolrServer extends SolrServer {
+
+    private static final long serialVersionUID = 1L;
+    private static final Log LOG = LogFactory.getLog(ReplicaRoutingSolrServer.class);
+    private static final ScheduledExecutorService HEALTH_CHECK_SCHEDULER = createHealthCheckScheduler();
+    private static final double LATENCY_WEIGHT = 0.3;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final int MAX_HEDGE_THREADS = 64;
+    private static final ThreadPoolExecutor HEDGE_EXECUTOR = createHedgeExecutor();
+
+    private final SolrServer updateServer;
+    private final List<Replica> replicas;
+    private final LatencySamples latencies = new LatencySamples();
+    private final AtomicLong hedgedCount = new AtomicLong();
+    private final ScheduledFuture<?> healthCheck;
+    private volatile boolean hedging;
+
+    /**
+     * Creates a new routing server and starts the health check of its replicas.
+     * @param updateServer the server that receives all requests that are not queries
+     * @param replicas the servers that answer queries by their url
+     * @param healthCheckIntervalMillis the interval in which ejected replicas are checked
+     */
+    public ReplicaRoutingSolrServer(SolrServer updateServer, Map<String, SolrServer> replicas,
+            long healthCheckIntervalMillis) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("At least one replica is required");
+        }
+        this.updateServer = updateServer;
+        List<Replica> replicaList = new ArrayList<Replica>(replicas.size());
+        for (Map.Entry<String, SolrServer> entry : replicas.entrySet()) {
+            replicaList.add(new Replica(entry.getKey(), entry.getValue()));
+        }
+        this.replicas = Collections.unmodifiableList(replicaList);
+
+        ScheduledFuture<?> scheduledCheck = null;
+        try {
+            scheduledCheck = HEALTH_CHECK_SCHEDULER.scheduleWithFixedDelay(new Runnable() {
+
+                public void run() {
+                    checkEjectedReplicas();
+                }
+            }, healthCheckIntervalMillis, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the module is shutting down, ejected replicas are only tried again as last resort
+            LOG.warn("The health check of the Solr replicas could not be started, the module is shut down");
+        }
+        this.healthCheck = scheduledCheck;
+    }
+
+    @Override
+    public NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException {
+        if (!(request instanceof QueryRequest)) {
+            return updateServer.request(request);
+        }
+
+        // a streamed response can't be repeated as the documents may already have been handed to the callback
+        boolean retry = !(request.getResponseParser() instanceof StreamingResponseParser);
+        List<Replica> candidates = getReplicasByCost();
+        int next = 0;
+        Exception lastFailure = null;
+        if (hedging && retry && candidates.size() > 1 && candidates.get(1).alive) {
+            long delayNanos = latencies.getPercentile95();
+            if (delayNanos > 0) {
+                HedgedResult result = requestHedged(request, candidates.get(0), candidates.get(1), delayNanos);
+                if (result.response != null) {
+                    return result.response;
+                }
+                next = result.attempted;
+                lastFailure = result.failure;
+            }
+        }
+
+        for (int i = next; i < candidates.size(); i++) {
+            try {
+                return requestFrom(candidates.get(i), request);
+            } catch (SolrServerException e) {
+                if (!isNodeFailure(e)) {
+                    throw e;
+                }
+                lastFailure = e;
+            } catch (IOException e) {
+                if (!isNodeFailure(e)) {
+                    throw e;
+                }
+                lastFailure = e;
+            } catch (SolrException e) {
+                if (!isNodeFailure(e)) {
+                    throw e;
+                }
+                lastFailure = e;
+            }
+            if (!retry) {
+                break;
+            }
+        }
+        throw new SolrServerException("None of the Solr replicas could answer the query", lastFailure);
+    }
+
+    /**
+     * Enables hedged queries: if the best replica doesn't answer within the 95th percentile of the recent response
+     * times, the query is sent to the second best replica as well and the first response is used.
+     * @param hedging true to send hedged queries
+     */
+    public void setHedging(boolean hedging) {
+        this.hedging = hedging;
+    }
+
+    /**
+     * Stops the health check of the ejected replicas. Queries that are still running with this server can finish,
+     * further queries only use the replicas that are alive or try the ejected ones last.
+     */
+    public void shutdown() {
+        if (healthCheck != null) {
+            healthCheck.cancel(false);
+        }
+    }
+
+    /**
+     * Stops the threads of the health checks and the hedged queries of all routing servers, called when the module
+     * is shut down. Hedged queries aren't sent anymore afterwards.
+     */
+    static void shutdownExecutors() {
+        HEALTH_CHECK_SCHEDULER.shutdownNow();
+        HEDGE_EXECUTOR.shutdownNow();
+    }
+
+    /**
+     * Returns whether the health check of the ejected replicas is scheduled.
+     * @return false after {@link #shutdown()}
+     */
+    boolean isHealthCheckScheduled() {
+        return healthCheck != null && !healthCheck.isDone();
+    }
+
+    /**
+     * Returns the number of queries that were sent to a second replica because the first one was slow.
+     * @return the hedged count
+     */
+    public long getHedgedCount() {
+        return hedgedCount.get();
+    }
+
+    /**
+     * Returns the state of the replicas.
+     * @return a snapshot of the statistics, one entry per replica
+     */
+    public List<ReplicaStatistics> getStatistics() {
+        List<ReplicaStatistics> statistics = new ArrayList<ReplicaStatistics>(replicas.size());
+        for (Replica replica : replicas) {
+            statistics.add(new ReplicaStatistics(replica.url, replica.alive, replica.getAverageLatencyMillis(),
+                    replica.outstanding.get(), replica.requestCount.get(), replica.failureCount.get()));
+        }
+        return statistics;
+    }
+
+    /**
+     * Orders the live replicas by their expected cost. The ejected replicas are tried last, a query should rather
+     * wait for a replica that has just been ejected than fail.
+     */
+    private List<Replica> getReplicasByCost() {
+        List<Replica> alive = new ArrayList<Replica>(replicas.size());
+        List<Replica> ejected = new ArrayList<Replica>(0);
+        for (Replica replica : replicas) {
+            if (replica.alive) {
+                alive.add(replica);
+            } else {
+                ejected.add(replica);
+            }
+        }
+        if (alive.size() > 1) {
+            Collections.sort(alive, new Comparator<Replica>() {
+
+                public int compare(Replica r1, Replica r2) {
+                    return Double.compare(r1.getCost(), r2.getCost());
+                }
+            });
+        }
+        alive.addAll(ejected);
+        return alive;
+    }
+
+    /**
+     * Sends the request to one replica, ejecting the replica if it can't be reached.
+     */
+    private NamedList<Object> requestFrom(Replica replica, SolrRequest request)
+            throws SolrServerException, IOException {
+        try {
+            return replica.request(request, latencies);
+        } catch (SolrServerException e) {
+            if (isNodeFailure(e)) {
+                eject(replica, e);
+            }
+            throw e;
+        } catch (IOException e) {
+            if (isNodeFailure(e)) {
+                eject(replica, e);
+            }
+            throw e;
+        } catch (SolrException e) {
+            if (isNodeFailure(e)) {
+                eject(replica, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the query to the first replica and, if it doesn't answer within the delay, to the second one as well.
+     * Whatever response arrives first is used, the other request is cancelled.
+     */
+    private HedgedResult requestHedged(final SolrRequest request, final Replica first, final Replica second,
+            long delayNanos) throws SolrServerException, IOException {
+        CompletionService<NamedList<Object>> completion =
+                new ExecutorCompletionService<NamedList<Object>>(HEDGE_EXECUTOR);
+        List<Future<NamedList<Object>>> futures = new ArrayList<Future<NamedList<Object>>>(2);
+        try {
+            futures.add(completion.submit(createRequestTask(first, request)));
+        } catch (RejectedExecutionException e) {
+            // too many hedged queries right now, the query is sent without hedging
+            return new HedgedResult(null, null, 0);
+        }
+
+        Exception failure = null;
+        try {
+            Future<NamedList<Object>> done = completion.poll(delayNanos, TimeUnit.NANOSECONDS);
+            if (done == null) {
+                try {
+                    futures.add(completion.submit(createRequestTask(second, request)));
+                    hedgedCount.incrementAndGet();
+                } catch (RejectedExecutionException e) {
+                    // the first replica is still asked
+                }
+            }
+            for (int pending = futures.size(); pending > 0; pending--) {
+                if (done == null) {
+                    done = completion.take();
+                }
+                try {
+                    return new HedgedResult(done.get(), null, futures.size());
+                } catch (ExecutionException e) {
+                    failure = getNodeFailure(e.getCause());
+                }
+                done = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolrServerException("Interrupted while waiting for Solr", e);
+        } finally {
+            for (Future<NamedList<Object>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return new HedgedResult(null, failure, futures.size());
+    }
+
+    private Callable<NamedList<Object>> createRequestTask(final Replica replica, final SolrRequest request) {
+        return new Callable<NamedList<Object>>() {
+
+            public NamedList<Object> call() throws SolrServerException, IOException {
+                return requestFrom(replica, request);
+            }
+        };
+    }
+
+    /**
+     * Returns the exception if the replica could not be reached, otherwise the exception is thrown.
+     */
+    private Exception getNodeFailure(Throwable cause) throws SolrServerException, IOException {
+        if (cause instanceof Exception && isNodeFailure((Exception) cause)) {
+            return (Exception) cause;
+        }
+        if (cause instanceof SolrServerException) {
+            throw (SolrServerException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new SolrServerException(cause);
+    }
+
+    /**
+     * Checks whether an exception means that the replica is not available, as opposed to a failure of the query. A
+     * read timeout is a slow query, a connect timeout is not a {@link SocketTimeoutException} and ejects the replica.
+     */
+    private boolean isNodeFailure(Exception e) {
+        Throwable cause = e instanceof SolrServerException ? ((SolrServerException) e).getRootCause() : e;
+        return (cause instanceof IOException && !(cause instanceof SocketTimeoutException))
+                || (cause instanceof SolrException && ((SolrException) cause).code() == SERVICE_UNAVAILABLE);
+    }
+
+    private void eject(Replica replica, Exception cause) {
+        replica.failureCount.incrementAndGet();
+        if (replica.alive) {
+            replica.alive = false;
+            LOG.warn("Ejected Solr replica " + replica.url + ": " + cause.getMessage());
+        }
+    }
+
+    private void checkEjectedReplicas() {
+        SolrQuery healthQuery = new SolrQuery("*:*");
+        healthQuery.setRows(0);
+        for (Replica replica : replicas) {
+            if (replica.alive) {
+                continue;
+            }
+            try {
+                long start = System.nanoTime();
+                replica.server.query(healthQuery);
+                // start with the latency of the check, an unknown latency would attract all queries at once
+                replica.resetLatency(System.nanoTime() - start);
+                replica.alive = true;
+                LOG.info("Re-admitted Solr replica " + replica.url);
+            } catch (Exception e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Solr replica " + replica.url + " is still unavailable: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor createHedgeExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(0, MAX_HEDGE_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "solr-hedged-query-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static ScheduledExecutorService createHealthCheckScheduler() {
+        return new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "solr-replica-health-check");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * A snapshot of the state of one replica.
+     */
+    public static class ReplicaStatistics {
+
+        private final String url;
+        private final boolean alive;
+        private final double averageLatencyMillis;
+        private final int outstandingRequests;
+        private final long requestCount;
+        private final long failureCount;
+
+        ReplicaStatistics(String url, boolean alive, double averageLatencyMillis, int outstandingRequests,
+                long requestCount, long failureCount) {
+            this.url = url;
+            this.alive = alive;
+            this.averageLatencyMillis = averageLatencyMillis;
+            this.outstandingRequests = outstandingRequests;
+            this.requestCount = requestCount;
+            this.failureCount = failureCount;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Returns whether queries are routed to the replica.
+         * @return false if the replica has been ejected
+         */
+        public boolean isAlive() {
+            return alive;
+        }
+
+        /**
+         * Returns the moving average of the response times.
+         * @return the average in milliseconds
+         */
+        public double getAverageLatencyMillis() {
+            return averageLatencyMillis;
+        }
+
+        public int getOutstandingRequests() {
+            return outstandingRequests;
+        }
+
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        public long getFailureCount() {
+            return failureCount;
+        }
+
+        @Override
+        public String toString() {
+            return url + (alive ? "" : " (ejected)") + ": " + requestCount + " requests, " + failureCount
+                    + " failures, " + outstandingRequests + " outstanding, " + averageLatencyMillis + " ms average";
+        }
+    }
+
+    private static class Replica {
+
+        private final String url;
+        private final SolrServer server;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong requestCount = new AtomicLong();
+        private final AtomicLong failureCount = new AtomicLong();
+        private volatile boolean alive = true;
+        private double averageLatencyNanos;
+
+        Replica(String url, SolrServer server) {
+            this.url = url;
+            this.server = server;
+        }
+
+        NamedList<Object> request(SolrRequest request, LatencySamples latencies)
+                throws SolrServerException, IOException {
+            requestCount.incrementAndGet();
+            outstanding.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                NamedList<Object> response = server.request(request);
+                long latency = System.nanoTime() - start;
+                recordLatency(latency);
+                latencies.record(latency);
+                return response;
+            } finally {
+                outstanding.decrementAndGet();
+            }
+        }
+
+        /**
+         * Returns the expected cost of the next request, one millisecond is added so that replicas without any
+         * latency yet still are weighted by their outstanding requests.
+         */
+        double getCost() {
+            return (getAverageLatencyMillis() + 1) * (outstanding.get() + 1);
+        }
+
+        synchronized double getAverageLatencyMillis() {
+            return averageLatencyNanos / 1000000;
+        }
+
+        synchronized void recordLatency(long nanos) {
+            if (averageLatencyNanos == 0) {
+                averageLatencyNanos = nanos;
+            } else {
+                averageLatencyNanos += LATENCY_WEIGHT * (nanos - averageLatencyNanos);
+            }
+        }
+
+        synchronized void resetLatency(long nanos) {
+            averageLatencyNanos = nanos;
+        }
+    }
+
+    /**
+     * The response times of the most recent queries of all replicas.
+     */
+    private static class LatencySamples {
+
+        private static final int SIZE = 256;
+        private static final int MIN_SAMPLES = 20;
+        private static final int RECALCULATE_AFTER = 32;
+
+        private final long[] samples = new long[SIZE];
+        // the next sample overwrites the oldest one, the counters wrap instead of overflowing
+        private int index;
+        private int count;
+        private int recordedSinceCalculation;
+        private long percentile95;
+
+        synchronized void record(long nanos) {
+            samples[index] = nanos;
+            index = (index + 1) % SIZE;
+            count = Math.min(count + 1, SIZE);
+            recordedSinceCalculation = (recordedSinceCalculation + 1) % RECALCULATE_AFTER;
+            if (count >= MIN_SAMPLES && recordedSinceCalculation == 0) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                percentile95 = sorted[(int) (sorted.length * 0.95)];
+            }
+        }
+
+        /**
+         * Returns the 95th percentile of the recent response times.
+         * @return the percentile in nanoseconds, 0 if there are not enough samples yet
+         */
+        synchronized long getPercentile95() {
+            return percentile95;
+        }
+    }
+
+    private static class HedgedResult {
+
+        private final NamedList<Object> response;
+        private final Exception failure;
+        private final int attempted;
+
+        HedgedResult(NamedList<Object> response, Exception failure, int attempted) {
+            this.response = response;
+            this.failure = failure;
+            this.attempted = attempted;
+        }
+    }
+}
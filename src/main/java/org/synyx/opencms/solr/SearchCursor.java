@@ -0,0 +1,294 @@
+package org.synyx.opencms.solr;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.solr.common.SolrDocument;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Position in a sorted result list for keyset pagination. Instead of letting Solr collect and sort all documents
+ * before the requested page, the next page is requested with a filter query that only matches documents sorted after
+ * the last hit of the previous page. The id is always used as the last sort field so the order is unique.
+ * <p>
+ * This only works for results that are sorted by fields; results sorted by relevance have to be paged as usual. The
+ * sort fields should be set for every document: a page that ends with a hit without a value can't be used as the
+ * position of the next page, the cursor then keeps the previous position and skips the hits already returned.
+ * <p>
+ * The filter query is tagged with {@link #FILTER_TAG} to be excluded from the facet counts, which are the same for
+ * all pages of a result. It is different for every page, so it is sent with <code>cache=false</code>; this local
+ * parameter is only supported from Solr 3.4 on. Older servers like Solr 3.1 ignore it and put the filter of every
+ * page into the filterCache, where it evicts reusable entries, so deep paging should be used with Solr 3.4 or later.
+ */
+public class SearchCursor {
+
+    /** The token for the first page of a result. */
+    public static final String START = "*";
+
+    /** The tag of the filter query of a cursor. */
+    public static final String FILTER_TAG = "cursor";
+
+    private static final String FILTER_LOCAL_PARAMS = "{!cache=false tag=" + FILTER_TAG + "}";
+    private static final String ENCODING = "UTF-8";
+    private static final char SKIP_SEPARATOR = '~';
+
+    private final int offset;
+    private final List<Object> values;
+    private final int skip;
+
+    private SearchCursor(int offset, List<Object> values, int skip) {
+        this.offset = offset;
+        this.values = values;
+        this.skip = skip;
+    }
+
+    /**
+     * Checks if results with the given sort order can be paged with a cursor.
+     * @param sort the sort order of the search or null for relevance
+     * @return true if all sort fields are document fields
+     */
+    public static boolean isSupported(Sort sort) {
+        if (sort == null || sort.getSort().length == 0) {
+            return false;
+        }
+        for (SortField sortField : sort.getSort()) {
+            if (sortField.getField() == null || sortField.getType() == SortField.SCORE
+                    || sortField.getType() == SortField.DOC) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a cursor token.
+     * @param token a token returned by {@link #toToken()} or {@link #START}
+     * @return the cursor
+     * @throws IllegalArgumentException if the token is invalid
+     */
+    public static SearchCursor parse(String token) {
+        if (START.equals(token)) {
+            return new SearchCursor(0, null, 0);
+        }
+        try {
+            String[] parts = token.split(",");
+            List<Object> values = null;
+            if (parts.length > 1) {
+                values = new ArrayList<Object>(parts.length - 1);
+                for (int i = 1; i < parts.length; i++) {
+                    values.add(decodeValue(URLDecoder.decode(parts[i], ENCODING)));
+                }
+            }
+            int separator = parts[0].indexOf(SKIP_SEPARATOR);
+            if (separator < 0) {
+                return new SearchCursor(Integer.parseInt(parts[0]), values, 0);
+            }
+            int skip = Integer.parseInt(parts[0].substring(separator + 1));
+            if (skip < 0) {
+                throw new IllegalArgumentException("Negative skip " + skip);
+            }
+            return new SearchCursor(Integer.parseInt(parts[0].substring(0, separator)), values, skip);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid search cursor: " + token, e);
+        }
+    }
+
+    /**
+     * Creates the cursor that continues after the given document.
+     * @param document the last hit of a page, it has to contain the sort fields
+     * @param sort the sort order of the search
+     * @param offset the number of readable hits up to and including the document
+     * @return the cursor or null if the document does not contain a single value for every sort field, the next page
+     * then has to be requested with {@link #skip(int, int)}
+     */
+    public static SearchCursor after(SolrDocument document, Sort sort, int offset) {
+        List<Object> values = new ArrayList<Object>();
+        for (SortField sortField : sort.getSort()) {
+            Object value = document.getFieldValue(sortField.getField());
+            if (value == null || value instanceof Collection<?>) {
+                return null;
+            }
+            values.add(value);
+        }
+        Object id = document.getFieldValue(SolrSearchIndex.FIELD_ID);
+        if (id == null) {
+            return null;
+        }
+        values.add(id);
+        return new SearchCursor(offset, values, 0);
+    }
+
+    /**
+     * Creates the cursor that continues a number of documents after this one. Used if the last hit of a page has no
+     * value for a sort field, so the position of the page can't be expressed with the sort values.
+     * @param documentCount the number of documents Solr returned for this cursor up to and including the last hit
+     * @param offset the number of readable hits up to and including the last hit
+     * @return the cursor
+     */
+    public SearchCursor skip(int documentCount, int offset) {
+        return new SearchCursor(offset, values, skip + documentCount);
+    }
+
+    /**
+     * Returns whether this cursor points to the start of the result.
+     * @return true for the first page
+     */
+    public boolean isStart() {
+        return values == null && skip == 0;
+    }
+
+    /**
+     * Returns the number of readable hits before this cursor.
+     * @return the offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the number of documents Solr has to skip after the position of this cursor.
+     * @return the start of the Solr query
+     */
+    public int getSkip() {
+        return skip;
+    }
+
+    /**
+     * Builds the filter query that matches all documents sorted after this cursor. For the sort fields f1, f2 and id
+     * that is <code>f1 after v1 OR (f1 = v1 AND f2 after v2) OR (f1 = v1 AND f2 = v2 AND id after vid)</code>. The
+     * query is tagged with {@link #FILTER_TAG} and only kept out of the filterCache by Solr 3.4 or later.
+     * @param sort the sort order of the search
+     * @return the filter query or null if the cursor has no sort values
+     */
+    public String toFilterQuery(Sort sort) {
+        if (values == null) {
+            return null;
+        }
+        SortField[] sortFields = sort.getSort();
+        StringBuilder query = new StringBuilder(128).append(FILTER_LOCAL_PARAMS);
+        for (int k = 0; k < values.size(); k++) {
+            if (k > 0) {
+                query.append(" OR ");
+            }
+            query.append('(');
+            for (int j = 0; j < k; j++) {
+                query.append('+').append(getFieldName(sortFields, j)).append(':');
+                appendValue(query, values.get(j));
+                query.append(' ');
+            }
+            query.append('+').append(getFieldName(sortFields, k)).append(':');
+            if (isReverse(sortFields, k)) {
+                query.append("{* TO ");
+                appendValue(query, values.get(k));
+                query.append('}');
+            } else {
+                query.append('{');
+                appendValue(query, values.get(k));
+                query.append(" TO *}");
+            }
+            query.append(')');
+        }
+        return query.toString();
+    }
+
+    /**
+     * Checks whether a filter query has been created by {@link #toFilterQuery(Sort)}.
+     * @param filterQuery the filter query
+     * @return true for the filter query of a cursor
+     */
+    public static boolean isFilterQuery(String filterQuery) {
+        return filterQuery.startsWith(FILTER_LOCAL_PARAMS);
+    }
+
+    /**
+     * Returns the token that can be passed back to continue the result after this cursor.
+     * @return the token
+     */
+    public String toToken() {
+        if (isStart()) {
+            return START;
+        }
+        try {
+            StringBuilder token = new StringBuilder().append(offset);
+            if (skip > 0) {
+                token.append(SKIP_SEPARATOR).append(skip);
+            }
+            if (values != null) {
+                for (Object value : values) {
+                    token.append(',').append(URLEncoder.encode(encodeValue(value), ENCODING));
+                }
+            }
+            return token.toString();
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String getFieldName(SortField[] sortFields, int index) {
+        return index < sortFields.length ? sortFields[index].getField() : SolrSearchIndex.FIELD_ID;
+    }
+
+    private static boolean isReverse(SortField[] sortFields, int index) {
+        // the id is always sorted ascending
+        return index < sortFields.length && sortFields[index].getReverse();
+    }
+
+    private static void appendValue(StringBuilder query, Object value) {
+        String text = value instanceof Date
+                ? new DateTime(((Date) value).getTime(), DateTimeZone.UTC).toString() : value.toString();
+        query.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                query.append('\\');
+            }
+            query.append(c);
+        }
+        query.append('"');
+    }
+
+    private static String encodeValue(Object value) {
+        if (value instanceof Date) {
+            return "d" + ((Date) value).getTime();
+        } else if (value instanceof Long) {
+            return "l" + value;
+        } else if (value instanceof Integer) {
+            return "i" + value;
+        } else if (value instanceof Float) {
+            return "f" + value;
+        } else if (value instanceof Double) {
+            return "o" + value;
+        } else {
+            return "s" + value;
+        }
+    }
+
+    private static Object decodeValue(String encoded) {
+        String value = encoded.substring(1);
+        switch (encoded.charAt(0)) {
+            case 'd':
+                return new Date(Long.parseLong(value));
+            case 'l':
+                return Long.valueOf(value);
+            case 'i':
+                return Integer.valueOf(value);
+            case 'f':
+                return Float.valueOf(value);
+            case 'o':
+                return Double.valueOf(value);
+            case 's':
+                return value;
+            default:
+                throw new IllegalArgumentException("Unknown value type " + encoded.charAt(0));
+        }
+    }
+}
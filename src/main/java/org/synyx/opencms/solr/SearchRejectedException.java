@@ -0,0 +1,23 @@
+package org.synyx.opencms.solr;
+
+/**
+ * Thrown when a search is not run because the index is already busy with too many searches of the same class.
+ */
+public class SearchRejectedException extends SolrSearchIndexException {
+
+    private final AdmissionController.SearchClass searchClass;
+
+    /**
+     * Create new SearchRejectedException.
+     * @param message
+     * @param searchClass the class of the rejected search
+     */
+    public SearchRejectedException(String message, AdmissionController.SearchClass searchClass) {
+        super(message, null);
+        this.searchClass = searchClass;
+    }
+
+    public AdmissionController.SearchClass getSearchClass() {
+        return searchClass;
+    }
+}
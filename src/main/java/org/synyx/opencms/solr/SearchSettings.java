@@ -0,0 +1,403 @@
+package org.synyx.opencms.solr;
+
+import org.apache.solr.client.solrj.SolrServer;
+
+/**
+ * Immutable snapshot of the configuration values a {@link SolrSearchIndex} needs while searching. A new instance
+ * is created whenever the index gets (re-)initialized so concurrent searches always see a consistent set of values
+ * without any locking.
+ */
+public final class SearchSettings {
+
+    private static final String CONFIG_USE_SOLR_PAGING = "useSolrPaging";
+    private static final String CONFIG_NO_SOLR_PAGING_ROW_SIZE = "rowSize";
+    private static final String CONFIG_AVAILABILITY_IN_SOLR = "availabilityInSolr";
+    private static final String CONFIG_ADAPTIVE_FETCH = "adaptiveFetch";
+    private static final String CONFIG_ADAPTIVE_FETCH_MAX_ROWS = "adaptiveFetchMaxRows";
+    private static final String CONFIG_TWO_PHASE_SEARCH = "twoPhaseSearch";
+    private static final String CONFIG_STREAMING_SEARCH = "streamingSearch";
+    private static final String CONFIG_COALESCE_SEARCHES = "coalesceSearches";
+    private static final String CONFIG_PAGE_HIGHLIGHTING = "pageHighlighting";
+    private static final String CONFIG_AVAILABILITY_PRECISION = "availabilityPrecision";
+    private static final String CONFIG_CACHE_PERMISSIONS = "cachePermissions";
+    private static final String CONFIG_PERMISSION_CHECK_THREADS = "permissionCheckThreads";
+    private static final String CONFIG_PERMISSION_CHECK_TIMEOUT = "permissionCheckTimeout";
+    private static final String CONFIG_ASYNC_SEARCH_THREADS = "asyncSearchThreads";
+    private static final String CONFIG_ASYNC_SEARCH_QUEUE_SIZE = "asyncSearchQueueSize";
+    private static final String CONFIG_ASYNC_SEARCH_TIMEOUT = "asyncSearchTimeout";
+    private static final String CONFIG_RESULT_CACHE_SIZE = "resultCacheSize";
+    private static final String CONFIG_RESULT_CACHE_TIME_TO_LIVE = "resultCacheTimeToLive";
+    private static final String CONFIG_RESULT_CACHE_REFRESH_AFTER = "resultCacheRefreshAfter";
+    private static final String CONFIG_DOCUMENT_CACHE_SIZE = "documentCacheSize";
+    private static final String CONFIG_DOCUMENT_CACHE_TIME_TO_LIVE = "documentCacheTimeToLive";
+    private static final String CONFIG_FACET_CACHE_SIZE = "facetCacheSize";
+    private static final String CONFIG_FACET_CACHE_TIME_TO_LIVE = "facetCacheTimeToLive";
+    private static final String CONFIG_TIME_ALLOWED = "timeAllowed";
+    private static final String CONFIG_QUERY_DEADLINE = "queryDeadline";
+    private static final String CONFIG_QUERY_THREADS = "queryThreads";
+    private static final String CONFIG_CIRCUIT_BREAKER_THRESHOLD = "circuitBreakerThreshold";
+    private static final String CONFIG_CIRCUIT_BREAKER_MIN_REQUESTS = "circuitBreakerMinRequests";
+    private static final String CONFIG_CIRCUIT_BREAKER_WINDOW = "circuitBreakerWindow";
+    private static final String CONFIG_CIRCUIT_BREAKER_OPEN_TIME = "circuitBreakerOpenTime";
+    private static final String CONFIG_MAX_ONLINE_SEARCHES = "maxOnlineSearches";
+    private static final String CONFIG_MAX_OFFLINE_SEARCHES = "maxOfflineSearches";
+    private static final String CONFIG_SEARCH_QUEUE_SIZE = "searchQueueSize";
+    private static final String CONFIG_SEARCH_QUEUE_TIMEOUT = "searchQueueTimeout";
+
+    private final SolrServer solrServer;
+    private final String url;
+    private final boolean useSolrPaging;
+    private final int rowSize;
+    private final boolean adaptiveFetch;
+    private final int adaptiveFetchMaxRows;
+    private final boolean twoPhaseSearch;
+    private final boolean streamingSearch;
+    private final boolean coalesceSearches;
+    private final boolean pageHighlighting;
+    private final boolean availabilityInSolr;
+    private final int availabilityPrecision;
+    private final boolean cachePermissions;
+    private final int permissionCheckThreads;
+    private final int permissionCheckTimeout;
+    private final int asyncSearchThreads;
+    private final int asyncSearchQueueSize;
+    private final int asyncSearchTimeout;
+    private final int resultCacheSize;
+    private final int resultCacheTimeToLive;
+    private final int resultCacheRefreshAfter;
+    private final int documentCacheSize;
+    private final int documentCacheTimeToLive;
+    private final int facetCacheSize;
+    private final int facetCacheTimeToLive;
+    private final int timeAllowed;
+    private final int queryDeadline;
+    private final int queryThreads;
+    private final int circuitBreakerThreshold;
+    private final int circuitBreakerMinRequests;
+    private final int circuitBreakerWindow;
+    private final int circuitBreakerOpenTime;
+    private final int maxOnlineSearches;
+    private final int maxOfflineSearches;
+    private final int searchQueueSize;
+    private final int searchQueueTimeout;
+
+    /**
+     * Creates the settings from the configuration of an index.
+     * @param indexConfiguration
+     */
+    public SearchSettings(IndexConfiguration indexConfiguration) {
+        this.solrServer = indexConfiguration.getSolrServer();
+        this.url = indexConfiguration.getUrl();
+        this.useSolrPaging = indexConfiguration.getBooleanValue(CONFIG_USE_SOLR_PAGING, false);
+        this.rowSize = indexConfiguration.getIntValue(CONFIG_NO_SOLR_PAGING_ROW_SIZE, 1000);
+        this.adaptiveFetch = indexConfiguration.getBooleanValue(CONFIG_ADAPTIVE_FETCH, false);
+        this.adaptiveFetchMaxRows = indexConfiguration.getIntValue(CONFIG_ADAPTIVE_FETCH_MAX_ROWS, 10000);
+        this.twoPhaseSearch = indexConfiguration.getBooleanValue(CONFIG_TWO_PHASE_SEARCH, false);
+        this.streamingSearch = indexConfiguration.getBooleanValue(CONFIG_STREAMING_SEARCH, false);
+        this.coalesceSearches = indexConfiguration.getBooleanValue(CONFIG_COALESCE_SEARCHES, false);
+        this.pageHighlighting = indexConfiguration.getBooleanValue(CONFIG_PAGE_HIGHLIGHTING, false);
+        this.availabilityInSolr = indexConfiguration.getBooleanValue(CONFIG_AVAILABILITY_IN_SOLR, false);
+        this.availabilityPrecision = indexConfiguration.getIntValue(CONFIG_AVAILABILITY_PRECISION, 60);
+        this.cachePermissions = indexConfiguration.getBooleanValue(CONFIG_CACHE_PERMISSIONS, false);
+        this.permissionCheckThreads = indexConfiguration.getIntValue(CONFIG_PERMISSION_CHECK_THREADS, 0);
+        this.permissionCheckTimeout = indexConfiguration.getIntValue(CONFIG_PERMISSION_CHECK_TIMEOUT, 5000);
+        this.asyncSearchThreads = indexConfiguration.getIntValue(CONFIG_ASYNC_SEARCH_THREADS, 4);
+        this.asyncSearchQueueSize = indexConfiguration.getIntValue(CONFIG_ASYNC_SEARCH_QUEUE_SIZE, 100);
+        this.asyncSearchTimeout = indexConfiguration.getIntValue(CONFIG_ASYNC_SEARCH_TIMEOUT, 0);
+        this.resultCacheSize = indexConfiguration.getIntValue(CONFIG_RESULT_CACHE_SIZE, 0);
+        this.resultCacheTimeToLive = indexConfiguration.getIntValue(CONFIG_RESULT_CACHE_TIME_TO_LIVE, 300);
+        this.resultCacheRefreshAfter = indexConfiguration.getIntValue(CONFIG_RESULT_CACHE_REFRESH_AFTER, 0);
+        this.documentCacheSize = indexConfiguration.getIntValue(CONFIG_DOCUMENT_CACHE_SIZE, 0);
+        this.documentCacheTimeToLive = indexConfiguration.getIntValue(CONFIG_DOCUMENT_CACHE_TIME_TO_LIVE, 300);
+        this.facetCacheSize = indexConfiguration.getIntValue(CONFIG_FACET_CACHE_SIZE, 0);
+        this.facetCacheTimeToLive = indexConfiguration.getIntValue(CONFIG_FACET_CACHE_TIME_TO_LIVE, 300);
+        this.timeAllowed = indexConfiguration.getIntValue(CONFIG_TIME_ALLOWED, 0);
+        this.queryDeadline = indexConfiguration.getIntValue(CONFIG_QUERY_DEADLINE, 0);
+        this.queryThreads = indexConfiguration.getIntValue(CONFIG_QUERY_THREADS, 16);
+        this.circuitBreakerThreshold = indexConfiguration.getIntValue(CONFIG_CIRCUIT_BREAKER_THRESHOLD, 0);
+        this.circuitBreakerMinRequests = indexConfiguration.getIntValue(CONFIG_CIRCUIT_BREAKER_MIN_REQUESTS, 20);
+        this.circuitBreakerWindow = indexConfiguration.getIntValue(CONFIG_CIRCUIT_BREAKER_WINDOW, 10000);
+        this.circuitBreakerOpenTime = indexConfiguration.getIntValue(CONFIG_CIRCUIT_BREAKER_OPEN_TIME, 5000);
+        this.maxOnlineSearches = indexConfiguration.getIntValue(CONFIG_MAX_ONLINE_SEARCHES, 0);
+        this.maxOfflineSearches = indexConfiguration.getIntValue(CONFIG_MAX_OFFLINE_SEARCHES, 0);
+        this.searchQueueSize = indexConfiguration.getIntValue(CONFIG_SEARCH_QUEUE_SIZE, 50);
+        this.searchQueueTimeout = indexConfiguration.getIntValue(CONFIG_SEARCH_QUEUE_TIMEOUT, 1000);
+    }
+
+    public SolrServer getSolrServer() {
+        return solrServer;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public boolean isUseSolrPaging() {
+        return useSolrPaging;
+    }
+
+    public int getRowSize() {
+        return rowSize;
+    }
+
+    /**
+     * Returns whether hits are fetched in growing chunks until the requested page is filled instead of fetching a
+     * fixed number of rows. Only used if Solr paging is disabled.
+     * @return true if adaptive fetching is enabled
+     */
+    public boolean isAdaptiveFetch() {
+        return adaptiveFetch;
+    }
+
+    /**
+     * Returns the maximum number of rows that are fetched for one search in adaptive fetch mode.
+     * @return the maximum number of rows
+     */
+    public int getAdaptiveFetchMaxRows() {
+        return adaptiveFetchMaxRows;
+    }
+
+    /**
+     * Returns whether the search first only fetches the ids and scores of the hits and the stored fields only for
+     * the hits on the requested page.
+     * @return true if two phase search is enabled
+     */
+    public boolean isTwoPhaseSearch() {
+        return twoPhaseSearch;
+    }
+
+    /**
+     * Returns whether the hits are checked while the Solr response is read instead of after the whole response has
+     * been parsed. Only the documents on the requested page are kept in memory. Streamed responses are never cached
+     * and the rows are not fetched adaptively.
+     * @return true if streaming search is enabled
+     */
+    public boolean isStreamingSearch() {
+        return streamingSearch;
+    }
+
+    /**
+     * Returns whether identical searches in the same permission context that run at the same time share one request
+     * to Solr and one result processing.
+     * @return true if searches are coalesced
+     */
+    public boolean isCoalesceSearches() {
+        return coalesceSearches;
+    }
+
+    /**
+     * Returns whether highlighting is switched off for the search request and requested with a second request for
+     * the hits on the page only.
+     * @return true if only the page is highlighted
+     */
+    public boolean isPageHighlighting() {
+        return pageHighlighting;
+    }
+
+    public boolean isAvailabilityInSolr() {
+        return availabilityInSolr;
+    }
+
+    /**
+     * Returns the number of seconds the current time is rounded to in the availability filter queries. Filter queries
+     * that don't change with every request can be reused from the Solr filter cache.
+     * @return the precision in seconds, 0 to use the exact time
+     */
+    public int getAvailabilityPrecision() {
+        return availabilityPrecision;
+    }
+
+    public boolean isCachePermissions() {
+        return cachePermissions;
+    }
+
+    /**
+     * Returns the number of threads that check the read permissions of the hits in parallel, 0 if the permissions
+     * are checked by the searching thread.
+     * @return the number of threads
+     */
+    public int getPermissionCheckThreads() {
+        return permissionCheckThreads;
+    }
+
+    /**
+     * Returns the number of milliseconds a search waits for the parallel permission checks of a chunk of hits. Hits
+     * that could not be checked in time are checked by the thread of the search.
+     * @return the timeout in milliseconds
+     */
+    public int getPermissionCheckTimeout() {
+        return permissionCheckTimeout;
+    }
+
+    /**
+     * Returns the maximum number of asynchronous searches that run at the same time.
+     * @return the number of threads
+     */
+    public int getAsyncSearchThreads() {
+        return asyncSearchThreads;
+    }
+
+    /**
+     * Returns the maximum number of asynchronous searches that wait for a thread, further searches are rejected.
+     * @return the queue size
+     */
+    public int getAsyncSearchQueueSize() {
+        return asyncSearchQueueSize;
+    }
+
+    /**
+     * Returns the default number of milliseconds after which an asynchronous search is cancelled.
+     * @return the timeout in milliseconds, 0 for no timeout
+     */
+    public int getAsyncSearchTimeout() {
+        return asyncSearchTimeout;
+    }
+
+    /**
+     * Returns the maximum number of query responses to cache, 0 if the result cache is disabled.
+     * @return the cache size
+     */
+    public int getResultCacheSize() {
+        return resultCacheSize;
+    }
+
+    /**
+     * Returns the number of seconds a query response is cached.
+     * @return the time to live in seconds
+     */
+    public int getResultCacheTimeToLive() {
+        return resultCacheTimeToLive;
+    }
+
+    /**
+     * Returns the number of seconds after which a cached query response is refreshed in the background, 0 if
+     * responses are never refreshed.
+     * @return the refresh time in seconds
+     */
+    public int getResultCacheRefreshAfter() {
+        return resultCacheRefreshAfter;
+    }
+
+    /**
+     * Returns the maximum number of stored documents to cache, 0 if stored documents are not cached.
+     * @return the cache size
+     */
+    public int getDocumentCacheSize() {
+        return documentCacheSize;
+    }
+
+    /**
+     * Returns the number of seconds a stored document is cached if no commit happens in between.
+     * @return the time to live in seconds
+     */
+    public int getDocumentCacheTimeToLive() {
+        return documentCacheTimeToLive;
+    }
+
+    /**
+     * Returns the maximum number of facet counts to cache, 0 if facet counts are not cached.
+     * @return the cache size
+     */
+    public int getFacetCacheSize() {
+        return facetCacheSize;
+    }
+
+    /**
+     * Returns the number of seconds facet counts are cached if no commit happens in between.
+     * @return the time to live in seconds
+     */
+    public int getFacetCacheTimeToLive() {
+        return facetCacheTimeToLive;
+    }
+
+    /**
+     * Returns the number of milliseconds Solr may spend on collecting the hits of a query, 0 for no limit. Solr
+     * returns the hits collected so far when the time is over.
+     * @return the time allowed in milliseconds
+     */
+    public int getTimeAllowed() {
+        return timeAllowed;
+    }
+
+    /**
+     * Returns the number of milliseconds a search waits for the response of Solr, 0 to wait as long as the
+     * connection allows. It applies to streamed queries as well. The queries are sent with a socket timeout of the
+     * deadline plus one second, so the query threads are released soon after a search has given up.
+     * @return the deadline in milliseconds
+     */
+    public int getQueryDeadline() {
+        return queryDeadline;
+    }
+
+    /**
+     * Returns the maximum number of queries that wait for Solr at the same time when a query deadline is set.
+     * @return the number of threads
+     */
+    public int getQueryThreads() {
+        return queryThreads;
+    }
+
+    /**
+     * Returns the percentage of failed queries that opens the circuit breaker, 0 if there is no circuit breaker.
+     * @return the failure rate threshold in percent
+     */
+    public int getCircuitBreakerThreshold() {
+        return circuitBreakerThreshold;
+    }
+
+    /**
+     * Returns the minimum number of queries in a window before the circuit breaker can open.
+     * @return the number of queries
+     */
+    public int getCircuitBreakerMinRequests() {
+        return circuitBreakerMinRequests;
+    }
+
+    /**
+     * Returns the length of the window in which the failed queries are counted.
+     * @return the window in milliseconds
+     */
+    public int getCircuitBreakerWindow() {
+        return circuitBreakerWindow;
+    }
+
+    /**
+     * Returns the time the circuit breaker stays open before a trial query is sent.
+     * @return the open time in milliseconds
+     */
+    public int getCircuitBreakerOpenTime() {
+        return circuitBreakerOpenTime;
+    }
+
+    /**
+     * Returns the maximum number of searches in the online project that run at the same time, 0 for no limit.
+     * @return the limit
+     */
+    public int getMaxOnlineSearches() {
+        return maxOnlineSearches;
+    }
+
+    /**
+     * Returns the maximum number of searches in offline projects that run at the same time, 0 for no limit.
+     * @return the limit
+     */
+    public int getMaxOfflineSearches() {
+        return maxOfflineSearches;
+    }
+
+    /**
+     * Returns the maximum number of searches of each class that wait for a slot when the limit is reached.
+     * @return the queue size
+     */
+    public int getSearchQueueSize() {
+        return searchQueueSize;
+    }
+
+    /**
+     * Returns the maximum time a search waits for a slot before it is rejected.
+     * @return the timeout in milliseconds
+     */
+    public int getSearchQueueTimeout() {
+        return searchQueueTimeout;
+    }
+}
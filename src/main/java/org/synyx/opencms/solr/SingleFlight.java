@@ -0,0 +1,155 @@
+package org.synyx.opencms.solr;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent callers with the same key share one execution of a task. The first caller executes the task in its
+ * own thread, callers that arrive while it is running wait for its result instead of executing the task again.
+ * Nothing is kept once the task has finished, so this is not a cache.
+ * <p>
+ * The execution belongs to the thread of the first caller. If it fails because that thread was interrupted or its
+ * work was cancelled, the waiting callers execute the task themselves, as the failure says nothing about their own
+ * calls.
+ * @param <V> the type of the results
+ */
+public class SingleFlight<V> {
+
+    private final ConcurrentMap<String, Flight<V>> inFlight = new ConcurrentHashMap<String, Flight<V>>();
+    private final AtomicLong executionCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * Executes the task or waits for the execution of another caller with the same key.
+     * @param key the key of the task
+     * @param task the task to execute if no other execution with the key is running
+     * @return the result of the task
+     * @throws Exception the exception of the task
+     */
+    public V execute(String key, Callable<V> task) throws Exception {
+        return execute(key, task, 0);
+    }
+
+    /**
+     * Executes the task or waits for the execution of another caller with the same key, at most for the given time.
+     * @param key the key of the task
+     * @param task the task to execute if no other execution with the key is running
+     * @param timeoutMillis the maximum time to wait for the execution of another caller, 0 to wait until it is done
+     * @return the result of the task
+     * @throws TimeoutException if the execution of another caller did not finish in time
+     * @throws Exception the exception of the task
+     */
+    public V execute(String key, Callable<V> task, long timeoutMillis) throws Exception {
+        Flight<V> flight = new Flight<V>(task);
+        Flight<V> running = inFlight.putIfAbsent(key, flight);
+        if (running == null) {
+            executionCount.incrementAndGet();
+            try {
+                flight.run();
+            } finally {
+                inFlight.remove(key, flight);
+            }
+            return getResult(flight);
+        }
+        coalescedCount.incrementAndGet();
+        try {
+            if (timeoutMillis > 0) {
+                return running.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            return running.get();
+        } catch (ExecutionException e) {
+            if (!running.isInterrupted() && !isInterruption(e.getCause())) {
+                throw unwrap(e);
+            }
+        }
+        // the execution was given up for the first caller, not because of the task
+        executionCount.incrementAndGet();
+        return task.call();
+    }
+
+    /**
+     * Returns the number of tasks that have been executed.
+     * @return the execution count
+     */
+    public long getExecutionCount() {
+        return executionCount.get();
+    }
+
+    /**
+     * Returns the number of callers that shared the execution of another caller.
+     * @return the coalesced count
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Returns the number of tasks that are running right now.
+     * @return the in flight count
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private V getResult(Flight<V> flight) throws Exception {
+        try {
+            return flight.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private Exception unwrap(ExecutionException e) {
+        if (e.getCause() instanceof Exception) {
+            return (Exception) e.getCause();
+        }
+        if (e.getCause() instanceof Error) {
+            throw (Error) e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * Checks whether a failure was caused by an interrupt or a cancellation.
+     */
+    private boolean isInterruption(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException || cause instanceof InterruptedIOException
+                    || cause instanceof CancellationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * One execution of a task. It notes whether the executing thread was interrupted before the waiting callers get
+     * the failure.
+     */
+    private static class Flight<V> extends FutureTask<V> {
+
+        private volatile boolean interrupted;
+
+        Flight(Callable<V> task) {
+            super(task);
+        }
+
+        @Override
+        protected void setException(Throwable failure) {
+            interrupted = Thread.currentThread().isInterrupted();
+            super.setException(failure);
+        }
+
+        boolean isInterrupted() {
+            return interrupted;
+        }
+    }
+}
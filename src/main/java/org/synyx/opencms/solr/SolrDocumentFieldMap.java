@@ -0,0 +1,89 @@
+package org.synyx.opencms.solr;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.apache.solr.common.SolrDocument;
+import org.opencms.search.fields.CmsSearchField;
+
+/**
+ * The fields of a search result as Strings, backed by the {@link SolrDocument} returned by Solr. A value is only
+ * converted when it is accessed the first time; the path and date fields are left out as they are available through
+ * their own accessors. Only iterating the map converts all fields at once.
+ */
+class SolrDocumentFieldMap extends AbstractMap<String, String> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final SolrDocument document;
+    private Map<String, String> converted;
+    private boolean complete;
+
+    SolrDocumentFieldMap(SolrDocument document) {
+        this.document = document;
+    }
+
+    @Override
+    public synchronized String get(Object key) {
+        if (converted != null && (complete || converted.containsKey(key))) {
+            return converted.get(key);
+        }
+        if (!(key instanceof String)) {
+            return null;
+        }
+        String value = convert((String) key);
+        if (converted == null) {
+            converted = new HashMap<String, String>();
+        }
+        converted.put((String) key, value);
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public synchronized String put(String key, String value) {
+        return convertAll().put(key, value);
+    }
+
+    @Override
+    public synchronized Set<Map.Entry<String, String>> entrySet() {
+        return convertAll().entrySet();
+    }
+
+    private Map<String, String> convertAll() {
+        if (!complete) {
+            Map<String, String> all = new HashMap<String, String>();
+            for (String fieldName : document.getFieldNames()) {
+                String value = converted != null && converted.containsKey(fieldName)
+                        ? converted.get(fieldName) : convert(fieldName);
+                if (value != null) {
+                    all.put(fieldName, value);
+                }
+            }
+            converted = all;
+            complete = true;
+        }
+        return converted;
+    }
+
+    private String convert(String fieldName) {
+        if (CmsSearchField.FIELD_PATH.equals(fieldName)
+                || CmsSearchField.FIELD_DATE_CREATED.equals(fieldName)
+                || CmsSearchField.FIELD_DATE_LASTMODIFIED.equals(fieldName)) {
+            // these "hard coded" fields are treated differently
+            return null;
+        }
+        Object value = document.getFieldValue(fieldName);
+        if (value == null) {
+            return null;
+        }
+        String text = value.toString();
+        return text.length() > 0 ? text : null;
+    }
+}
@@ -0,0 +1,27 @@
+package org.synyx.opencms.solr;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.opencms.module.A_CmsModuleAction;
+import org.opencms.module.CmsModule;
+
+/**
+ * The action class of the module. When OpenCms shuts down, it stops the background threads and closes the
+ * connections that are shared by all indexes, so that they don't outlive the web application.
+ */
+public class SolrModuleAction extends A_CmsModuleAction {
+
+    private static final Log LOG = LogFactory.getLog(SolrModuleAction.class);
+
+    @Override
+    public void shutDown(CmsModule module) {
+        super.shutDown(module);
+        ConfigurationFactory.shutdown();
+        HttpClientRegistry.shutdown();
+        ReplicaRoutingSolrServer.shutdownExecutors();
+        AsyncSearchExecutor.shutdownTimeoutScheduler();
+        QueryResultCache.shutdownRefreshExecutor();
+        IndexConfiguration.shutdownEmbeddedServers();
+        LOG.info("Stopped the Solr clients and background threads of module " + module.getName());
+    }
+}
@@ -9,30 +9,46 @@ import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.SortField;
 import org.apache.solr.client.solrj.SolrQuery;
-import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.FacetParams;
 import org.opencms.file.CmsObject;
+import org.opencms.file.CmsProject;
 import org.opencms.file.CmsResource;
-import org.opencms.file.CmsResourceFilter;
 import org.opencms.main.OpenCms;
 import org.opencms.search.CmsIndexException;
 import org.opencms.search.CmsSearchException;
 import org.opencms.search.CmsSearchIndex;
 import org.opencms.search.CmsSearchParameters;
+import org.opencms.search.CmsSearchResult;
 import org.opencms.search.CmsSearchResultList;
 import org.opencms.search.I_CmsIndexWriter;
 import org.opencms.search.Messages;
 import org.opencms.search.fields.CmsSearchField;
-import org.opencms.search.fields.CmsSearchFieldConfiguration;
-import org.opencms.db.CmsUserSettings;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.synyx.opencms.solr.indexing.AvailabilityAwareSearchFieldConfiguration;
 
 /**
@@ -43,27 +59,226 @@ import org.synyx.opencms.solr.indexing.AvailabilityAwareSearchFieldConfiguration
 public abstract class SolrSearchIndex extends CmsSearchIndex {
 
     public final static String FIELD_ID = "id";
+    public final static String FIELD_SCORE = "score";
+    private static final String[] REQUIRED_RESULT_FIELDS = {FIELD_ID, CmsSearchField.FIELD_PATH,
+        CmsSearchField.FIELD_TYPE, CmsSearchField.FIELD_DATE_CREATED, CmsSearchField.FIELD_DATE_LASTMODIFIED};
+    private static final int MIN_PERMISSION_BATCH_SIZE = 20;
+    private static final int MIN_ADAPTIVE_FETCH_SIZE = 20;
+    private static final double ADAPTIVE_FETCH_HEADROOM = 1.25;
+    private static final double MIN_ACCEPTANCE_RATIO = 0.1;
+    private static final String CONFIG_FIELD_CONVERTER_PREFIX = "fieldConverter.";
     private Log LOG = LogFactory.getLog(SolrSearchIndex.class);
-    private SolrServer solrServer;
-    private boolean useSolrPaging;
-    private int rowSize;
-    private boolean availabilityInSolr;
-    private static final String CONFIG_USE_SOLR_PAGING = "useSolrPaging";
-    private static final String CONFIG_NO_SOLR_PAGING_ROW_SIZE = "rowSize";
-    private static final String CONFIG_AVAILABILITY_IN_SOLR = "availabilityInSolr";
+    // searches are not synchronized, so all shared state is kept in one immutable object that is swapped atomically
+    private volatile IndexState state = new IndexState();
+    private volatile CmsProject searchProject;
+    private final AcceptanceStatistics acceptanceStatistics = new AcceptanceStatistics();
 
     @Override
     public void initialize() throws CmsSearchException {
         super.initialize();
         IndexConfiguration indexConfiguration = ConfigurationFactory.initIndexConfiguration(getName());
         initialize(indexConfiguration);
+        ConfigurationFactory.setListener(getName(), new ConfigurationFactory.ConfigurationListener() {
+
+            public void configurationChanged(IndexConfiguration changedConfiguration) {
+                initialize(changedConfiguration);
+            }
+        });
     }
 
     protected void initialize(IndexConfiguration indexConfiguration) {
-        this.solrServer = indexConfiguration.getSolrServer();
-        this.useSolrPaging = indexConfiguration.getBooleanValue(CONFIG_USE_SOLR_PAGING, false);
-        this.rowSize = indexConfiguration.getIntValue(CONFIG_NO_SOLR_PAGING_ROW_SIZE, 1000);
-        this.availabilityInSolr = indexConfiguration.getBooleanValue(CONFIG_AVAILABILITY_IN_SOLR, false);
+        IndexState oldState = this.state;
+        IndexState newState = createState(indexConfiguration, oldState);
+        // the new caches are only notified of commits once the state has been built completely
+        addCommitListeners(newState);
+        this.state = newState;
+        this.searchProject = null;
+        removeCommitListeners(oldState);
+        // shut down after the swap, so running searches finish with the old pools and new ones use the new pools
+        shutdownPools(oldState.permissionChecker, oldState.asyncSearchExecutor, oldState.queryExecutor);
+    }
+
+    /**
+     * Builds the state of the index from its configuration. The pools are shut down again if the state can not be
+     * built completely, so a failed re-initialization leaves the current state untouched.
+     */
+    private IndexState createState(IndexConfiguration indexConfiguration, IndexState oldState) {
+        SearchSettings newSettings = new SearchSettings(indexConfiguration);
+        DocumentConverter newDocumentConverter = createDocumentConverter(indexConfiguration);
+        QueryResultCache newQueryResultCache = null;
+        if (newSettings.getResultCacheSize() > 0) {
+            newQueryResultCache = new QueryResultCache(newSettings.getSolrServer(), newSettings.getResultCacheSize(),
+                    newSettings.getResultCacheTimeToLive() * 1000L, newSettings.getResultCacheRefreshAfter() * 1000L);
+        }
+        StoredDocumentLookup newDocumentLookup = new StoredDocumentLookup(newSettings.getSolrServer(),
+                newSettings.getDocumentCacheSize(), newSettings.getDocumentCacheTimeToLive() * 1000L);
+        FacetCountCache newFacetCountCache = null;
+        if (newSettings.getFacetCacheSize() > 0) {
+            newFacetCountCache = new FacetCountCache(newSettings.getFacetCacheSize(),
+                    newSettings.getFacetCacheTimeToLive() * 1000L);
+        }
+        CircuitBreaker newCircuitBreaker = null;
+        if (newSettings.getCircuitBreakerThreshold() > 0) {
+            newCircuitBreaker = new CircuitBreaker(newSettings.getCircuitBreakerThreshold(),
+                    newSettings.getCircuitBreakerMinRequests(), newSettings.getCircuitBreakerWindow(),
+                    newSettings.getCircuitBreakerOpenTime());
+        }
+        AdmissionController newAdmissionController = null;
+        AdmissionController oldAdmissionController = oldState.admissionController;
+        if (oldAdmissionController != null && oldAdmissionController.hasLimits(newSettings.getMaxOnlineSearches(),
+                newSettings.getMaxOfflineSearches(), newSettings.getSearchQueueSize(),
+                newSettings.getSearchQueueTimeout())) {
+            // the running and waiting searches keep their slots, a new controller would admit the limit once more
+            newAdmissionController = oldAdmissionController;
+        } else if (newSettings.getMaxOnlineSearches() > 0 || newSettings.getMaxOfflineSearches() > 0) {
+            newAdmissionController = new AdmissionController(getName(), newSettings.getMaxOnlineSearches(),
+                    newSettings.getMaxOfflineSearches(), newSettings.getSearchQueueSize(),
+                    newSettings.getSearchQueueTimeout());
+        }
+        SingleFlight<SolrSearchResultList> newSearchCoalescer = null;
+        if (newSettings.isCoalesceSearches()) {
+            newSearchCoalescer = oldState.searchCoalescer != null
+                    ? oldState.searchCoalescer : new SingleFlight<SolrSearchResultList>();
+        }
+
+        ParallelPermissionChecker newPermissionChecker = null;
+        AsyncSearchExecutor newAsyncSearchExecutor = null;
+        AsyncSearchExecutor newQueryExecutor = null;
+        boolean created = false;
+        try {
+            if (newSettings.getPermissionCheckThreads() > 0) {
+                newPermissionChecker = new ParallelPermissionChecker(getName(),
+                        newSettings.getPermissionCheckThreads(), newSettings.getPermissionCheckTimeout());
+            }
+            if (newSettings.getAsyncSearchThreads() > 0) {
+                newAsyncSearchExecutor = new AsyncSearchExecutor(getName(), newSettings.getAsyncSearchThreads(),
+                        newSettings.getAsyncSearchQueueSize());
+            }
+            if (newSettings.getQueryDeadline() > 0) {
+                // queries wait in the pool threads, so request threads can give up when the deadline is over
+                newQueryExecutor = new AsyncSearchExecutor(getName() + "-query", newSettings.getQueryThreads(),
+                        newSettings.getQueryThreads());
+            }
+            IndexState newState = new IndexState(newSettings, newDocumentConverter, newQueryResultCache,
+                    newDocumentLookup, newFacetCountCache, newPermissionChecker, newAsyncSearchExecutor,
+                    newQueryExecutor, newCircuitBreaker, newAdmissionController, newSearchCoalescer);
+            created = true;
+            return newState;
+        } finally {
+            if (!created) {
+                shutdownPools(newPermissionChecker, newAsyncSearchExecutor, newQueryExecutor);
+            }
+        }
+    }
+
+    private void addCommitListeners(IndexState state) {
+        String url = state.settings.getUrl();
+        if (state.queryResultCache != null) {
+            CommitNotifier.addListener(url, state.queryResultCache);
+        }
+        CommitNotifier.addListener(url, state.documentLookup);
+        if (state.facetCountCache != null) {
+            CommitNotifier.addListener(url, state.facetCountCache);
+        }
+    }
+
+    private void removeCommitListeners(IndexState state) {
+        if (state.settings == null) {
+            // the index has not been initialized before
+            return;
+        }
+        String url = state.settings.getUrl();
+        if (state.queryResultCache != null) {
+            CommitNotifier.removeListener(url, state.queryResultCache);
+        }
+        CommitNotifier.removeListener(url, state.documentLookup);
+        if (state.facetCountCache != null) {
+            CommitNotifier.removeListener(url, state.facetCountCache);
+        }
+    }
+
+    private void shutdownPools(ParallelPermissionChecker permissionChecker, AsyncSearchExecutor asyncSearchExecutor,
+            AsyncSearchExecutor queryExecutor) {
+        if (permissionChecker != null) {
+            permissionChecker.shutdown();
+        }
+        if (asyncSearchExecutor != null) {
+            asyncSearchExecutor.shutdown();
+        }
+        if (queryExecutor != null) {
+            queryExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Creates the converter for the documents of this index from its field configuration. The handling of single
+     * fields can be changed with properties like <code>fieldConverter.price=long</code>.
+     */
+    private DocumentConverter createDocumentConverter(IndexConfiguration indexConfiguration) {
+        Map<String, FieldConverter> fieldConverters = new HashMap<String, FieldConverter>();
+        for (Map.Entry<String, String> entry : indexConfiguration.getConfigurationMap().entrySet()) {
+            if (entry.getKey().startsWith(CONFIG_FIELD_CONVERTER_PREFIX)) {
+                fieldConverters.put(entry.getKey().substring(CONFIG_FIELD_CONVERTER_PREFIX.length()),
+                        FieldConverters.forName(entry.getValue()));
+            }
+        }
+        return new DocumentConverter(getFieldConfiguration(), fieldConverters);
+    }
+
+    /**
+     * Returns the cache for query responses of this index.
+     * @return the cache or null if query responses are not cached
+     */
+    public QueryResultCache getQueryResultCache() {
+        return state.queryResultCache;
+    }
+
+    /**
+     * Returns the circuit breaker that stops querying Solr while too many queries fail.
+     * @return the circuit breaker or null if there is none
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return state.circuitBreaker;
+    }
+
+    /**
+     * Returns the admission control that limits the number of concurrent searches of this index.
+     * @return the admission control or null if searches are not limited
+     */
+    public AdmissionController getAdmissionController() {
+        return state.admissionController;
+    }
+
+    /**
+     * Returns the cache for the facet counts of this index.
+     * @return the cache or null if facet counts are not cached
+     */
+    public FacetCountCache getFacetCountCache() {
+        return state.facetCountCache;
+    }
+
+    /**
+     * Returns the lookup for stored documents of this index, e.g. to read the counters of its cache.
+     * @return the document lookup
+     */
+    public StoredDocumentLookup getDocumentLookup() {
+        return state.documentLookup;
+    }
+
+    /**
+     * Returns the coalescer that lets identical concurrent searches share one execution, e.g. to read its counters.
+     * @return the coalescer or null if searches are not coalesced
+     */
+    public SingleFlight<SolrSearchResultList> getSearchCoalescer() {
+        return state.searchCoalescer;
+    }
+
+    /**
+     * Returns the current configuration snapshot of this index.
+     * @return the search settings
+     */
+    protected SearchSettings getSettings() {
+        return state.settings;
     }
 
 
@@ -109,13 +324,11 @@ public abstract class SolrSearchIndex extends CmsSearchIndex {
     @Override
     public Document getDocument(String rootPath) {
 
+        IndexState state = this.state;
         try {
-            SolrQuery query = new SolrQuery("id:".concat(rootPath)); // TODO: this does not work as expected for dismax query handlers
-            QueryResponse queryResponse = solrServer.query(query);
-            SolrDocumentList docs = queryResponse.getResults();
-            if (!docs.isEmpty()) {
-                SolrDocument doc = docs.get(0);
-                return new DocumentConverter().asDocument(doc);
+            SolrDocument doc = state.documentLookup.fetch(rootPath, null);
+            if (doc != null) {
+                return state.documentConverter.asDocument(doc);
             }
         } catch (SolrServerException e) {
             throw new SolrSearchIndexException(
@@ -135,7 +348,8 @@ public abstract class SolrSearchIndex extends CmsSearchIndex {
      */
     @Override
     public I_CmsIndexWriter getIndexWriter(boolean create) throws CmsIndexException {
-        return new SolrIndexWriter(solrServer);
+        IndexState state = this.state;
+        return new SolrIndexWriter(state.settings.getSolrServer(), state.settings.getUrl(), state.documentConverter);
     }
 
     /**
@@ -167,169 +381,258 @@ public abstract class SolrSearchIndex extends CmsSearchIndex {
      * @throws CmsSearchException if something goes wrong
      */
     @Override
-    public final synchronized CmsSearchResultList search(CmsObject cms, CmsSearchParameters params)
+    public final CmsSearchResultList search(CmsObject cms, CmsSearchParameters params)
             throws CmsSearchException {
+        return search(cms, params, params.getSearchPage(), params.getMatchesPerPage(), true, 0);
+    }
 
-        long timeTotal = -System.currentTimeMillis();
-        long timeLucene;
-        long timeResultProcessing;
+    /**
+     * Returns the first readable hits of a search, ignoring the page and cursor of the parameters. Used to merge the
+     * hits of several indexes before the requested page is cut out.
+     * @param cms the current user's Cms object
+     * @param params the parameters to use for the search
+     * @param count the number of hits to return, 0 for all hits
+     * @param deadline the time in milliseconds after which the caller does not wait for the hits anymore, 0 if it
+     * waits until they are found
+     * @return the hits, the hit count is the one of the complete result
+     * @throws CmsSearchException if something goes wrong
+     */
+    SolrSearchResultList searchTopHits(CmsObject cms, CmsSearchParameters params, int count, long deadline)
+            throws CmsSearchException {
+        return search(cms, params, 1, count, false, deadline);
+    }
+
+    /**
+     * Performs a search. A search that waits for an identical search of another caller gives up at the deadline of
+     * its own caller.
+     */
+    private SolrSearchResultList search(CmsObject cms, final CmsSearchParameters params, int searchPage,
+            final int matchesPerPage, boolean cursorAllowed, long deadline) throws CmsSearchException {
 
         if (LOG.isDebugEnabled()) {
             LOG.debug(Messages.get().getBundle().key(Messages.LOG_SEARCH_PARAMS_2, params, getName()));
         }
 
-        // storage for the results found
-        SolrSearchResultList searchResults = new SolrSearchResultList();
-
-        int previousPriority = Thread.currentThread().getPriority();
-
-        SolrDocumentList hits = null;
+        // read the snapshot once so that a concurrent re-initialization does not affect this search
+        final IndexState state = this.state;
+        final SearchSettings settings = state.settings;
+        // searches that were admitted before a re-initialization release their slot where they got it
+        AdmissionController admissionController = state.admissionController;
+        AdmissionController.SearchClass searchClass = getSearchClass(cms);
+        if (admissionController != null) {
+            try {
+                admissionController.acquire(searchClass);
+            } catch (SearchRejectedException e) {
+                // counted by the admission control, logging every rejection would add to the overload
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(e.getMessage());
+                }
+                throw new CmsSearchException(Messages.get().container(Messages.ERR_SEARCH_PARAMS_1, params), e);
+            }
+        }
 
         try {
-            // copy the user OpenCms context
-            CmsObject searchCms = OpenCms.initCmsObject(cms);
-
-            if (getPriority() > 0) {
-                // change thread priority in order to reduce search impact on overall system performance
-                Thread.currentThread().setPriority(getPriority());
+            CmsObject searchCms = initSearchCms(cms);
+            // the user, project and time warp context is determined once for the whole search
+            final ReadPermissionResolver permissionResolver = createPermissionResolver(searchCms, settings);
+
+            final SearchCursor cursor = cursorAllowed ? getCursor(params) : null;
+            // with a cursor the requested page is always the first one after the cursor
+            final int page = cursor != null ? 1 : searchPage;
+            final SolrQuery solrQuery = createSolrQuery(settings, params, page, matchesPerPage, searchCms,
+                    permissionResolver, cursor);
+            if (isAdaptiveFetch(settings)) {
+                solrQuery.setRows(getInitialFetchSize(settings, page, matchesPerPage, permissionResolver));
             }
 
-            // change the project
-            searchCms.getRequestContext().setCurrentProject(searchCms.readProject(getProject()));
-
-            timeLucene = -System.currentTimeMillis();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(Messages.get().getBundle().key(Messages.LOG_BASE_QUERY_1, solrQuery));
+            }
 
-            SolrQuery solrQuery = new SolrQuery();
-            addSearchRootFilterQueryToSolrQuery(solrQuery, params, searchCms);
-            addCategoryFilterQueryToSolrQuery(solrQuery, params);
-            addResourceTypesFilterQueryToSolrQuery(solrQuery, params);
-            addQueryToSolrQuery(solrQuery, params);
-            if (availabilityInSolr) {
-                addDateReleasedRangeFilterQuery(solrQuery, searchCms);
-                addDateExpiredRangeFilterQuery(solrQuery, searchCms);
+            SingleFlight<SolrSearchResultList> searchCoalescer = state.searchCoalescer;
+            if (searchCoalescer == null) {
+                return executeSearch(state, params, solrQuery, cursor, page, matchesPerPage, permissionResolver);
             }
-            addDateCreatedFilterQuery(solrQuery, params);
-            addDateLastModifiedFilterQuery(solrQuery, params);
 
-            if (params.getSort() != null) {
-                for (SortField sortField : params.getSort().getSort()) {
-                    if (sortField.getReverse()) {
-                        solrQuery.addSortField(sortField.getField(), SolrQuery.ORDER.desc);
-                    } else {
-                        solrQuery.addSortField(sortField.getField(), SolrQuery.ORDER.asc);
-                    }
+            // identical searches in the same permission context that are running right now share their result
+            String key = createCoalescingKey(solrQuery, cursor, page, matchesPerPage, permissionResolver);
+            long timeout = deadline > 0 ? Math.max(1, deadline - System.currentTimeMillis()) : 0;
+            SolrSearchResultList sharedResults = searchCoalescer.execute(key, new Callable<SolrSearchResultList>() {
+
+                public SolrSearchResultList call() {
+                    return executeSearch(state, params, solrQuery, cursor, page, matchesPerPage,
+                            permissionResolver);
                 }
-            }
+            }, timeout);
+            return copyOf(sharedResults);
 
-            if (useSolrPaging) {
-                solrQuery.setRows(params.getMatchesPerPage());
-                solrQuery.setStart(params.getMatchesPerPage() * (params.getSearchPage() - 1));
-            } else {
-                // setting to a quite high value should be sufficient
-                solrQuery.setRows(rowSize);
-            }
+        } catch (RuntimeException e) {
+            throw new CmsSearchException(Messages.get().container(Messages.ERR_SEARCH_PARAMS_1, params), e);
 
-            if (params instanceof SolrSearchParameters) {
-                SolrSearchParameters solrParams = (SolrSearchParameters) params;
-                solrQuery.setQueryType(solrParams.getQueryType());
 
-                // add any filter queries that are configured
-                for (SolrSearchParameters.FilterQuery filterQuery : solrParams.getFilterQueries()) {
-                    solrQuery.addFilterQuery(buildFilterQuery(filterQuery.getFieldname(), filterQuery.getQuery(), filterQuery.getOccur()));
-                }
-            }
+        } catch (Exception e) {
+            throw new CmsSearchException(Messages.get().container(Messages.ERR_SEARCH_PARAMS_1, params), e);
 
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(Messages.get().getBundle().key(Messages.LOG_BASE_QUERY_1, solrQuery));
-            }
 
+        } finally {
 
-            // perform the search operation
-            QueryResponse response = null;
-            try {
-                response = solrServer.query(solrQuery);
-            } catch (SolrServerException e) {
-                LOG.error("Caught a SolrServerException while trying to perform an index search.", e);
-                throw new SolrSearchIndexException(e.getMessage(), e);
+            if (admissionController != null) {
+                admissionController.release(searchClass);
             }
-            hits = response.getResults();
 
-            timeLucene += System.currentTimeMillis();
-            timeResultProcessing = -System.currentTimeMillis();
-
-            if (hits != null) {
-                //int hitCount = hits.size() > hits.scoreDocs.length ? hits.scoreDocs.length : hits.totalHits;
-                int hitCount = (int) hits.getNumFound();
-                int page = params.getSearchPage();
-                int start = -1, end = -1;
-                if ((params.getMatchesPerPage() > 0) && (page > 0) && (hitCount > 0)) {
-                    // calculate the final size of the search result
-                    start = params.getMatchesPerPage() * (page - 1);
-                    end = start + params.getMatchesPerPage();
-                    // ensure that both i and n are inside the range of foundDocuments.size()
-                    start = (start > hitCount) ? hitCount : start;
-                    end = (end > hitCount) ? hitCount : end;
-                } else {
-                    // return all found documents in the search result
-                    start = 0;
-                    end = hitCount;
-                }
 
-                int visibleHitCount = hitCount;
-
-                for (int i = 0, cnt = 0; (i < hitCount)
-                        && ((useSolrPaging && i < end) || (!useSolrPaging && cnt < end)); i++) {
-                    try {
-                        SolrDocument solrDocument = hits.get(i);
-
-                        String path = (String) solrDocument.get(CmsSearchField.FIELD_PATH);
-                        String type = (String) solrDocument.get(CmsSearchField.FIELD_TYPE);
-
-                        if ((hasReadPermission(searchCms, type, path))) {
-                            // either add the result if we are in the current pagination window or if
-                            // we use solr paging anyway
-                            if (useSolrPaging || cnt >= start) {
-                                searchResults.add(createSearchResult(response, solrDocument, hits));
-                            }
-                            cnt++;
-                        } else {
-                            visibleHitCount--;
-                            LOG.warn("Indexed document found could not be added to the search result: " + path);
-                        }
-
-                    } catch (Exception e) {
-                        // should not happen, but if it does we want to go on with the next result nevertheless
-                        if (LOG.isWarnEnabled()) {
-                            LOG.warn(Messages.get().getBundle().key(Messages.LOG_RESULT_ITERATION_FAILED_0), e);
-                        }
-                    }
-                }
+        }
+    }
 
-                searchResults.setHitCount(visibleHitCount); // save the total count of search results
-                searchResults.setFacetFields(response.getFacetFields());
-            } else {
-                searchResults.setHitCount(0);
-            }
+    /**
+     * Creates the resolver for the read permissions of the hits of one search.
+     */
+    ReadPermissionResolver createPermissionResolver(CmsObject searchCms, SearchSettings settings) {
+        return new ReadPermissionResolver(searchCms, isCheckingPermissions(),
+                settings.isCachePermissions() ? PermissionCache.getInstance() : null);
+    }
 
-            timeResultProcessing += System.currentTimeMillis();
+    /**
+     * Determines the class of a search for the admission control: searches of the public site are limited apart
+     * from the searches of the editors.
+     */
+    private AdmissionController.SearchClass getSearchClass(CmsObject cms) {
+        if (cms.getRequestContext().currentProject().isOnlineProject()) {
+            return AdmissionController.SearchClass.ONLINE;
+        }
+        return AdmissionController.SearchClass.OFFLINE;
+    }
 
+    /**
+     * Sends the query to Solr and creates the search results for the requested page.
+     */
+    private SolrSearchResultList executeSearch(IndexState state, CmsSearchParameters params,
+            SolrQuery solrQuery, SearchCursor cursor, int page, int matchesPerPage,
+            ReadPermissionResolver permissionResolver) {
 
-        } catch (RuntimeException e) {
-            throw new CmsSearchException(Messages.get().container(Messages.ERR_SEARCH_PARAMS_1, params), e);
+        SearchSettings settings = state.settings;
+        long timeTotal = -System.currentTimeMillis();
+        long timeLucene = -System.currentTimeMillis();
+        long timeResultProcessing;
 
+        // storage for the results found
+        SolrSearchResultList searchResults = new SolrSearchResultList();
 
-        } catch (Exception e) {
-            throw new CmsSearchException(Messages.get().container(Messages.ERR_SEARCH_PARAMS_1, params), e);
+        // the facet counts don't depend on the page, so they are computed once for all pages of a search
+        FacetCountCache facetCountCache = state.facetCountCache;
+        FacetCountCache.FacetCounts facetCounts = null;
+        String facetKey = null;
+        long facetGeneration = 0;
+        if (facetCountCache != null && FacetCountCache.isFaceted(solrQuery)) {
+            facetKey = FacetCountCache.createKey(solrQuery);
+            facetCounts = facetCountCache.get(facetKey);
+            if (facetCounts != null) {
+                solrQuery = solrQuery.getCopy();
+                solrQuery.set(FacetParams.FACET, false);
+            } else {
+                facetGeneration = facetCountCache.getGeneration();
+            }
+        }
 
+        // perform the search operation
+        QueryResponse response;
+        SolrDocumentList hits;
+        StreamingHitCollector collector = null;
+        // the documents a cursor skips are not part of the result
+        int skipped = cursor != null ? cursor.getSkip() : 0;
+        if (settings.isStreamingSearch()) {
+            // the hits are selected while the response is read
+            collector = new StreamingHitCollector(matchesPerPage, page, settings.isUseSolrPaging(), skipped,
+                    permissionResolver, MIN_PERMISSION_BATCH_SIZE);
+            response = executeStreamingQuery(state, solrQuery, collector);
+            hits = collector.getDocuments();
+        } else {
+            response = executeQuery(state, solrQuery);
+            hits = response.getResults();
+        }
 
-        } finally {
+        timeLucene += System.currentTimeMillis();
+        timeResultProcessing = -System.currentTimeMillis();
+
+        if (facetCounts == null) {
+            if (facetKey != null) {
+                facetCounts = facetCountCache.put(facetKey, response, facetGeneration);
+            } else {
+                facetCounts = FacetCountCache.FacetCounts.of(response);
+            }
+        }
 
-            // re-set thread to previous priority
-            Thread.currentThread().setPriority(previousPriority);
+        if (hits != null) {
+            List<FetchedChunk> chunks = new ArrayList<FetchedChunk>();
+            chunks.add(new FetchedChunk(response, hits));
+            PageSelection selection;
+            if (collector != null) {
+                selection = collector.getSelection();
+            } else {
+                selection = new PageSelection(matchesPerPage, page, hits.getNumFound() - skipped,
+                        settings.isUseSolrPaging());
+                selectPageHits(state.permissionChecker, selection, chunks, 0, permissionResolver);
+                if (isAdaptiveFetch(settings) && !fetchUntilPageIsFull(state, solrQuery, selection, chunks,
+                        permissionResolver)) {
+                    searchResults.setPartial(true);
+                }
+            }
+            for (FetchedChunk chunk : chunks) {
+                if (isPartial(chunk.response)) {
+                    searchResults.setPartial(true);
+                }
+            }
 
+            Map<String, SolrDocument> storedDocuments = null;
+            if (settings.isTwoPhaseSearch()) {
+                storedDocuments = fetchStoredDocuments(state.documentLookup, params, chunks, selection);
+            }
+            Map<String, Map<String, List<String>>> pageHighlighting = null;
+            if (settings.isPageHighlighting()) {
+                pageHighlighting = fetchPageHighlighting(state, solrQuery, chunks, selection);
+            }
 
+            for (int k = 0; k < selection.size(); k++) {
+                FetchedChunk chunk = chunks.get(selection.getChunk(k));
+                int i = selection.get(k);
+                try {
+                    SolrDocument solrDocument = storedDocuments != null
+                            ? storedDocuments.get(chunk.hitList.getId(i)) : chunk.documents.get(i);
+                    if (solrDocument != null) {
+                        Map<String, Map<String, List<String>>> highlighting = pageHighlighting != null
+                                ? pageHighlighting : chunk.response.getHighlighting();
+                        searchResults.add(createSearchResult(highlighting, solrDocument,
+                                chunk.hitList.getScore(i), chunk.hitList.getMaxScore()));
+                    }
+                } catch (Exception e) {
+                    // should not happen, but if it does we want to go on with the next result nevertheless
+                    if (LOG.isWarnEnabled()) {
+                        LOG.warn(Messages.get().getBundle().key(Messages.LOG_RESULT_ITERATION_FAILED_0), e);
+                    }
+                }
+            }
+
+            // save the total count of search results
+            int offset = cursor != null ? cursor.getOffset() : 0;
+            if (isAdaptiveFetch(settings)) {
+                searchResults.setHitCount(offset + selection.getEstimatedVisibleHitCount());
+            } else {
+                searchResults.setHitCount(offset + selection.getVisibleHitCount());
+            }
+            if (cursor != null) {
+                searchResults.setNextCursor(getNextCursor(params, cursor, chunks, selection));
+            }
+            searchResults.setHitCountExact(selection.isComplete() || !isCheckingPermissions());
+            if (facetCounts != null) {
+                searchResults.setFacetFields(facetCounts.getFacetFields());
+                searchResults.setFacetPivots(facetCounts.getFacetPivots());
+            }
+        } else {
+            searchResults.setHitCount(0);
         }
 
+        timeResultProcessing += System.currentTimeMillis();
+
         if (LOG.isDebugEnabled()) {
             timeTotal += System.currentTimeMillis();
             Object[] logParams = new Object[]{
@@ -338,205 +641,798 @@ public abstract class SolrSearchIndex extends CmsSearchIndex {
                 new Long(timeLucene),
                 new Long(timeResultProcessing)};
             LOG.debug(Messages.get().getBundle().key(Messages.LOG_STAT_RESULTS_TIME_4, logParams));
+        }
+
+        return searchResults;
+    }
 
+    /**
+     * Builds the key under which identical concurrent searches are coalesced. Besides the Solr query it contains
+     * everything else the result depends on: the page window, the cursor and the permission context.
+     */
+    private String createCoalescingKey(SolrQuery solrQuery, SearchCursor cursor, int page, int matchesPerPage,
+            ReadPermissionResolver permissionResolver) {
+        StringBuilder key = new StringBuilder(QueryResultCache.createKey(solrQuery));
+        key.append("|page=").append(page).append('/').append(matchesPerPage);
+        key.append("|cursor=").append(cursor != null ? cursor.toToken() : "");
+        key.append("|context=").append(permissionResolver.getContextKey()).append('/')
+                .append(permissionResolver.getTimeWarp());
+        return key.toString();
+    }
 
+    /**
+     * Copies a result that is shared by coalesced searches, so every caller can modify its own list and hits.
+     */
+    private SolrSearchResultList copyOf(SolrSearchResultList results) {
+        SolrSearchResultList copy = new SolrSearchResultList();
+        for (CmsSearchResult result : results) {
+            copy.add(result instanceof SolrSearchResult ? new SolrSearchResult((SolrSearchResult) result) : result);
         }
+        copy.setHitCount(results.getHitCount());
+        copy.setHitCountExact(results.isHitCountExact());
+        copy.setNextCursor(results.getNextCursor());
+        copy.setPartial(results.isPartial());
+        copy.setFacetFields(results.getFacetFields() != null
+                ? new ArrayList<FacetField>(results.getFacetFields()) : null);
+        copy.setFacetPivots(results.getFacetPivots());
+        return copy;
+    }
 
-        return searchResults;
+    /**
+     * Starts a search in the background, using the configured default timeout.
+     * @param cms the current user's Cms object
+     * @param params the parameters to use for the search
+     * @return the future result of the search
+     * @throws CmsSearchException if the search can not be started
+     * @see #searchAsync(CmsObject, CmsSearchParameters, long)
+     */
+    public Future<CmsSearchResultList> searchAsync(CmsObject cms, CmsSearchParameters params)
+            throws CmsSearchException {
+        return searchAsync(cms, params, state.settings.getAsyncSearchTimeout());
+    }
 
+    /**
+     * Starts a search in the background. Several independent searches can be started at once, so they wait for Solr
+     * at the same time instead of one after another. The search is cancelled when the timeout is reached or when the
+     * returned future is cancelled; its thread is not interrupted, so it still runs to its end in the background.
+     * @param cms the current user's Cms object
+     * @param params the parameters to use for the search
+     * @param timeoutMillis the time after which the search is cancelled, 0 for no timeout
+     * @return the future result of the search
+     * @throws CmsSearchException if the search can not be started, e.g. because too many searches are waiting
+     */
+    public Future<CmsSearchResultList> searchAsync(CmsObject cms, final CmsSearchParameters params,
+            long timeoutMillis) throws CmsSearchException {
 
+        AsyncSearchExecutor executor = state.asyncSearchExecutor;
+        if (executor == null) {
+            throw new CmsSearchException(Messages.get().container(Messages.ERR_SEARCH_PARAMS_1, params),
+                    new IllegalStateException("Asynchronous searches are disabled for index " + getName()));
+        }
+        try {
+            // the Cms object of the user stays in use by the calling thread
+            final CmsObject searchCms = OpenCms.initCmsObject(cms);
+            final long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : 0;
+            return executor.submit(new Callable<CmsSearchResultList>() {
+
+                public CmsSearchResultList call() throws CmsSearchException {
+                    return search(searchCms, params, params.getSearchPage(), params.getMatchesPerPage(), true,
+                            deadline);
+                }
+            }, timeoutMillis);
+        } catch (CmsException e) {
+            throw new CmsSearchException(Messages.get().container(Messages.ERR_SEARCH_PARAMS_1, params), e);
+        } catch (RejectedExecutionException e) {
+            throw new CmsSearchException(Messages.get().container(Messages.ERR_SEARCH_PARAMS_1, params), e);
+        }
     }
 
-    private void addSearchRootFilterQueryToSolrQuery(SolrQuery solrQuery, CmsSearchParameters params, CmsObject searchCms) {
+    /**
+     * Prepares the Solr query for a search.
+     */
+    private SolrQuery createSolrQuery(SearchSettings settings, CmsSearchParameters params, int page,
+            int matchesPerPage, CmsObject searchCms, ReadPermissionResolver permissionResolver, SearchCursor cursor) {
+
+        SolrQuery solrQuery = new SolrQuery();
+        addQueryToSolrQuery(solrQuery, params);
+
+        FilterQueryCompiler filterQueries = new FilterQueryCompiler();
+        addSearchRootFilterQuery(filterQueries, params, searchCms);
+        addCategoryFilterQuery(filterQueries, params);
+        addResourceTypesFilterQuery(filterQueries, params);
+        if (settings.isAvailabilityInSolr()) {
+            long availabilityTime = getAvailabilityTime(settings, permissionResolver.getTimeWarp());
+            addDateReleasedRangeFilterQuery(filterQueries, availabilityTime);
+            addDateExpiredRangeFilterQuery(filterQueries, availabilityTime);
+        }
+        addDateCreatedFilterQuery(filterQueries, params);
+        addDateLastModifiedFilterQuery(filterQueries, params);
 
-        if ((params.getRoots() != null) && (params.getRoots().size() > 0)) {
-            // add the all configured search roots with will request context
-            for (int i = 0; i < params.getRoots().size(); i++) {
-                String searchRoot = searchCms.getRequestContext().addSiteRoot(params.getRoots().get(i));
-                extendPathFilter(solrQuery, searchRoot);
+        if (params.getSort() != null) {
+            for (SortField sortField : params.getSort().getSort()) {
+                if (sortField.getReverse()) {
+                    solrQuery.addSortField(sortField.getField(), SolrQuery.ORDER.desc);
+                } else {
+                    solrQuery.addSortField(sortField.getField(), SolrQuery.ORDER.asc);
+                }
+            }
+        }
+        if (cursor != null) {
+            // the id makes the sort order unique so the cursor position is well defined
+            solrQuery.addSortField(FIELD_ID, SolrQuery.ORDER.asc);
+            String cursorFilterQuery = cursor.toFilterQuery(params.getSort());
+            if (cursorFilterQuery != null) {
+                filterQueries.add(cursorFilterQuery);
+            }
+        }
+
+        if (settings.isUseSolrPaging()) {
+            solrQuery.setRows(matchesPerPage);
+            if (cursor == null) {
+                solrQuery.setStart(matchesPerPage * (page - 1));
             }
         } else {
-            // just use the current site root as the search root
-            extendPathFilter(solrQuery, searchCms.getRequestContext().getSiteRoot());
+            // setting to a quite high value should be sufficient
+            solrQuery.setRows(settings.getRowSize());
+        }
+        if (cursor != null && cursor.getSkip() > 0) {
+            solrQuery.setStart(cursor.getSkip());
+        }
+        if (settings.getTimeAllowed() > 0) {
+            solrQuery.setTimeAllowed(settings.getTimeAllowed());
+        }
+
+        if (settings.isPageHighlighting()) {
+            // only the hits on the page are highlighted with a second request
+            solrQuery.setHighlight(false);
+        }
+
+        if (settings.isTwoPhaseSearch()) {
+            // the stored fields are only fetched for the hits on the page
+            solrQuery.setFields(HitList.FIELDS);
+        } else {
+            String[] resultFields = getResultFields(params);
+            if (resultFields != null) {
+                solrQuery.setFields(resultFields);
+                solrQuery.addField(FIELD_SCORE);
+            }
+        }
+        if (cursor != null && solrQuery.getFields() != null) {
+            // the next cursor is created from the sort values of the last hit
+            for (SortField sortField : params.getSort().getSort()) {
+                solrQuery.addField(sortField.getField());
+            }
+        }
+
+        if (params instanceof SolrSearchParameters) {
+            SolrSearchParameters solrParams = (SolrSearchParameters) params;
+            solrQuery.setQueryType(solrParams.getQueryType());
+
+            // add any filter queries that are configured
+            for (SolrSearchParameters.FilterQuery filterQuery : solrParams.getFilterQueries()) {
+                filterQueries.add(filterQuery.getFieldname(), filterQuery.getQuery(), filterQuery.getOccur());
+            }
+            addFacetParameters(solrQuery, solrParams, cursor != null);
         }
+        filterQueries.addTo(solrQuery);
+
+        return solrQuery;
     }
 
-    private void addCategoryFilterQueryToSolrQuery(SolrQuery solrQuery, CmsSearchParameters params) {
+    /**
+     * Requests the facets that are configured in the search parameters.
+     * @param excludeCursor whether the facet fields are counted without the filter query of the cursor
+     */
+    private void addFacetParameters(SolrQuery solrQuery, SolrSearchParameters params, boolean excludeCursor) {
+        Set<String> facetFields = new LinkedHashSet<String>();
+        if (params.getFacetField() != null) {
+            facetFields.add(params.getFacetField());
+        }
+        facetFields.addAll(params.getFacetFields());
+        Collection<String> pivotFields = params.getFacetPivotFields();
+        boolean pivot = pivotFields != null && !pivotFields.isEmpty();
+        if (facetFields.isEmpty() && !pivot) {
+            return;
+        }
 
-        if ((params.getCategories() != null) && (params.getCategories().size() > 0)) {
-            // MUST
-            for (String category : params.getCategories()) {
-                solrQuery.addFilterQuery(buildFilterQuery(CmsSearchField.FIELD_CATEGORY, category, Occur.MUST));
+        solrQuery.setFacet(true);
+        for (String facetField : facetFields) {
+            if (excludeCursor) {
+                // all pages of a result have the same facet counts
+                solrQuery.addFacetField("{!ex=" + SearchCursor.FILTER_TAG + "}" + facetField);
+            } else {
+                solrQuery.addFacetField(facetField);
+            }
+        }
+        if (pivot) {
+            StringBuilder pivotParam = new StringBuilder();
+            for (String pivotField : pivotFields) {
+                if (pivotParam.length() > 0) {
+                    pivotParam.append(',');
+                }
+                pivotParam.append(pivotField);
             }
+            solrQuery.set(FacetCountCache.FACET_PIVOT, pivotParam.toString());
+        }
+        if (params.getFacetLimit() != null) {
+            solrQuery.setFacetLimit(params.getFacetLimit().intValue());
+        }
+        if (params.getFacetMinCount() != null) {
+            solrQuery.setFacetMinCount(params.getFacetMinCount().intValue());
         }
     }
 
-    private void addResourceTypesFilterQueryToSolrQuery(SolrQuery solrQuery, CmsSearchParameters params) {
+    /**
+     * Returns the cursor requested for the search.
+     * @return the cursor or null if the search is not paged with a cursor
+     */
+    private SearchCursor getCursor(CmsSearchParameters params) {
+        if (!(params instanceof SolrSearchParameters) || ((SolrSearchParameters) params).getCursor() == null) {
+            return null;
+        }
+        if (!SearchCursor.isSupported(params.getSort())) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Search cursor ignored, results sorted by relevance are paged by page number");
+            }
+            return null;
+        }
+        return SearchCursor.parse(((SolrSearchParameters) params).getCursor());
+    }
 
-        if ((params.getResourceTypes() != null) && (params.getResourceTypes().size() > 0)) {
-            // MUST
-            for (String resourceType : params.getResourceTypes()) {
-                solrQuery.addFilterQuery(buildFilterQuery(CmsSearchField.FIELD_TYPE, resourceType, Occur.MUST));
+    /**
+     * Returns the token for the page after the current one.
+     * @return the token or null if there are no more hits
+     */
+    private String getNextCursor(CmsSearchParameters params, SearchCursor cursor, List<FetchedChunk> chunks,
+            PageSelection selection) {
+        int last = selection.getLast();
+        if (last < 0 || selection.isComplete()) {
+            return null;
+        }
+        SolrDocument lastHit = chunks.get(selection.getChunk(last)).documents.get(selection.get(last));
+        int offset = cursor.getOffset() + selection.getAcceptedCount();
+        SearchCursor next = SearchCursor.after(lastHit, params.getSort(), offset);
+        if (next == null) {
+            // the last hit has no value for a sort field, the hits checked are skipped instead
+            next = cursor.skip(selection.getExaminedCount(), offset);
+        }
+        return next.toToken();
+    }
+
+    private QueryResponse executeQuery(IndexState state, SolrQuery solrQuery) {
+        QueryResultCache queryResultCache = state.queryResultCache;
+        CircuitBreaker circuitBreaker = state.circuitBreaker;
+        if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            QueryResponse cached = queryResultCache != null ? queryResultCache.getCached(solrQuery) : null;
+            if (cached != null) {
+                return cached;
             }
+            throw new SolrSearchIndexException("Solr is not queried as the circuit breaker of index " + getName()
+                    + " is open", null);
+        }
+        try {
+            QueryResponse response = sendQuery(state, solrQuery);
+            recordOutcome(circuitBreaker, true);
+            return response;
+        } catch (SolrServerException e) {
+            recordOutcome(circuitBreaker, false);
+            LOG.error("Caught a SolrServerException while trying to perform an index search.", e);
+            throw new SolrSearchIndexException(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            recordOutcome(circuitBreaker, !isServerError(e));
+            throw e;
         }
     }
 
-    private void addDateReleasedRangeFilterQuery(SolrQuery solrQuery, CmsObject cms) {
-        String dateReleasedRangeFilterQuery = null;
+    /**
+     * Sends the query, waiting at most until the query deadline is over.
+     */
+    private QueryResponse sendQuery(final IndexState state, final SolrQuery solrQuery) throws SolrServerException {
+        return sendWithinDeadline(state, new Callable<QueryResponse>() {
 
-        CmsUserSettings cmsUserSettings = new CmsUserSettings(cms);
-        long timeWarp = cmsUserSettings.getTimeWarp();
-        if (timeWarp == -1) {
-            dateReleasedRangeFilterQuery =
-                    getDateReleaseRangeQuery(new DateTime(DateTimeZone.UTC).getMillis()).getRangeQueryString();
-        } else {
-            dateReleasedRangeFilterQuery = getDateReleaseRangeQuery(timeWarp).getRangeQueryString();
+            public QueryResponse call() throws SolrServerException {
+                return sendQueryNow(state.settings, solrQuery, state.queryResultCache);
+            }
+        }, null);
+    }
+
+    /**
+     * Runs the request in the query threads if a query deadline is set and waits at most until the deadline is over.
+     * If the deadline is over, the collector of a streamed response is cancelled, so the thread of the search is the
+     * only one that uses its permission resolver again.
+     */
+    private QueryResponse sendWithinDeadline(IndexState state, Callable<QueryResponse> request,
+            StreamingHitCollector collector) throws SolrServerException {
+        AsyncSearchExecutor queryExecutor = state.queryExecutor;
+        if (queryExecutor == null) {
+            return callNow(request);
+        }
+
+        Future<QueryResponse> future;
+        try {
+            future = queryExecutor.submit(request, 0);
+        } catch (RejectedExecutionException e) {
+            if (queryExecutor != this.state.queryExecutor) {
+                // the index has been re-initialized in the meantime
+                return callNow(request);
+            }
+            throw new SolrServerException("Too many queries of index " + getName() + " are waiting for Solr", e);
         }
 
-        solrQuery.addFilterQuery(buildFilterQuery(AvailabilityAwareSearchFieldConfiguration.FIELD_RELEASE, dateReleasedRangeFilterQuery, Occur.MUST));
+        try {
+            return future.get(state.settings.getQueryDeadline(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            cancel(future, collector);
+            throw new SolrServerException("Solr did not answer within " + state.settings.getQueryDeadline() + " ms",
+                    e);
+        } catch (InterruptedException e) {
+            cancel(future, collector);
+            Thread.currentThread().interrupt();
+            throw new SolrServerException("Interrupted while waiting for Solr", e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
     }
 
-    private void addDateExpiredRangeFilterQuery(SolrQuery solrQuery, CmsObject cms) {
-        String dateExpiredRangeFilterQuery = null;
+    private QueryResponse callNow(Callable<QueryResponse> request) throws SolrServerException {
+        try {
+            return request.call();
+        } catch (Exception e) {
+            throw rethrow(e);
+        }
+    }
 
-        CmsUserSettings cmsUserSettings = new CmsUserSettings(cms);
-        long timeWarp = cmsUserSettings.getTimeWarp();
-        if (timeWarp == -1) {
-            dateExpiredRangeFilterQuery =
-                    getDateExpiredRangeQuery(new DateTime(DateTimeZone.UTC).getMillis()).getRangeQueryString();
-        } else {
-            dateExpiredRangeFilterQuery = getDateExpiredRangeQuery(timeWarp).getRangeQueryString();
+    private void cancel(Future<QueryResponse> future, StreamingHitCollector collector) {
+        if (collector != null) {
+            collector.cancel();
         }
+        future.cancel(true);
+    }
 
-        solrQuery.addFilterQuery(buildFilterQuery(AvailabilityAwareSearchFieldConfiguration.FIELD_EXPIRED, dateExpiredRangeFilterQuery, Occur.MUST));
+    /**
+     * Throws the failure of a request if it is unchecked or a {@link SolrServerException}, otherwise returns it
+     * wrapped.
+     */
+    private SolrServerException rethrow(Throwable failure) throws SolrServerException {
+        if (failure instanceof SolrServerException) {
+            throw (SolrServerException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return new SolrServerException(failure);
     }
 
-    private void addDateCreatedFilterQuery(SolrQuery solrQuery, CmsSearchParameters params) {
-        MinMaxRangeQuery createdDateRangeQuery =
-                getCreatedDateRangeQuery(params.getMinDateCreated(), params.getMaxDateCreated());
-        if (createdDateRangeQuery != null) {
-            solrQuery.addFilterQuery(buildFilterQuery(CmsSearchField.FIELD_DATE_CREATED,
-                    createdDateRangeQuery.getRangeQueryString(), Occur.MUST));
+    private QueryResponse sendQueryNow(SearchSettings settings, SolrQuery solrQuery,
+            QueryResultCache queryResultCache) throws SolrServerException {
+        if (queryResultCache != null) {
+            return queryResultCache.query(solrQuery);
+        } else {
+            return settings.getSolrServer().query(solrQuery);
         }
     }
 
-    private void addDateLastModifiedFilterQuery(SolrQuery solrQuery, CmsSearchParameters params) {
-        MinMaxRangeQuery lastModifiedDateRangeQuery =
-                getLastModifiedDateRangeQuery(params.getMinDateLastModified(), params.getMaxDateLastModified());
-        if (lastModifiedDateRangeQuery != null) {
-            solrQuery.addFilterQuery(buildFilterQuery(CmsSearchField.FIELD_DATE_LASTMODIFIED,
-                    lastModifiedDateRangeQuery.getRangeQueryString(), Occur.MUST));
+    /**
+     * Performs the search and passes the hits to the collector while the response is read. The response that is
+     * returned does not contain the documents. With a query deadline the response is read by one of the query
+     * threads, which checks the permissions of the hits as well.
+     */
+    private QueryResponse executeStreamingQuery(final IndexState state, SolrQuery solrQuery,
+            StreamingHitCollector collector) {
+        CircuitBreaker circuitBreaker = state.circuitBreaker;
+        if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            throw new SolrSearchIndexException("Solr is not queried as the circuit breaker of index " + getName()
+                    + " is open", null);
+        }
+        QueryResponse response;
+        try {
+            final QueryRequest request = new QueryRequest(solrQuery);
+            request.setResponseParser(new StreamingResponseParser(collector));
+            response = sendWithinDeadline(state, new Callable<QueryResponse>() {
+
+                public QueryResponse call() throws SolrServerException {
+                    return request.process(state.settings.getSolrServer());
+                }
+            }, collector);
+            recordOutcome(circuitBreaker, true);
+        } catch (SolrServerException e) {
+            recordOutcome(circuitBreaker, false);
+            LOG.error("Caught a SolrServerException while trying to perform an index search.", e);
+            throw new SolrSearchIndexException(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            recordOutcome(circuitBreaker, !isServerError(e));
+            throw e;
         }
+        SolrDocumentList results = response.getResults();
+        if (!collector.isStarted() && results != null) {
+            // the embedded server doesn't use the parser of the request and returns all documents at once
+            collector.streamDocListInfo(results.getNumFound(), results.getStart(), results.getMaxScore());
+            for (SolrDocument document : results) {
+                collector.streamSolrDocument(document);
+            }
+        }
+        collector.finish();
+        return response;
     }
 
-    @Override
-    protected boolean hasReadPermission(CmsObject cms, String type, String path) {
-        if (!isCheckingPermissions()) {
-            return true;
+    private void recordOutcome(CircuitBreaker circuitBreaker, boolean success) {
+        if (circuitBreaker != null) {
+            if (success) {
+                circuitBreaker.recordSuccess();
+            } else {
+                circuitBreaker.recordFailure();
+            }
         }
+    }
 
-        if ((type == null) || (path == null)) {
-            // permission check needs only to be performed for VFS documents that contain both fields
-            return true;
+    /**
+     * Checks whether an exception was caused by Solr rather than by the query, e.g. a syntax error.
+     */
+    private boolean isServerError(RuntimeException e) {
+        return e instanceof SolrException && ((SolrException) e).code() >= 500;
+    }
+
+    /**
+     * Checks whether Solr stopped collecting the hits because the time allowed was over.
+     */
+    private boolean isPartial(QueryResponse response) {
+        return response.getHeader() != null && Boolean.TRUE.equals(response.getHeader().get("partialResults"));
+    }
+
+    /**
+     * Checks the hits of a chunk in ranking order until the requested page is filled.
+     */
+    private void selectPageHits(ParallelPermissionChecker permissionChecker, PageSelection selection,
+            List<FetchedChunk> chunks, int chunkIndex, ReadPermissionResolver permissionResolver) {
+
+        HitList hitList = chunks.get(chunkIndex).hitList;
+
+        if (permissionChecker != null && isCheckingPermissions()) {
+            selectPageHitsInParallel(permissionChecker, selection, hitList, chunkIndex, permissionResolver);
+            return;
         }
 
-        if (!CmsSearchFieldConfiguration.VFS_DOCUMENT_KEY_PREFIX.equals(type)
-                && !OpenCms.getResourceManager().hasResourceType(type)) {
-            // this is not a known VFS resource type (also not the generic "VFS" type of OpenCms before 7.0)
-            return true;
+        // permissions are resolved in batches, each one large enough to fill the rest of the page
+        int batchStart = 0, batchEnd = 0;
+        boolean[] permissions = null;
+
+        for (int i = 0; (i < hitList.size()) && !selection.isFull(); i++) {
+            if (i == batchEnd) {
+                batchStart = i;
+                batchEnd = Math.min(hitList.size(),
+                        i + Math.max(selection.getMissingHitCount(), MIN_PERMISSION_BATCH_SIZE));
+                permissions = permissionResolver.hasReadPermissions(hitList.getTypes(batchStart, batchEnd),
+                        hitList.getPaths(batchStart, batchEnd));
+            }
+
+            if (permissions[i - batchStart]) {
+                selection.accept(chunkIndex, i);
+            } else {
+                selection.reject();
+                LOG.warn("Indexed document found could not be added to the search result: " + hitList.getPath(i));
+            }
         }
+    }
 
-        String contextPath = cms.getRequestContext().removeSiteRoot(path);
-        CmsUserSettings cmsUserSettings = new CmsUserSettings(cms);
-        long timeWarp = cmsUserSettings.getTimeWarp();
-        if (timeWarp != -1) {
-            return hasReadPermissionsInTimeWarpMode(cms, contextPath, timeWarp);
+    /**
+     * Checks the hits of a chunk with the thread pool of the index. The results are still consumed in ranking order,
+     * checks that are not needed anymore are cancelled once the requested page is filled.
+     */
+    private void selectPageHitsInParallel(ParallelPermissionChecker permissionChecker, PageSelection selection,
+            HitList hitList, int chunkIndex, ReadPermissionResolver permissionResolver) {
+
+        ParallelPermissionChecker.Check check = permissionChecker.start(permissionResolver,
+                hitList.getTypes(0, hitList.size()), hitList.getPaths(0, hitList.size()));
+        try {
+            for (int i = 0; (i < hitList.size()) && !selection.isFull(); i++) {
+                if (check.isReadable(i)) {
+                    selection.accept(chunkIndex, i);
+                } else {
+                    selection.reject();
+                    LOG.warn("Indexed document found could not be added to the search result: " + hitList.getPath(i));
+                }
+            }
+        } finally {
+            check.cancel();
         }
-        return cms.existsResource(contextPath, CmsResourceFilter.DEFAULT);
     }
 
-    private boolean hasReadPermissionsInTimeWarpMode(CmsObject cms, String contextPath, long timeWarp) {
-        if (cms.existsResource(contextPath, CmsResourceFilter.IGNORE_EXPIRATION)) {
-            long dateRelease = getDateReleaseRangeQuery(timeWarp).getTimeMillis();
-            long dateExpired = getDateExpiredRangeQuery(timeWarp).getTimeMillis();
-            CmsResource resource = null;
+    private boolean isAdaptiveFetch(SearchSettings settings) {
+        return settings.isAdaptiveFetch() && !settings.isUseSolrPaging() && !settings.isStreamingSearch();
+    }
+
+    /**
+     * Returns the number of rows to request first in adaptive fetch mode. It is large enough to fill the requested
+     * page if the usual part of the hits is readable for the permission context.
+     */
+    private int getInitialFetchSize(SearchSettings settings, int page, int matchesPerPage,
+            ReadPermissionResolver permissionResolver) {
+        int needed = matchesPerPage > 0 && page > 0 ? matchesPerPage * page : settings.getRowSize();
+        double ratio = acceptanceStatistics.getRatio(permissionResolver.getContextKey());
+        return getFetchSize(settings, needed, ratio, 0);
+    }
+
+    private int getFetchSize(SearchSettings settings, int needed, double ratio, int previousFetchSize) {
+        // add some headroom so a slightly worse ratio does not need another request
+        int size = (int) Math.ceil(needed / ratio * ADAPTIVE_FETCH_HEADROOM);
+        size = Math.max(size, Math.max(previousFetchSize * 2, MIN_ADAPTIVE_FETCH_SIZE));
+        return Math.min(size, settings.getAdaptiveFetchMaxRows());
+    }
+
+    /**
+     * Requests more hits in growing chunks until the requested page is filled with readable hits, all documents
+     * found have been checked or the maximum number of rows is reached.
+     * @return false if a chunk could not be fetched, the page may then be missing some hits
+     */
+    private boolean fetchUntilPageIsFull(IndexState state, SolrQuery solrQuery, PageSelection selection,
+            List<FetchedChunk> chunks, ReadPermissionResolver permissionResolver) {
+
+        SearchSettings settings = state.settings;
+        int start = solrQuery.getStart() != null ? solrQuery.getStart().intValue() : 0;
+        long numFound = chunks.get(0).hitList.getNumFound() - start;
+        int fetched = chunks.get(0).hitList.size();
+        int fetchSize = fetched;
+        // the facet counts have already been read from the first response
+        solrQuery.set(FacetParams.FACET, false);
+
+        while (!selection.isFull() && fetched < numFound && fetched < settings.getAdaptiveFetchMaxRows()) {
+            double ratio = selection.getAcceptedCount() == 0
+                    ? MIN_ACCEPTANCE_RATIO : (double) selection.getAcceptedCount() / selection.getExaminedCount();
+            fetchSize = Math.min(getFetchSize(settings, selection.getMissingHitCount(), ratio, fetchSize),
+                    settings.getAdaptiveFetchMaxRows() - fetched);
+
+            solrQuery.setStart(start + fetched);
+            solrQuery.setRows(fetchSize);
+            FetchedChunk chunk;
             try {
-                resource = cms.readResource(contextPath, CmsResourceFilter.IGNORE_EXPIRATION);
-                if (resource.getDateReleased() > dateRelease || resource.getDateExpired() < dateExpired) {
-                    return false;
-                }
-            } catch (CmsException e) {
-                LOG.error(e.getMessage(), e);
+                chunk = new FetchedChunk(executeQuery(state, solrQuery));
+            } catch (SolrSearchIndexException e) {
+                // the hits found so far are still returned
+                LOG.warn("Failed to fetch more hits, the result page may be incomplete: " + e.getMessage());
                 return false;
             }
-            return true;
-        } else {
-            return false;
+            if (chunk.hitList.size() == 0) {
+                break;
+            }
+            chunks.add(chunk);
+            fetched += chunk.hitList.size();
+            selectPageHits(state.permissionChecker, selection, chunks, chunks.size() - 1, permissionResolver);
         }
-    }
 
-    @Override
-    protected boolean isInTimeRange(Date dateCreated, Date dateLastModified, CmsSearchParameters params) {
+        acceptanceStatistics.record(permissionResolver.getContextKey(), selection.getExaminedCount(),
+                selection.getAcceptedCount());
         return true;
     }
 
-    private String buildFilterQuery(String fieldName, String fieldValue, Occur occur) {
+    /**
+     * Fetches the stored fields of the selected hits with one request.
+     */
+    private Map<String, SolrDocument> fetchStoredDocuments(StoredDocumentLookup documentLookup,
+            CmsSearchParameters params, List<FetchedChunk> chunks, PageSelection selection) {
+
+        List<String> ids = new ArrayList<String>(selection.size());
+        for (int k = 0; k < selection.size(); k++) {
+            ids.add(chunks.get(selection.getChunk(k)).hitList.getId(selection.get(k)));
+        }
+        try {
+            return documentLookup.fetch(ids, getResultFields(params));
+        } catch (SolrServerException e) {
+            LOG.error("Caught a SolrServerException while trying to fetch the stored fields of the hits.", e);
+            throw new SolrSearchIndexException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Requests the highlighting for the selected hits only. The query is repeated, restricted to the ids of the hits.
+     */
+    private Map<String, Map<String, List<String>>> fetchPageHighlighting(IndexState state,
+            SolrQuery solrQuery, List<FetchedChunk> chunks, PageSelection selection) {
 
-        if (occur == Occur.MUST_NOT) {
-            return String.format(" -%s:%s", fieldName, fieldValue);
-        } else if (occur == Occur.MUST) {
-            return String.format(" +%s:%s", fieldName, fieldValue);
-        } else {
-            return String.format(" %s:%s", fieldName, fieldValue); // SHOULD or unspecified
+        if (selection.size() == 0) {
+            return Collections.emptyMap();
+        }
+        List<String> ids = new ArrayList<String>(selection.size());
+        for (int k = 0; k < selection.size(); k++) {
+            ids.add(chunks.get(selection.getChunk(k)).hitList.getId(selection.get(k)));
+        }
+
+        SolrQuery highlightQuery = solrQuery.getCopy();
+        highlightQuery.setHighlight(true);
+        highlightQuery.addFilterQuery(StoredDocumentLookup.toIdQuery(ids));
+        highlightQuery.setStart(0);
+        highlightQuery.setRows(ids.size());
+        highlightQuery.setFields(FIELD_ID);
+        highlightQuery.remove(CommonParams.SORT);
+        highlightQuery.set(FacetParams.FACET, false);
+
+        Map<String, Map<String, List<String>>> highlighting = executeQuery(state, highlightQuery).getHighlighting();
+        return highlighting != null ? highlighting : Collections.<String, Map<String, List<String>>>emptyMap();
+    }
+
+    /**
+     * Returns the fields requested by the caller plus the fields a search result needs and the sort fields.
+     * @return the fields or null if all stored fields should be returned
+     */
+    private String[] getResultFields(CmsSearchParameters params) {
+        if (!(params instanceof SolrSearchParameters)) {
+            return null;
+        }
+        List<String> requestedFields = ((SolrSearchParameters) params).getResultFields();
+        if (requestedFields == null || requestedFields.isEmpty()) {
+            return null;
+        }
+        Set<String> fields = new LinkedHashSet<String>(Arrays.asList(REQUIRED_RESULT_FIELDS));
+        fields.addAll(requestedFields);
+        if (params.getSort() != null) {
+            // results of several indexes are merged by their sort values
+            for (SortField sortField : params.getSort().getSort()) {
+                if (sortField.getField() != null) {
+                    fields.add(sortField.getField());
+                }
+            }
+        }
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    /**
+     * Returns the OpenCms context to search with. The context of the user is only copied if it is not already
+     * set to the project of this index, the project itself is read once and then reused.
+     * @param cms the current user's Cms object
+     * @return a Cms object that has the project of this index set
+     * @throws CmsException if the project can not be read
+     */
+    private CmsObject initSearchCms(CmsObject cms) throws CmsException {
+        CmsProject project = searchProject;
+        if ((project == null) || !project.getName().equals(getProject())) {
+            project = cms.readProject(getProject());
+            searchProject = project;
+        }
+
+        if (project.getUuid().equals(cms.getRequestContext().currentProject().getUuid())) {
+            // the search does not modify the context so the one of the user can be used directly
+            return cms;
         }
+
+        // copy the user OpenCms context and change the project
+        CmsObject searchCms = OpenCms.initCmsObject(cms);
+        searchCms.getRequestContext().setCurrentProject(project);
+        return searchCms;
     }
 
-    private void extendPathFilter(SolrQuery solrQuery, String searchRoot) {
+    private void addSearchRootFilterQuery(FilterQueryCompiler filterQueries, CmsSearchParameters params,
+            CmsObject searchCms) {
 
+        List<String> searchRoots = new ArrayList<String>();
+        if ((params.getRoots() != null) && (params.getRoots().size() > 0)) {
+            // add the all configured search roots with will request context
+            for (int i = 0; i < params.getRoots().size(); i++) {
+                addSearchRoot(searchRoots, searchCms.getRequestContext().addSiteRoot(params.getRoots().get(i)));
+            }
+        } else {
+            // just use the current site root as the search root
+            addSearchRoot(searchRoots, searchCms.getRequestContext().getSiteRoot());
+        }
+
+        // all roots are merged into one filter query, roots below another root don't change the result
+        for (String searchRoot : searchRoots) {
+            if (!isBelowOtherSearchRoot(searchRoot, searchRoots)) {
+                filterQueries.addAlternative(CmsSearchField.FIELD_PARENT_FOLDERS, searchRoot);
+            }
+        }
+    }
+
+    private void addSearchRoot(List<String> searchRoots, String searchRoot) {
         if (searchRoot != null) {
             if (!CmsResource.isFolder(searchRoot)) {
                 searchRoot += "/";
             }
-            solrQuery.addFilterQuery(buildFilterQuery(CmsSearchField.FIELD_PARENT_FOLDERS, searchRoot, Occur.SHOULD));
+            searchRoots.add(searchRoot);
         }
     }
 
-    private SolrSearchResult createSearchResult(QueryResponse response, SolrDocument doc, SolrDocumentList hits) {
-        // do not use the resource to obtain the raw content, read it from the lucene document!
-        String excerpt = "";
-        if (response.getHighlighting() != null) {
-            excerpt = getHighlightFragment(response, doc);
+    private boolean isBelowOtherSearchRoot(String searchRoot, List<String> searchRoots) {
+        for (String other : searchRoots) {
+            if (searchRoot.length() > other.length() && searchRoot.startsWith(other)) {
+                return true;
+            }
         }
-
-        float score = (Float) doc.getFieldValue("score");
-        float maxScore = hits.getMaxScore() == null ? 1f : hits.getMaxScore();
-        return new SolrSearchResult(Math.round((score / maxScore) * 100f), doc, excerpt);
+        return false;
     }
 
-    private String getHighlightFragment(QueryResponse response, SolrDocument doc) {
-        String highlightFragment = "";
-        String documentId = (String) doc.get(FIELD_ID);
+    private void addCategoryFilterQuery(FilterQueryCompiler filterQueries, CmsSearchParameters params) {
 
-        Map<String, List<String>> map = response.getHighlighting().get(documentId);
-        if (map != null) {
-            List<String> highlightSnippets = null;
-            for (String key : map.keySet()) {
-                highlightSnippets = map.get(key);
-                if (!highlightSnippets.isEmpty()) {
-                    break;
-                }
+        if ((params.getCategories() != null) && (params.getCategories().size() > 0)) {
+            // MUST
+            for (String category : params.getCategories()) {
+                filterQueries.add(CmsSearchField.FIELD_CATEGORY, category, Occur.MUST);
             }
+        }
+    }
 
-            if (highlightSnippets != null) {
-                StringBuilder highlightBuilder = new StringBuilder();
-                for (String snippet : highlightSnippets) {
-                    highlightBuilder.append(snippet);
-                }
-                highlightFragment = highlightBuilder.toString();
+    private void addResourceTypesFilterQuery(FilterQueryCompiler filterQueries, CmsSearchParameters params) {
+
+        if ((params.getResourceTypes() != null) && (params.getResourceTypes().size() > 0)) {
+            // MUST
+            for (String resourceType : params.getResourceTypes()) {
+                filterQueries.add(CmsSearchField.FIELD_TYPE, resourceType, Occur.MUST);
             }
         }
+    }
+
+    /**
+     * Returns the date the availability of the documents is checked against. The current time is rounded to the
+     * configured precision so the filter queries stay the same for a while.
+     */
+    private long getAvailabilityTime(SearchSettings settings, long timeWarp) {
+        if (timeWarp != -1) {
+            return timeWarp;
+        }
+        long time = currentTimeMillis();
+        long precision = settings.getAvailabilityPrecision() * 1000L;
+        if (precision > 0) {
+            time -= time % precision;
+        }
+        return time;
+    }
+
+    /**
+     * Returns the current time the availability of the documents is checked against before it is rounded.
+     */
+    long currentTimeMillis() {
+        return new DateTime(DateTimeZone.UTC).getMillis();
+    }
+
+    private void addDateReleasedRangeFilterQuery(FilterQueryCompiler filterQueries, long availabilityTime) {
+        filterQueries.add(AvailabilityAwareSearchFieldConfiguration.FIELD_RELEASE,
+                getDateReleaseRangeQuery(availabilityTime).getRangeQueryString(), Occur.MUST);
+    }
 
-        return highlightFragment; // TODO: set non-empty default excerpt?
+    private void addDateExpiredRangeFilterQuery(FilterQueryCompiler filterQueries, long availabilityTime) {
+        filterQueries.add(AvailabilityAwareSearchFieldConfiguration.FIELD_EXPIRED,
+                getDateExpiredRangeQuery(availabilityTime).getRangeQueryString(), Occur.MUST);
+    }
+
+    private void addDateCreatedFilterQuery(FilterQueryCompiler filterQueries, CmsSearchParameters params) {
+        MinMaxRangeQuery createdDateRangeQuery =
+                getCreatedDateRangeQuery(params.getMinDateCreated(), params.getMaxDateCreated());
+        if (createdDateRangeQuery != null) {
+            filterQueries.add(CmsSearchField.FIELD_DATE_CREATED, createdDateRangeQuery.getRangeQueryString(),
+                    Occur.MUST);
+        }
+    }
+
+    private void addDateLastModifiedFilterQuery(FilterQueryCompiler filterQueries, CmsSearchParameters params) {
+        MinMaxRangeQuery lastModifiedDateRangeQuery =
+                getLastModifiedDateRangeQuery(params.getMinDateLastModified(), params.getMaxDateLastModified());
+        if (lastModifiedDateRangeQuery != null) {
+            filterQueries.add(CmsSearchField.FIELD_DATE_LASTMODIFIED,
+                    lastModifiedDateRangeQuery.getRangeQueryString(), Occur.MUST);
+        }
+    }
+
+    @Override
+    protected boolean hasReadPermission(CmsObject cms, String type, String path) {
+        return new ReadPermissionResolver(cms, isCheckingPermissions()).hasReadPermission(type, path);
+    }
+
+    @Override
+    protected boolean isInTimeRange(Date dateCreated, Date dateLastModified, CmsSearchParameters params) {
+        return true;
+    }
+
+    private SolrSearchResult createSearchResult(Map<String, Map<String, List<String>>> highlighting,
+            SolrDocument doc, float score, float maxScore) {
+        // do not use the resource to obtain the raw content, read it from the lucene document!
+        // the excerpt is only built from the highlighting when it is accessed
+        Map<String, List<String>> highlights = null;
+        if (highlighting != null) {
+            highlights = highlighting.get((String) doc.get(FIELD_ID));
+        }
+
+        return new SolrSearchResult(Math.round((score / maxScore) * 100f), doc, highlights);
     }
 
     @Override
@@ -553,4 +1449,68 @@ public abstract class SolrSearchIndex extends CmsSearchIndex {
     protected synchronized void indexSearcherOpen(String path) {
         // NOOP
     }
+
+    /**
+     * The response of one request to Solr together with its hits.
+     */
+    private static class FetchedChunk {
+
+        private final QueryResponse response;
+        private final SolrDocumentList documents;
+        private final HitList hitList;
+
+        FetchedChunk(QueryResponse response) {
+            this(response, response.getResults());
+        }
+
+        FetchedChunk(QueryResponse response, SolrDocumentList documents) {
+            this.response = response;
+            this.documents = documents;
+            this.hitList = HitList.fromDocuments(documents);
+        }
+    }
+
+    /**
+     * The configuration of the index together with the caches and pools built from it. A search reads it once, so a
+     * concurrent re-initialization never mixes the old and the new state.
+     */
+    private static class IndexState {
+
+        private final SearchSettings settings;
+        private final DocumentConverter documentConverter;
+        private final QueryResultCache queryResultCache;
+        private final StoredDocumentLookup documentLookup;
+        private final FacetCountCache facetCountCache;
+        private final ParallelPermissionChecker permissionChecker;
+        private final AsyncSearchExecutor asyncSearchExecutor;
+        private final AsyncSearchExecutor queryExecutor;
+        private final CircuitBreaker circuitBreaker;
+        private final AdmissionController admissionController;
+        private final SingleFlight<SolrSearchResultList> searchCoalescer;
+
+        /**
+         * Creates the state of an index that has not been initialized yet.
+         */
+        IndexState() {
+            this(null, new DocumentConverter(), null, null, null, null, null, null, null, null, null);
+        }
+
+        IndexState(SearchSettings settings, DocumentConverter documentConverter, QueryResultCache queryResultCache,
+                StoredDocumentLookup documentLookup, FacetCountCache facetCountCache,
+                ParallelPermissionChecker permissionChecker, AsyncSearchExecutor asyncSearchExecutor,
+                AsyncSearchExecutor queryExecutor, CircuitBreaker circuitBreaker,
+                AdmissionController admissionController, SingleFlight<SolrSearchResultList> searchCoalescer) {
+            this.settings = settings;
+            this.documentConverter = documentConverter;
+            this.queryResultCache = queryResultCache;
+            this.documentLookup = documentLookup;
+            this.facetCountCache = facetCountCache;
+            this.permissionChecker = permissionChecker;
+            this.asyncSearchExecutor = asyncSearchExecutor;
+            this.queryExecutor = queryExecutor;
+            this.circuitBreaker = circuitBreaker;
+            this.admissionController = admissionController;
+            this.searchCoalescer = searchCoalescer;
+        }
+    }
 }
@@ -16,8 +16,13 @@ public class SolrSearchParameters extends CmsSearchParameters {
 
     private String queryType;
     private String facetField;
+    private List<String> facetFields = new ArrayList<String>();
     private List<String> facetPivotFields = new ArrayList<String>();
+    private Integer facetLimit;
+    private Integer facetMinCount;
     private List<FilterQuery> filterQueries = new ArrayList<FilterQuery>();
+    private List<String> resultFields = new ArrayList<String>();
+    private String cursor;
 
     /**
      * Returns queryType.
@@ -55,6 +60,33 @@ public class SolrSearchParameters extends CmsSearchParameters {
         this.facetField = facetField;
     }
 
+    /**
+     * Returns the fields to facet on in addition to the {@link #getFacetField() facetField}.
+     *
+     * @return List of Strings with facetFields
+     */
+    public List<String> getFacetFields() {
+        return facetFields;
+    }
+
+    /**
+     * Sets the fields to facet on in addition to the {@link #getFacetField() facetField}.
+     *
+     * @param facetFields List of Strings with facetFields
+     */
+    public void setFacetFields(List<String> facetFields) {
+        this.facetFields = facetFields;
+    }
+
+    /**
+     * Adds a field to facet on.
+     *
+     * @param fieldname String with fieldname
+     */
+    public void addFacetField(String fieldname) {
+        facetFields.add(fieldname);
+    }
+
     /**
      * Returns facetPrivotFields.
      *
@@ -73,6 +105,42 @@ public class SolrSearchParameters extends CmsSearchParameters {
         this.facetPivotFields = facetPivotFields;
     }
 
+    /**
+     * Returns the maximum number of values that are counted per facet field.
+     *
+     * @return Integer with facetLimit or null to use the default of the request handler
+     */
+    public Integer getFacetLimit() {
+        return facetLimit;
+    }
+
+    /**
+     * Sets the maximum number of values that are counted per facet field, -1 for all values.
+     *
+     * @param facetLimit Integer with facetLimit
+     */
+    public void setFacetLimit(Integer facetLimit) {
+        this.facetLimit = facetLimit;
+    }
+
+    /**
+     * Returns the minimum count of a facet value to be returned.
+     *
+     * @return Integer with facetMinCount or null to use the default of the request handler
+     */
+    public Integer getFacetMinCount() {
+        return facetMinCount;
+    }
+
+    /**
+     * Sets the minimum count of a facet value to be returned.
+     *
+     * @param facetMinCount Integer with facetMinCount
+     */
+    public void setFacetMinCount(Integer facetMinCount) {
+        this.facetMinCount = facetMinCount;
+    }
+
     /**
      * Adds FilterQuery to filterQueries list.
      *
@@ -111,6 +179,53 @@ public class SolrSearchParameters extends CmsSearchParameters {
         return filterQueries;
     }
 
+    /**
+     * Returns the fields that are needed on the search results.
+     *
+     * @return List of Strings with resultFields, all stored fields are returned if empty
+     */
+    public List<String> getResultFields() {
+        return resultFields;
+    }
+
+    /**
+     * Sets the fields that are needed on the search results.
+     *
+     * @param resultFields List of Strings with resultFields
+     */
+    public void setResultFields(List<String> resultFields) {
+        this.resultFields = resultFields;
+    }
+
+    /**
+     * Adds a field that is needed on the search results.
+     *
+     * @param fieldname String with fieldname
+     */
+    public void addResultField(String fieldname) {
+        resultFields.add(fieldname);
+    }
+
+    /**
+     * Returns the cursor the result page starts after.
+     *
+     * @return String with cursor or null if the result is paged by page number
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Sets the cursor the result page starts after. Use {@link SearchCursor#START} for the first page and the
+     * {@link SolrSearchResultList#getNextCursor() next cursor} of the result for the following pages. The page number
+     * is ignored when a cursor is set. Only results that are sorted by fields can be paged with a cursor.
+     *
+     * @param cursor String with cursor
+     */
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
     /**
      * FilterQuery for SolrSearchParameters.
      */
@@ -1,11 +1,14 @@
 package org.synyx.opencms.solr;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.apache.solr.common.SolrDocument;
 import org.opencms.search.CmsSearchResult;
 import org.opencms.search.fields.CmsSearchField;
-import org.opencms.util.CmsStringUtil;
 
 /**
  * Search result for Solr search results.
@@ -13,6 +16,9 @@ import org.opencms.util.CmsStringUtil;
  */
 public class SolrSearchResult extends CmsSearchResult {
 
+    private final SolrDocument document;
+    private Map<String, List<String>> highlights;
+
     /**
      * Create new SolrSearchResult
      * @param score
@@ -22,22 +28,86 @@ public class SolrSearchResult extends CmsSearchResult {
     public SolrSearchResult(int score, SolrDocument document, String excerpt) {
         m_score = score;
         m_excerpt = excerpt;
+        this.document = document;
         fillInitialValues(document);
     }
 
-    private void fillInitialValues(SolrDocument document) {
-        m_fields = new HashMap<String, String>();
-
-        for (String fieldName : document.getFieldNames()) {
-            String value = document.getFieldValue(fieldName).toString();
-            if (CmsStringUtil.isNotEmpty(value)
-                    && !CmsSearchField.FIELD_PATH.equals(fieldName)
-                    && !CmsSearchField.FIELD_DATE_CREATED.equals(fieldName)
-                    && !CmsSearchField.FIELD_DATE_LASTMODIFIED.equals(fieldName)) {
-                // these "hard coded" fields are treated differently
-                m_fields.put(fieldName, value);
+    /**
+     * Create new SolrSearchResult whose excerpt is built from the highlighting when it is first accessed.
+     * @param score
+     * @param document
+     * @param highlights the highlighted snippets of the document by field name, may be null
+     */
+    public SolrSearchResult(int score, SolrDocument document, Map<String, List<String>> highlights) {
+        m_score = score;
+        this.document = document;
+        this.highlights = highlights;
+        fillInitialValues(document);
+    }
+
+    /**
+     * Creates a copy of a result that can be changed without affecting the original, e.g. for callers that share a
+     * search.
+     * @param result the result to copy
+     */
+    public SolrSearchResult(SolrSearchResult result) {
+        synchronized (result) {
+            m_excerpt = result.m_excerpt;
+            highlights = result.highlights;
+        }
+        m_score = result.getScore();
+        document = copyOf(result.document);
+        fillInitialValues(document);
+    }
+
+    /**
+     * Returns the excerpt of the document. It consists of the snippets of the first highlighted field. Synchronized as
+     * the excerpt is created on first access, which may happen in several threads.
+     * @return the excerpt, empty if the document was not highlighted
+     */
+    @Override
+    public synchronized String getExcerpt() {
+        if (m_excerpt == null) {
+            m_excerpt = createExcerpt(highlights);
+            highlights = null;
+        }
+        return m_excerpt;
+    }
+
+    private static SolrDocument copyOf(SolrDocument document) {
+        SolrDocument copy = new SolrDocument();
+        for (Map.Entry<String, Object> field : document) {
+            Object value = field.getValue();
+            copy.setField(field.getKey(),
+                    value instanceof Collection<?> ? new ArrayList<Object>((Collection<?>) value) : value);
+        }
+        return copy;
+    }
+
+    private static String createExcerpt(Map<String, List<String>> highlights) {
+        if (highlights == null) {
+            return ""; // TODO: set non-empty default excerpt?
+        }
+        List<String> highlightSnippets = null;
+        for (List<String> snippets : highlights.values()) {
+            highlightSnippets = snippets;
+            if (!highlightSnippets.isEmpty()) {
+                break;
             }
         }
+        if (highlightSnippets == null) {
+            return "";
+        }
+        StringBuilder highlightBuilder = new StringBuilder();
+        for (String snippet : highlightSnippets) {
+            highlightBuilder.append(snippet);
+        }
+        return highlightBuilder.toString();
+    }
+
+    private void fillInitialValues(SolrDocument document) {
+        // the values are only converted to Strings when they are accessed
+        m_fields = new SolrDocumentFieldMap(document);
 
         Object path = document.getFieldValue(CmsSearchField.FIELD_PATH);
         if (path != null) {
@@ -69,6 +139,52 @@ public class SolrSearchResult extends CmsSearchResult {
 
     }
 
+    /**
+     * Returns the value of a field as it was returned by Solr, e.g. a Date for date fields or a Collection for
+     * multi-valued fields.
+     * @param fieldName the name of the field
+     * @return the value or null if the document doesn't contain the field
+     */
+    public Object getFieldValue(String fieldName) {
+        return document != null ? document.getFieldValue(fieldName) : null;
+    }
+
+    /**
+     * Returns the value of a date field.
+     * @param fieldName the name of the field
+     * @return the date or the first date of a multi-valued field, null if the field doesn't contain a date
+     */
+    public Date getDateValue(String fieldName) {
+        Object value = getFirstValue(fieldName);
+        return value instanceof Date ? (Date) value : null;
+    }
+
+    /**
+     * Returns all values of a field, converted to Strings.
+     * @param fieldName the name of the field
+     * @return the values, empty if the document doesn't contain the field
+     */
+    public List<String> getValues(String fieldName) {
+        Collection<Object> values = document != null ? document.getFieldValues(fieldName) : null;
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<String>(values.size());
+        for (Object value : values) {
+            result.add(value.toString());
+        }
+        return result;
+    }
+
+    private Object getFirstValue(String fieldName) {
+        Object value = getFieldValue(fieldName);
+        if (value instanceof Collection<?>) {
+            Collection<?> values = (Collection<?>) value;
+            return values.isEmpty() ? null : values.iterator().next();
+        }
+        return value;
+    }
+
     /**
      * Returns the Id of the Solr document. Convenience method that allows expression language in JSPs to access the Id.
      * @return the document Id.
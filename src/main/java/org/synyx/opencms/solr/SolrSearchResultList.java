@@ -2,6 +2,7 @@ package org.synyx.opencms.solr;
 
 import java.util.List;
 import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.common.util.NamedList;
 import org.opencms.search.CmsSearchResultList;
 
 /**
@@ -12,6 +13,10 @@ import org.opencms.search.CmsSearchResultList;
 public class SolrSearchResultList extends CmsSearchResultList {
 
     private List<FacetField> facetFields;
+    private NamedList<Object> facetPivots;
+    private boolean hitCountExact = true;
+    private String nextCursor;
+    private boolean partial;
 
     public List<FacetField> getFacetFields() {
         return facetFields;
@@ -21,4 +26,54 @@ public class SolrSearchResultList extends CmsSearchResultList {
         this.facetFields = facetFields;
     }
 
+    /**
+     * Returns the pivot facets as returned by Solr, keyed by the comma separated pivot fields. Pivot facets are only
+     * computed by Solr servers that support <code>facet.pivot</code>.
+     * @return the pivot facets or null if none were returned
+     */
+    public NamedList<Object> getFacetPivots() {
+        return facetPivots;
+    }
+
+    public void setFacetPivots(NamedList<Object> facetPivots) {
+        this.facetPivots = facetPivots;
+    }
+
+    /**
+     * Returns whether the hit count is exact. If not all documents found could be checked for read permissions
+     * the hit count is only an estimate.
+     * @return true if the hit count is exact
+     */
+    public boolean isHitCountExact() {
+        return hitCountExact;
+    }
+
+    public void setHitCountExact(boolean hitCountExact) {
+        this.hitCountExact = hitCountExact;
+    }
+
+    /**
+     * Returns the cursor to request the page after this one, if the search was paged with a cursor.
+     * @return the cursor token or null if there are no more hits
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Returns whether some of the hits may be missing because a part of the search did not finish in time or failed.
+     * @return true if the result is incomplete
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
 }
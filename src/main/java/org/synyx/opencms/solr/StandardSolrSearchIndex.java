@@ -10,25 +10,65 @@ import org.apache.lucene.search.Query;
 import org.opencms.search.CmsSearchParameters;
 import org.opencms.search.fields.CmsSearchField;
 import java.util.Iterator;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import java.util.List;
 
 /**
- * 
+ * Prepares the query for the Solr standard request handler by parsing the search query with the Lucene query parser.
+ * The resulting query strings are cached, as the same queries are repeated over and over on most sites.
  * @author Oliver Messner, Synyx GmbH & Co. KG
  */
 public class StandardSolrSearchIndex extends SolrSearchIndex {
 
-    private final Log LOG = LogFactory.getLog(StandardSolrSearchIndex.class);
+    private static final String CONFIG_QUERY_CACHE_SIZE = "queryCacheSize";
+    private static final WhitespaceAnalyzer ANALYZER = new WhitespaceAnalyzer();
+
+    private volatile BoundedCache<String, String> queryCache;
 
+    @Override
+    protected void initialize(IndexConfiguration indexConfiguration) {
+        super.initialize(indexConfiguration);
+        int queryCacheSize = indexConfiguration.getIntValue(CONFIG_QUERY_CACHE_SIZE, 1000);
+        this.queryCache = queryCacheSize > 0 ? new BoundedCache<String, String>(queryCacheSize, 0) : null;
+    }
+
+    /**
+     * Returns the cache of parsed query strings of this index, e.g. to read its counters.
+     * @return the cache or null if parsed queries are not cached
+     */
+    public BoundedCache<String, String> getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Sets the parsed search query on the Solr query.
+     * @param solrQuery the solr query object.
+     * @param params the search related parameters to be set on the solr query object.
+     * @throws SolrSearchIndexException if the search query can not be parsed
+     */
     @Override
     public void addQueryToSolrQuery(SolrQuery solrQuery, CmsSearchParameters params) {
+        BoundedCache<String, String> queryCache = this.queryCache;
+        if (queryCache == null) {
+            solrQuery.setQuery(parseQuery(params));
+            return;
+        }
+
+        String key = createCacheKey(params);
+        String query = queryCache.get(key);
+        if (query == null) {
+            query = parseQuery(params);
+            queryCache.put(key, query);
+        }
+        solrQuery.setQuery(query);
+    }
+
+    private String parseQuery(CmsSearchParameters params) {
         // The code in the following try-catch block is mostly copied from class CmsSearchIndex. Exception: the calls of
         // getSearcher#rewrite have been omitted
         try {
-            // the search query to use, will be constructed in the next lines 
+            // the search query to use, will be constructed in the next lines
             BooleanQuery query = new BooleanQuery();
-            // store separate fields query for excerpt highlighting  
+            // store separate fields query for excerpt highlighting
             Query fieldsQuery;
             if (params.getFieldQueries() != null) {
                 // each field has an individual query
@@ -38,7 +78,7 @@ public class StandardSolrSearchIndex extends SolrSearchIndex {
                 while (i.hasNext()) {
                     CmsSearchParameters.CmsSearchFieldQuery fq = i.next();
                     // add one sub-query for each defined field
-                    QueryParser p = new QueryParser(fq.getFieldName(), new WhitespaceAnalyzer());
+                    QueryParser p = new QueryParser(fq.getFieldName(), ANALYZER);
                     if (BooleanClause.Occur.SHOULD.equals(fq.getOccur())) {
                         if (shouldOccur == null) {
                             shouldOccur = new BooleanQuery();
@@ -61,19 +101,19 @@ public class StandardSolrSearchIndex extends SolrSearchIndex {
                 // fieldsQuery = getSearcher().rewrite(booleanFieldsQuery);
                 fieldsQuery = booleanFieldsQuery;
             } else if ((params.getFields() != null) && (params.getFields().size() > 0)) {
-                // no individual field queries have been defined, so use one query for all fields 
+                // no individual field queries have been defined, so use one query for all fields
                 BooleanQuery booleanFieldsQuery = new BooleanQuery();
                 // this is a "regular" query over one or more fields
                 // add one sub-query for each of the selected fields, e.g. "content", "title" etc.
                 for (int i = 0; i < params.getFields().size(); i++) {
-                    QueryParser p = new QueryParser(params.getFields().get(i), new WhitespaceAnalyzer());
+                    QueryParser p = new QueryParser(params.getFields().get(i), ANALYZER);
                     booleanFieldsQuery.add(p.parse(params.getQuery()), BooleanClause.Occur.SHOULD);
                 }
                 // fieldsQuery = getSearcher().rewrite(booleanFieldsQuery);
                 fieldsQuery = booleanFieldsQuery;
             } else {
                 // if no fields are provided, just use the "content" field by default
-                QueryParser p = new QueryParser(CmsSearchField.FIELD_CONTENT, new WhitespaceAnalyzer());
+                QueryParser p = new QueryParser(CmsSearchField.FIELD_CONTENT, ANALYZER);
                 // fieldsQuery = getSearcher().rewrite(p.parse(params.getQuery()));
                 fieldsQuery = p.parse(params.getQuery());
             }
@@ -81,9 +121,33 @@ public class StandardSolrSearchIndex extends SolrSearchIndex {
             // finally add the field queries to the main query
             query.add(fieldsQuery, BooleanClause.Occur.MUST);
 
-            solrQuery.setQuery(query.toString());
+            return query.toString();
         } catch (ParseException e) {
-            LOG.error(e.getMessage(), e);
+            throw new SolrSearchIndexException("Failed to parse the search query: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Builds the cache key from everything that is used by {@link #parseQuery(CmsSearchParameters)}.
+     */
+    private String createCacheKey(CmsSearchParameters params) {
+        StringBuilder key = new StringBuilder(128);
+        if (params.getFieldQueries() != null) {
+            key.append('Q');
+            for (CmsSearchParameters.CmsSearchFieldQuery fq : params.getFieldQueries()) {
+                key.append('\u0001').append(fq.getFieldName()).append('\u0000').append(fq.getOccur())
+                        .append('\u0000').append(fq.getSearchQuery());
+            }
+        } else {
+            key.append('F');
+            List<String> fields = params.getFields();
+            if (fields != null) {
+                for (String field : fields) {
+                    key.append('\u0001').append(field);
+                }
+            }
+            key.append('\u0000').append(params.getQuery());
         }
+        return key.toString();
     }
 }
@@ -0,0 +1,169 @@
+package org.synyx.opencms.solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+
+/**
+ * Fetches the stored fields of several documents by their ids with a single request. Recently fetched documents can
+ * optionally be kept in a small cache that is cleared whenever a commit is sent to the Solr server.
+ */
+public class StoredDocumentLookup implements CommitNotifier.CommitListener {
+
+    /** Maximum number of ids per request, stays below the default maxBooleanClauses of Solr. */
+    private static final int MAX_BATCH_SIZE = 500;
+
+    /** Cached for ids that don't exist so repeated lookups of missing documents don't hit the server. */
+    private static final SolrDocument NOT_FOUND = new SolrDocument();
+
+    private final SolrServer solrServer;
+    private final BoundedCache<String, SolrDocument> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Creates a new lookup without a cache.
+     * @param solrServer the server to query
+     */
+    public StoredDocumentLookup(SolrServer solrServer) {
+        this(solrServer, 0, 0);
+    }
+
+    /**
+     * Creates a new lookup that caches the documents it fetched.
+     * @param solrServer the server to query
+     * @param cacheSize the maximum number of cached documents, 0 to disable the cache
+     * @param timeToLiveMillis the time after which a cached document is fetched again, 0 to keep it until the next
+     * commit
+     */
+    public StoredDocumentLookup(SolrServer solrServer, int cacheSize, long timeToLiveMillis) {
+        this.solrServer = solrServer;
+        this.cache = cacheSize > 0 ? new BoundedCache<String, SolrDocument>(cacheSize, timeToLiveMillis) : null;
+    }
+
+    /**
+     * Fetches the document with the given id.
+     * @param id the id of the document
+     * @param fields the fields to return or null to return all stored fields
+     * @return the document or null if there is no document with the id
+     * @throws SolrServerException if the request fails
+     */
+    public SolrDocument fetch(String id, String[] fields) throws SolrServerException {
+        return fetch(Collections.singletonList(id), fields).get(id);
+    }
+
+    /**
+     * Fetches the documents with the given ids. Only the ids that are not cached are requested from the server.
+     * @param ids the ids of the documents
+     * @param fields the fields to return or null to return all stored fields
+     * @return the documents that were found by their id
+     * @throws SolrServerException if the request fails
+     */
+    public Map<String, SolrDocument> fetch(Collection<String> ids, String[] fields) throws SolrServerException {
+        Map<String, SolrDocument> result = new HashMap<String, SolrDocument>(ids.size() * 2);
+        if (ids.isEmpty()) {
+            return result;
+        }
+
+        String fieldsKey = fields != null ? Arrays.toString(fields) : "*";
+        List<String> missing = new ArrayList<String>(ids.size());
+        for (String id : ids) {
+            SolrDocument cached = cache != null ? cache.get(createKey(fieldsKey, id)) : null;
+            if (cached == null) {
+                missing.add(id);
+            } else if (cached != NOT_FOUND) {
+                result.put(id, cached);
+            }
+        }
+
+        for (int start = 0; start < missing.size(); start += MAX_BATCH_SIZE) {
+            List<String> batch = missing.subList(start, Math.min(missing.size(), start + MAX_BATCH_SIZE));
+            long fetchGeneration = generation.get();
+            SolrDocumentList documents = solrServer.query(createQuery(batch, fields)).getResults();
+            Map<String, SolrDocument> fetched = new HashMap<String, SolrDocument>(batch.size() * 2);
+            for (SolrDocument document : documents) {
+                fetched.put((String) document.getFieldValue(SolrSearchIndex.FIELD_ID), document);
+            }
+            result.putAll(fetched);
+
+            // documents that were read while a commit happened might already be outdated
+            if (cache != null && fetchGeneration == generation.get()) {
+                for (String id : batch) {
+                    SolrDocument document = fetched.get(id);
+                    cache.put(createKey(fieldsKey, id), document != null ? document : NOT_FOUND);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Clears the cache as the stored documents might have changed.
+     * @param url the url of the Solr server that received the commit
+     */
+    public void committed(String url) {
+        clear();
+    }
+
+    /**
+     * Removes all cached documents.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return cache != null ? cache.getHitCount() : 0;
+    }
+
+    public long getMissCount() {
+        return cache != null ? cache.getMissCount() : 0;
+    }
+
+    /**
+     * Builds a query that matches the documents with the given ids.
+     * @param ids the ids of the documents
+     * @return the query in Lucene syntax
+     */
+    static String toIdQuery(Collection<String> ids) {
+        StringBuilder query = new StringBuilder(ids.size() * 64).append(SolrSearchIndex.FIELD_ID).append(":(");
+        boolean first = true;
+        for (String id : ids) {
+            if (!first) {
+                query.append(" OR ");
+            }
+            query.append(ClientUtils.escapeQueryChars(id));
+            first = false;
+        }
+        query.append(')');
+        return query.toString();
+    }
+
+    private String createKey(String fieldsKey, String id) {
+        return fieldsKey + '|' + id;
+    }
+
+    private SolrQuery createQuery(Collection<String> ids, String[] fields) {
+        SolrQuery solrQuery = new SolrQuery(toIdQuery(ids));
+        // the ids are matched with the lucene parser, whatever the default of the request handler is
+        solrQuery.set("defType", "lucene");
+        solrQuery.setRows(ids.size());
+        if (fields != null) {
+            solrQuery.setFields(fields);
+        }
+        return solrQuery;
+    }
+}
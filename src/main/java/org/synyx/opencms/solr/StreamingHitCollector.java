@@ -0,0 +1,133 @@
+package org.synyx.opencms.solr;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.opencms.search.fields.CmsSearchField;
+
+/**
+ * Selects the hits of the requested page while the documents are decoded from the Solr response. The documents are
+ * checked for read permissions in small batches, only the documents that end up on the page are kept. Once the page
+ * is full all further documents are dropped as soon as they are decoded, so the memory needed for a search does not
+ * depend on the number of rows requested.
+ */
+class StreamingHitCollector implements StreamingResponseParser.Callback {
+
+    private final int matchesPerPage;
+    private final int page;
+    private final boolean useSolrPaging;
+    private final int skipped;
+    private final ReadPermissionResolver permissionResolver;
+    private final int minBatchSize;
+    private final List<SolrDocument> batch = new ArrayList<SolrDocument>();
+    private final SolrDocumentList documents = new SolrDocumentList();
+    private PageSelection selection;
+    private boolean cancelled;
+
+    /**
+     * Creates a new collector.
+     * @param matchesPerPage the number of matches per page, 0 for all matches
+     * @param page the requested page
+     * @param useSolrPaging whether Solr only returns the hits of the requested page
+     * @param skipped the number of documents found that are skipped by the query and not part of the result
+     * @param permissionResolver resolves the read permissions of the hits
+     * @param minBatchSize the minimum number of hits that are checked for permissions at once
+     */
+    StreamingHitCollector(int matchesPerPage, int page, boolean useSolrPaging, int skipped,
+            ReadPermissionResolver permissionResolver, int minBatchSize) {
+        this.matchesPerPage = matchesPerPage;
+        this.page = page;
+        this.useSolrPaging = useSolrPaging;
+        this.skipped = skipped;
+        this.permissionResolver = permissionResolver;
+        this.minBatchSize = minBatchSize;
+    }
+
+    public void streamDocListInfo(long numFound, long start, Float maxScore) {
+        documents.setNumFound(numFound);
+        documents.setStart(start);
+        documents.setMaxScore(maxScore);
+        selection = new PageSelection(matchesPerPage, page, numFound - skipped, useSolrPaging);
+    }
+
+    public void streamSolrDocument(SolrDocument document) {
+        if (selection.isFull() || isCancelled()) {
+            // the page is complete, the remaining documents are not needed
+            return;
+        }
+        batch.add(document);
+        if (batch.size() >= Math.max(selection.getMissingHitCount(), minBatchSize)) {
+            processBatch();
+        }
+    }
+
+    /**
+     * Processes the documents that are still waiting for the permission check. Has to be called after the response
+     * has been read completely.
+     */
+    void finish() {
+        if (selection == null) {
+            selection = new PageSelection(matchesPerPage, page, 0, useSolrPaging);
+        }
+        processBatch();
+    }
+
+    /**
+     * Stops checking the permissions of the hits, the documents that are still read are dropped. Waits for the batch
+     * that is being checked, the permission resolver is not used anymore once this method returns.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+    }
+
+    private synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Checks whether the response has been read, i.e. the number of hits is known.
+     * @return true if the first part of the response has been passed to the collector
+     */
+    boolean isStarted() {
+        return selection != null;
+    }
+
+    /**
+     * Returns the documents that have been selected, in the same order as the hits of the selection.
+     * @return the selected documents
+     */
+    SolrDocumentList getDocuments() {
+        return documents;
+    }
+
+    PageSelection getSelection() {
+        return selection;
+    }
+
+    private synchronized void processBatch() {
+        if (batch.isEmpty() || cancelled) {
+            return;
+        }
+        String[] types = new String[batch.size()];
+        String[] paths = new String[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            types[i] = (String) batch.get(i).getFieldValue(CmsSearchField.FIELD_TYPE);
+            paths[i] = (String) batch.get(i).getFieldValue(CmsSearchField.FIELD_PATH);
+        }
+        boolean[] permissions = permissionResolver.hasReadPermissions(types, paths);
+
+        for (int i = 0; i < batch.size() && !selection.isFull(); i++) {
+            if (permissions[i]) {
+                int selected = selection.size();
+                selection.accept(0, documents.size());
+                if (selection.size() > selected) {
+                    documents.add(batch.get(i));
+                }
+            } else {
+                selection.reject();
+            }
+        }
+        batch.clear();
+    }
+}
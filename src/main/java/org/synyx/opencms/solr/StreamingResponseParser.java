@@ -0,0 +1,100 @@
+package org.synyx.opencms.solr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.FastInputStream;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * Reads a javabin response and hands the documents of the result to a {@link Callback} one by one while they are
+ * decoded. The document list of the parsed response only contains the number of hits, not the documents, so the
+ * documents are never all on the heap at the same time.
+ * <p>
+ * SolrJ 3.x doesn't support streaming responses, the parser hooks into the {@link JavaBinCodec} instead.
+ */
+class StreamingResponseParser extends BinaryResponseParser {
+
+    private final Callback callback;
+
+    /**
+     * Creates a new parser.
+     * @param callback receives the documents of the response
+     */
+    StreamingResponseParser(Callback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public NamedList<Object> processResponse(InputStream body, String encoding) {
+        try {
+            return (NamedList<Object>) new StreamingCodec(callback).unmarshal(body);
+        } catch (IOException e) {
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "parsing error", e);
+        }
+    }
+
+    /**
+     * Receives the documents of a response while it is read.
+     */
+    interface Callback {
+
+        /**
+         * Called before the first document of the result.
+         * @param numFound the number of hits
+         * @param start the offset of the first document
+         * @param maxScore the maximum score, null if the score has not been requested
+         */
+        void streamDocListInfo(long numFound, long start, Float maxScore);
+
+        /**
+         * Called for each document of the result, in the order of the result.
+         * @param document the document
+         */
+        void streamSolrDocument(SolrDocument document);
+    }
+
+    /**
+     * Decodes the documents of a document list one by one. The layout is the one written by Solr's
+     * <code>BinaryResponseWriter</code>: a list of numFound, start and maxScore followed by an array of documents.
+     */
+    private static class StreamingCodec extends JavaBinCodec {
+
+        private static final int SIZE_MASK = 0x1f;
+
+        private final Callback callback;
+
+        StreamingCodec(Callback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public SolrDocumentList readSolrDocumentList(FastInputStream dis) throws IOException {
+            SolrDocumentList documents = new SolrDocumentList();
+            List<?> info = (List<?>) readVal(dis);
+            documents.setNumFound((Long) info.get(0));
+            documents.setStart((Long) info.get(1));
+            documents.setMaxScore((Float) info.get(2));
+            callback.streamDocListInfo(documents.getNumFound(), documents.getStart(), documents.getMaxScore());
+
+            byte tag = dis.readByte();
+            if ((tag & ~SIZE_MASK) != ARR) {
+                throw new IOException("Expected the array of documents but got the tag " + tag);
+            }
+            int size = tag & SIZE_MASK;
+            if (size == SIZE_MASK) {
+                size += readVInt(dis);
+            }
+            for (int i = 0; i < size; i++) {
+                callback.streamSolrDocument((SolrDocument) readVal(dis));
+            }
+            return documents;
+        }
+    }
+}
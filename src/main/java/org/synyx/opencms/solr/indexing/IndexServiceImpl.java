@@ -2,17 +2,18 @@ package org.synyx.opencms.solr.indexing;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrInputDocument;
-import org.apache.solr.common.SolrDocumentList;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import org.synyx.opencms.solr.CommitNotifier;
 import org.synyx.opencms.solr.IndexConfiguration;
+import org.synyx.opencms.solr.StoredDocumentLookup;
 
 /**
  * Default implementation that directly uses solrServer for updating and searching.
@@ -24,22 +25,36 @@ class IndexServiceImpl implements IndexService {
     private final static Log LOG = LogFactory.getLog(IndexServiceImpl.class);
 
     private final SolrServer solrServer;
+    private final String url;
+    // the documents are merged with the updates and written back, so they are always read from the update server
+    private final StoredDocumentLookup documentLookup;
 
     public IndexServiceImpl(IndexConfiguration indexConfiguration) {
         this.solrServer = indexConfiguration.getSolrServer();
+        this.url = indexConfiguration.getUrl();
+        this.documentLookup = new StoredDocumentLookup(indexConfiguration.getUpdateSolrServer());
     }
 
     @Override
     public void addUpdateDocuments(List<UpdateDocument> updateDocuments) {
+        List<String> ids = new ArrayList<String>(updateDocuments.size());
+        for (UpdateDocument u : updateDocuments) {
+            ids.add(u.getId());
+        }
+
+        Map<String, SolrDocument> queriedDocuments;
+        try {
+            queriedDocuments = documentLookup.fetch(ids, null);
+        } catch (SolrServerException e) {
+            LOG.warn("Failed to fetch " + ids.size() + " documents at once, fetching them one by one", e);
+            queriedDocuments = fetchEach(ids);
+        }
+
         List<SolrInputDocument> inputDocuments = new ArrayList<SolrInputDocument>();
         for (UpdateDocument u : updateDocuments) {
-            try {
-                SolrDocument queriedDocument = queryDocumentById(u.getId());
-                if (queriedDocument != null) {
-                    inputDocuments.add(createSolrInputDocument(u, queriedDocument));
-                }
-            } catch (SolrServerException e) {
-                LOG.error(e.getMessage(), e);
+            SolrDocument queriedDocument = queriedDocuments.get(u.getId());
+            if (queriedDocument != null) {
+                inputDocuments.add(createSolrInputDocument(u, queriedDocument));
             }
         }
 
@@ -48,12 +63,22 @@ class IndexServiceImpl implements IndexService {
         }
     }
 
-    private SolrDocument queryDocumentById(String id) throws SolrServerException {
-        SolrQuery query = new SolrQuery(id);
-        query.setParam("qf", "id");
-        QueryResponse queryResponse = solrServer.query(query);
-        SolrDocumentList results = queryResponse.getResults();
-        return results.isEmpty() ? null : results.get(0);
+    /**
+     * Fetches the documents one by one, so a document that can't be read only skips its own update.
+     */
+    private Map<String, SolrDocument> fetchEach(List<String> ids) {
+        Map<String, SolrDocument> queriedDocuments = new HashMap<String, SolrDocument>(ids.size() * 2);
+        for (String id : ids) {
+            try {
+                SolrDocument queriedDocument = documentLookup.fetch(id, null);
+                if (queriedDocument != null) {
+                    queriedDocuments.put(id, queriedDocument);
+                }
+            } catch (SolrServerException e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+        return queriedDocuments;
     }
 
     private SolrInputDocument createSolrInputDocument(UpdateDocument updateDocument, SolrDocument queriedDocument) {
@@ -73,6 +98,7 @@ class IndexServiceImpl implements IndexService {
         try {
             solrServer.add(inputDocuments);
             solrServer.commit();
+            CommitNotifier.fireCommit(url);
         } catch (SolrServerException e) {
             LOG.error(e.getMessage(), e);
         } catch (IOException e) {
@@ -85,6 +111,7 @@ class IndexServiceImpl implements IndexService {
         try {
             solrServer.add(inputDocument);
             solrServer.commit();
+            CommitNotifier.fireCommit(url);
         } catch (SolrServerException e) {
             LOG.error(e.getMessage(), e);
         } catch (IOException e) {
@@ -97,6 +124,7 @@ class IndexServiceImpl implements IndexService {
         try {
             solrServer.deleteById(documentId);
             solrServer.commit();
+            CommitNotifier.fireCommit(url);
         } catch (SolrServerException e) {
             LOG.error(e.getMessage(), e);
         } catch (IOException e) {
@@ -1,5 +1,6 @@
 package org.synyx.opencms.solr.indexing;
 
+import org.synyx.opencms.solr.CommitNotifier;
 import org.synyx.opencms.solr.DocumentConverter;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -21,6 +22,8 @@ public class SolrIndexWriter implements I_CmsIndexWriter {
 
     // TODO think about synchronizing this class
     private final SolrServer solrServer;
+    private final String url;
+    private final DocumentConverter documentConverter;
     private Log log = LogFactory.getLog(SolrIndexWriter.class);
     // TODO make this configurable
     private int batchSize = 20;
@@ -32,7 +35,28 @@ public class SolrIndexWriter implements I_CmsIndexWriter {
      * @param solrServer
      */
     public SolrIndexWriter(SolrServer solrServer) {
+        this(solrServer, null);
+    }
+
+    /**
+     * Create new SolrIndexWriter that notifies the listeners registered at the {@link CommitNotifier} for the url.
+     * @param solrServer
+     * @param url the url of the Solr server
+     */
+    public SolrIndexWriter(SolrServer solrServer, String url) {
+        this(solrServer, url, new DocumentConverter());
+    }
+
+    /**
+     * Create new SolrIndexWriter that converts the documents with the converter of the index.
+     * @param solrServer
+     * @param url the url of the Solr server
+     * @param documentConverter the converter for the documents of the index
+     */
+    public SolrIndexWriter(SolrServer solrServer, String url, DocumentConverter documentConverter) {
         this.solrServer = solrServer;
+        this.url = url;
+        this.documentConverter = documentConverter;
     }
 
     /**
@@ -43,6 +67,7 @@ public class SolrIndexWriter implements I_CmsIndexWriter {
     public void optimize() throws IOException {
         try {
             solrServer.optimize();
+            CommitNotifier.fireCommit(url);
             commitable = true;
         } catch (SolrServerException ex) {
             throw new IOException(ex);
@@ -59,6 +84,7 @@ public class SolrIndexWriter implements I_CmsIndexWriter {
             if (commitable) {
                 addDocumentsToSolrServer();
                 solrServer.commit();
+                CommitNotifier.fireCommit(url);
                 commitable = false;
             }
         } catch (SolrServerException e) {
@@ -135,6 +161,6 @@ public class SolrIndexWriter implements I_CmsIndexWriter {
     }
 
     private SolrInputDocument asSolrInputDocument(Document document, String documentId) {
-        return new DocumentConverter().asSolrInputDocument(document, documentId);
+        return documentConverter.asSolrInputDocument(document, documentId);
     }
 }
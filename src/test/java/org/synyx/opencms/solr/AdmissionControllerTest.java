@@ -0,0 +1,128 @@
+package org.synyx.opencms.solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdmissionControllerTest {
+
+    private static final AdmissionController.SearchClass ONLINE = AdmissionController.SearchClass.ONLINE;
+    private static final AdmissionController.SearchClass OFFLINE = AdmissionController.SearchClass.OFFLINE;
+
+    @Test
+    public void searchesOverTheLimitAreRejectedIfTheQueueIsFull() {
+        AdmissionController controller = new AdmissionController("test", 1, 1, 0, 1000);
+        controller.acquire(ONLINE);
+
+        try {
+            controller.acquire(ONLINE);
+            fail("the online lane is full");
+        } catch (SearchRejectedException e) {
+            assertEquals(ONLINE, e.getSearchClass());
+        }
+        // the editors have their own limit
+        controller.acquire(OFFLINE);
+
+        assertEquals(1, getStatistics(controller, ONLINE).getQueueFullCount());
+        assertEquals(1, getStatistics(controller, ONLINE).getRunning());
+    }
+
+    @Test
+    public void searchesThatWaitTooLongAreRejected() {
+        AdmissionController controller = new AdmissionController("test", 1, 0, 1, 20);
+        controller.acquire(ONLINE);
+
+        try {
+            controller.acquire(ONLINE);
+            fail("no slot got free");
+        } catch (SearchRejectedException e) {
+            assertEquals(ONLINE, e.getSearchClass());
+        }
+
+        assertEquals(1, getStatistics(controller, ONLINE).getTimeoutCount());
+    }
+
+    @Test
+    public void releasedSlotGoesToTheWaitingSearch() throws Exception {
+        final AdmissionController controller = new AdmissionController("test", 1, 0, 2, 5000);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        controller.acquire(ONLINE);
+        Thread waiting = new Thread() {
+
+            @Override
+            public void run() {
+                controller.acquire(ONLINE);
+                order.add("waiting");
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    controller.release(ONLINE);
+                }
+            }
+        };
+        waiting.start();
+        long timeout = System.currentTimeMillis() + 5000;
+        while (getStatistics(controller, ONLINE).getQueueDepth() == 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(5);
+        }
+
+        controller.release(ONLINE);
+        // a new search must not take the slot ahead of the waiting one
+        controller.acquire(ONLINE);
+        order.add("new");
+        controller.release(ONLINE);
+        waiting.join();
+
+        assertEquals(Arrays.asList("waiting", "new"), order);
+    }
+
+    @Test
+    public void controllerIsKeptIfTheLimitsDontChange() {
+        TestSolrSearchIndex index = new TestSolrSearchIndex("test");
+        StubSolrServer solrServer = new StubSolrServer(0, 0);
+        index.initialize(solrServer, "maxOnlineSearches=2", "searchQueueSize=5");
+        AdmissionController controller = index.getAdmissionController();
+        controller.acquire(ONLINE);
+
+        index.initialize(solrServer, "maxOnlineSearches=2", "searchQueueSize=5", "rowSize=20");
+        assertSame(controller, index.getAdmissionController());
+        assertEquals(1, getStatistics(index.getAdmissionController(), ONLINE).getRunning());
+
+        index.initialize(solrServer, "maxOnlineSearches=3", "searchQueueSize=5");
+        assertNotSame(controller, index.getAdmissionController());
+
+        index.initialize(solrServer);
+        assertNull(index.getAdmissionController());
+    }
+
+    @Test
+    public void limitsAreCompared() {
+        AdmissionController controller = new AdmissionController("test", 2, 1, 5, 100);
+
+        assertTrue(controller.hasLimits(2, 1, 5, 100));
+        assertFalse(controller.hasLimits(2, 1, 5, 200));
+        assertFalse(controller.hasLimits(2, 0, 5, 100));
+    }
+
+    private AdmissionController.AdmissionStatistics getStatistics(AdmissionController controller,
+            AdmissionController.SearchClass searchClass) {
+        for (AdmissionController.AdmissionStatistics statistics : controller.getStatistics()) {
+            if (statistics.getSearchClass() == searchClass) {
+                return statistics;
+            }
+        }
+        throw new IllegalArgumentException(searchClass.toString());
+    }
+}
@@ -0,0 +1,94 @@
+package org.synyx.opencms.solr;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncSearchExecutorTest {
+
+    private final AsyncSearchExecutor executor = new AsyncSearchExecutor("test", 2, 10);
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void searchIsReturned() throws Exception {
+        Future<String> future = executor.submit(new Callable<String>() {
+
+            public String call() {
+                return "result";
+            }
+        }, 5000);
+
+        assertEquals("result", future.get());
+    }
+
+    @Test
+    public void timeoutDoesNotInterruptTheSearch() throws Exception {
+        SlowSearch search = new SlowSearch();
+        Future<String> future = executor.submit(search, 20);
+
+        assertCancelled(future);
+        search.assertFinishedWithoutInterrupt();
+    }
+
+    @Test
+    public void cancellingDoesNotInterruptTheSearch() throws Exception {
+        SlowSearch search = new SlowSearch();
+        Future<String> future = executor.submit(search, 0);
+        search.started.await(5, TimeUnit.SECONDS);
+
+        future.cancel(true);
+
+        assertCancelled(future);
+        search.assertFinishedWithoutInterrupt();
+    }
+
+    private void assertCancelled(Future<String> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("the search should have been cancelled");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A search that takes a while, like one that reads permissions from the VFS.
+     */
+    private static class SlowSearch implements Callable<String> {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final AtomicBoolean interrupted = new AtomicBoolean();
+
+        public String call() {
+            started.countDown();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            } finally {
+                finished.countDown();
+            }
+            return "result";
+        }
+
+        void assertFinishedWithoutInterrupt() throws InterruptedException {
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            assertFalse(interrupted.get());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.synyx.opencms.solr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void valuesAreCached() {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(1000, 0);
+        cache.put("key", "value");
+
+        assertEquals("value", cache.get("key"));
+        assertNull(cache.get("other"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() {
+        // a single segment, so the order of all entries is known
+        BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>(1, 0);
+        cache.put(1, 1);
+        cache.put(2, 2);
+
+        assertNull(cache.get(1));
+        assertEquals(Integer.valueOf(2), cache.get(2));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>(32, 0);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+
+        assertTrue(cache.size() <= 32);
+        assertEquals(1000 - cache.size(), cache.getEvictionCount());
+    }
+
+    @Test
+    public void entriesExpire() throws InterruptedException {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(1000, 20);
+        cache.put("key", "value");
+        Thread.sleep(50);
+
+        assertNull(cache.get("key"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void entriesCanBeRemoved() {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(1000, 0);
+        cache.put("a1", "value");
+        cache.put("a2", "value");
+        cache.put("b1", "value");
+
+        cache.remove("a1");
+        cache.removeAll(new BoundedCache.KeyFilter<String>() {
+
+            public boolean accept(String key) {
+                return key.startsWith("b");
+            }
+        });
+
+        assertNull(cache.get("a1"));
+        assertEquals("value", cache.get("a2"));
+        assertNull(cache.get("b1"));
+        assertEquals(2, cache.getInvalidationCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+}
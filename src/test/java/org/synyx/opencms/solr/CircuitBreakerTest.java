@@ -0,0 +1,95 @@
+package org.synyx.opencms.solr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensWhenTheFailureRateReachesTheThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(50, 4, 60000, 60000);
+
+        request(breaker, true);
+        request(breaker, true);
+        request(breaker, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        request(breaker, false);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertEquals(1, breaker.getRejectedCount());
+        assertEquals(1, breaker.getOpenCount());
+    }
+
+    @Test
+    public void staysClosedBelowTheMinimumRequests() {
+        CircuitBreaker breaker = new CircuitBreaker(50, 10, 60000, 60000);
+
+        for (int i = 0; i < 9; i++) {
+            request(breaker, false);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failuresOfAnExpiredWindowAreNotCounted() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(50, 2, 50, 60000);
+
+        request(breaker, false);
+        Thread.sleep(80);
+        request(breaker, true);
+        request(breaker, true);
+        request(breaker, false);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void successfulTrialClosesTheBreaker() throws Exception {
+        CircuitBreaker breaker = openBreaker(50);
+        Thread.sleep(80);
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // only one trial at a time
+        assertFalse(breaker.allowRequest());
+        breaker.recordSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedTrialOpensTheBreakerAgain() throws Exception {
+        CircuitBreaker breaker = openBreaker(50);
+        Thread.sleep(80);
+
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertEquals(2, breaker.getOpenCount());
+    }
+
+    private CircuitBreaker openBreaker(long openMillis) {
+        CircuitBreaker breaker = new CircuitBreaker(50, 1, 60000, openMillis);
+        request(breaker, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    private void request(CircuitBreaker breaker, boolean success) {
+        assertTrue(breaker.allowRequest());
+        if (success) {
+            breaker.recordSuccess();
+        } else {
+            breaker.recordFailure();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.synyx.opencms.solr;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.apache.lucene.document.DateTools;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.opencms.search.CmsTimeWindowSearchFieldSupport;
+import org.opencms.search.fields.CmsSearchField;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures how many documents per second are converted in both directions, for documents that look like the ones of
+ * an OpenCms site. The {@link DocumentConverter} is compared with the converter it replaced, which compared every
+ * field name with the names of the date fields and converted dates with {@link DateTools}. Not run by the build,
+ * start it with <code>mvn test -Dtest=DocumentConverterBenchmark</code>.
+ */
+public class DocumentConverterBenchmark {
+
+    private static final int DOCUMENTS = 1000;
+    private static final int ITERATIONS = 200;
+
+    @Test
+    public void measureDocumentsPerSecond() {
+        Converter baseline = new BaselineConverter();
+        Converter current = new CurrentConverter(new DocumentConverter(null,
+                Collections.singletonMap("size", FieldConverters.LONG)));
+
+        List<SolrDocument> solrDocuments = createSolrDocuments();
+        measureSolrToLucene("solr to lucene, before", baseline, solrDocuments);
+        measureSolrToLucene("solr to lucene, after ", current, solrDocuments);
+
+        List<Document> luceneDocuments = createLuceneDocuments();
+        measureLuceneToSolr("lucene to solr, before", baseline, luceneDocuments);
+        measureLuceneToSolr("lucene to solr, after ", current, luceneDocuments);
+    }
+
+    private void measureSolrToLucene(String name, Converter converter, List<SolrDocument> documents) {
+        // warm up
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (SolrDocument document : documents) {
+                converter.asDocument(document);
+            }
+        }
+        long start = System.nanoTime();
+        int fields = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (SolrDocument document : documents) {
+                fields += converter.asDocument(document).getFields().size();
+            }
+        }
+        print(name, start);
+        assertEquals(0, fields % ITERATIONS);
+    }
+
+    private void measureLuceneToSolr(String name, Converter converter, List<Document> documents) {
+        // warm up
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (Document document : documents) {
+                converter.asSolrInputDocument(document, "id");
+            }
+        }
+        long start = System.nanoTime();
+        int fields = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (Document document : documents) {
+                fields += converter.asSolrInputDocument(document, "id").getFieldNames().size();
+            }
+        }
+        print(name, start);
+        assertEquals(0, fields % ITERATIONS);
+    }
+
+    private void print(String name, long start) {
+        double seconds = (System.nanoTime() - start) / 1000000000d;
+        System.out.println(String.format("%s: %10.0f documents/s", name, DOCUMENTS * ITERATIONS / seconds));
+    }
+
+    private static List<SolrDocument> createSolrDocuments() {
+        List<SolrDocument> documents = new ArrayList<SolrDocument>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            SolrDocument document = new SolrDocument();
+            document.setField(SolrSearchIndex.FIELD_ID, "id" + i);
+            document.setField(CmsSearchField.FIELD_PATH, "/sites/default/folder" + i / 10 + "/page" + i + ".html");
+            document.setField(CmsSearchField.FIELD_TYPE, "xmlpage");
+            document.setField(CmsSearchField.FIELD_TITLE, "Page " + i);
+            document.setField(CmsSearchField.FIELD_DESCRIPTION, "The description of page " + i);
+            document.setField(CmsSearchField.FIELD_CONTENT, "The content of page " + i);
+            document.setField(CmsSearchField.FIELD_CATEGORY, Arrays.asList("news", "category" + i % 7));
+            document.setField(CmsSearchField.FIELD_KEYWORDS, Arrays.asList("keyword" + i % 5, "keyword" + i % 11));
+            document.setField(CmsSearchField.FIELD_DATE_CREATED, new Date(1300000000000L + i));
+            document.setField(CmsSearchField.FIELD_DATE_LASTMODIFIED, new Date(1300000000000L + i * 2));
+            document.setField(CmsSearchField.FIELD_DATE_CONTENT, new Date(1300000000000L + i * 3));
+            document.setField("size", Long.valueOf(i));
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    private static List<Document> createLuceneDocuments() {
+        List<Document> documents = new ArrayList<Document>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            Document document = new Document();
+            addField(document, CmsSearchField.FIELD_PATH, "/sites/default/folder" + i / 10 + "/page" + i + ".html");
+            addField(document, CmsSearchField.FIELD_TYPE, "xmlpage");
+            addField(document, CmsSearchField.FIELD_TITLE, "Page " + i);
+            addField(document, CmsSearchField.FIELD_DESCRIPTION, "The description of page " + i);
+            addField(document, CmsSearchField.FIELD_CONTENT, "The content of page " + i);
+            addField(document, CmsSearchField.FIELD_CATEGORY, "news");
+            addField(document, CmsSearchField.FIELD_CATEGORY, "category" + i % 7);
+            addField(document, CmsSearchField.FIELD_DATE_CREATED, "20110313070640" + (100 + i % 900));
+            addField(document, CmsSearchField.FIELD_DATE_LASTMODIFIED, "20110313070640" + (100 + i % 900));
+            addField(document, CmsSearchField.FIELD_DATE_CONTENT, "20110313070640" + (100 + i % 900));
+            addField(document, "size", String.valueOf(i));
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    private static void addField(Document document, String name, String value) {
+        document.add(new Field(name, value, Field.Store.YES, Field.Index.NO));
+    }
+
+    private interface Converter {
+
+        Document asDocument(SolrDocument solrDocument);
+
+        SolrInputDocument asSolrInputDocument(Document document, String documentId);
+    }
+
+    private static class CurrentConverter implements Converter {
+
+        private final DocumentConverter converter;
+
+        CurrentConverter(DocumentConverter converter) {
+            this.converter = converter;
+        }
+
+        public Document asDocument(SolrDocument solrDocument) {
+            return converter.asDocument(solrDocument);
+        }
+
+        public SolrInputDocument asSolrInputDocument(Document document, String documentId) {
+            return converter.asSolrInputDocument(document, documentId);
+        }
+    }
+
+    /**
+     * The conversion as it was done before the field converters were introduced.
+     */
+    private static class BaselineConverter implements Converter {
+
+        public Document asDocument(SolrDocument solrDocument) {
+            Document result = new Document();
+            for (String name : solrDocument.getFieldNames()) {
+                String value = null;
+                if (isDateField(name)) {
+                    value = DateTools.dateToString((Date) solrDocument.getFieldValue(name),
+                            DateTools.Resolution.MILLISECOND);
+                } else {
+                    value = solrDocument.getFieldValue(name).toString();
+                }
+                result.add(new Field(name, value, Field.Store.YES, Field.Index.NO));
+            }
+            return result;
+        }
+
+        public SolrInputDocument asSolrInputDocument(Document document, String documentId) {
+            SolrInputDocument inputDocument = new SolrInputDocument();
+            inputDocument.addField("id", documentId);
+
+            @SuppressWarnings("unchecked")
+            List<Fieldable> fields = document.getFields();
+
+            for (Fieldable field : fields) {
+                if (isDateField(field.name())) {
+                    try {
+                        inputDocument.addField(field.name(), DateTools.stringToDate(field.stringValue()));
+                    } catch (ParseException ex) {
+                        throw new IllegalArgumentException("Failed to parse date for field " + field.name(), ex);
+                    }
+                } else {
+                    inputDocument.addField(field.name(), field.stringValue());
+                }
+            }
+
+            return inputDocument;
+        }
+
+        private boolean isDateField(String name) {
+            return name.equals(CmsSearchField.FIELD_DATE_CONTENT)
+                    || name.equals(CmsSearchField.FIELD_DATE_CREATED)
+                    || name.equals(CmsSearchField.FIELD_DATE_LASTMODIFIED)
+                    || name.equals(CmsTimeWindowSearchFieldSupport.FIELD_RELEASE)
+                    || name.equals(CmsTimeWindowSearchFieldSupport.FIELD_EXPIRED);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.synyx.opencms.solr;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.opencms.search.fields.CmsSearchField;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DocumentConverterTest {
+
+    private static final Date DATE = new Date(1300000000123L);
+    private static final String LUCENE_DATE = "20110313070640123";
+
+    private final DocumentConverter converter = new DocumentConverter(null,
+            Collections.singletonMap("size", FieldConverters.LONG));
+
+    @Test
+    public void solrDocumentsAreConverted() {
+        Document document = converter.asDocument(createSolrDocument("title", DATE));
+
+        assertEquals("title", document.get(CmsSearchField.FIELD_TITLE));
+        assertEquals(LUCENE_DATE, document.get(CmsSearchField.FIELD_DATE_LASTMODIFIED));
+        assertEquals("42", document.get("size"));
+    }
+
+    @Test
+    public void multiValuedFieldsAreConvertedValueByValue() {
+        SolrDocument solrDocument = createSolrDocument("title", DATE);
+        solrDocument.setField(CmsSearchField.FIELD_CATEGORY, Arrays.asList("news", "events"));
+        solrDocument.setField(CmsSearchField.FIELD_DATE_CREATED, Arrays.asList(DATE, new Date(0)));
+
+        Document document = converter.asDocument(solrDocument);
+
+        assertArrayEquals(new String[] {"news", "events"}, document.getValues(CmsSearchField.FIELD_CATEGORY));
+        assertArrayEquals(new String[] {LUCENE_DATE, "19700101000000000"},
+                document.getValues(CmsSearchField.FIELD_DATE_CREATED));
+    }
+
+    @Test
+    public void documentsWithDifferentFieldsAreConverted() {
+        SolrDocument other = new SolrDocument();
+        other.setField(CmsSearchField.FIELD_DATE_LASTMODIFIED, DATE);
+        other.setField(CmsSearchField.FIELD_TITLE, "other");
+
+        for (int i = 0; i < 3; i++) {
+            Document document = converter.asDocument(createSolrDocument("title" + i, DATE));
+            assertEquals("title" + i, document.get(CmsSearchField.FIELD_TITLE));
+            assertEquals(LUCENE_DATE, document.get(CmsSearchField.FIELD_DATE_LASTMODIFIED));
+
+            document = converter.asDocument(other);
+            assertEquals("other", document.get(CmsSearchField.FIELD_TITLE));
+            assertEquals(LUCENE_DATE, document.get(CmsSearchField.FIELD_DATE_LASTMODIFIED));
+        }
+    }
+
+    @Test
+    public void luceneDocumentsAreConverted() {
+        Document other = new Document();
+        other.add(new Field("size", "7", Field.Store.YES, Field.Index.NO));
+
+        for (int i = 0; i < 3; i++) {
+            SolrInputDocument inputDocument = converter.asSolrInputDocument(createLuceneDocument("title" + i), "id");
+            assertEquals("id", inputDocument.getFieldValue(SolrSearchIndex.FIELD_ID));
+            assertEquals("title" + i, inputDocument.getFieldValue(CmsSearchField.FIELD_TITLE));
+            assertEquals(DATE, inputDocument.getFieldValue(CmsSearchField.FIELD_DATE_LASTMODIFIED));
+            assertEquals(Long.valueOf(42), inputDocument.getFieldValue("size"));
+
+            inputDocument = converter.asSolrInputDocument(other, "other");
+            assertEquals(Long.valueOf(7), inputDocument.getFieldValue("size"));
+            assertNull(inputDocument.getFieldValue(CmsSearchField.FIELD_TITLE));
+        }
+    }
+
+    static SolrDocument createSolrDocument(String title, Date date) {
+        SolrDocument solrDocument = new SolrDocument();
+        solrDocument.setField(SolrSearchIndex.FIELD_ID, "id");
+        solrDocument.setField(CmsSearchField.FIELD_TITLE, title);
+        solrDocument.setField(CmsSearchField.FIELD_DATE_LASTMODIFIED, date);
+        solrDocument.setField("size", Long.valueOf(42));
+        return solrDocument;
+    }
+
+    static Document createLuceneDocument(String title) {
+        Document document = new Document();
+        document.add(new Field(CmsSearchField.FIELD_TITLE, title, Field.Store.YES, Field.Index.NO));
+        document.add(new Field(CmsSearchField.FIELD_DATE_LASTMODIFIED, LUCENE_DATE, Field.Store.YES,
+                Field.Index.NO));
+        document.add(new Field("size", "42", Field.Store.YES, Field.Index.NO));
+        return document;
+    }
+}
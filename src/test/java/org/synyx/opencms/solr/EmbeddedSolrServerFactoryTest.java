@@ -0,0 +1,139 @@
+package org.synyx.opencms.solr;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Starts the core of the test Solr home with the jars of solr-core 3.1 and Lucene 3.1 in the directory of the system
+ * property <code>solrLib</code>, which the build fills before it runs this test on its own.
+ */
+public class EmbeddedSolrServerFactoryTest {
+
+    private static final String DATA_DIR_PROPERTY = "solr.data.dir";
+
+    private final String solrLib = System.getProperty("solrLib", "target/embedded-solr-lib");
+    private File dataDir;
+    private File luceneLib;
+
+    @After
+    public void tearDown() {
+        EmbeddedSolrServerFactory.shutdown();
+        if (dataDir != null) {
+            System.clearProperty(DATA_DIR_PROPERTY);
+            delete(dataDir);
+        }
+        if (luceneLib != null) {
+            delete(luceneLib);
+        }
+    }
+
+    @Test
+    public void missingLuceneVersionFailsWhenTheIndexIsInitialized() throws Exception {
+        // only the Lucene of OpenCms
+        luceneLib = createTempDir("solr-lib");
+        copy(new File(Document.class.getProtectionDomain().getCodeSource().getLocation().toURI()),
+                new File(luceneLib, "lucene-core.jar"));
+
+        try {
+            new IndexConfiguration("embedded", createConfiguration(luceneLib.getPath()));
+            fail("Lucene 3.1 is not in the directory");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Lucene 3.1"));
+        }
+    }
+
+    @Test
+    public void onlySolrjIsSharedWithTheWebApplication() throws Exception {
+        ClassLoader classLoader = EmbeddedSolrServerFactory.getClassLoader(solrLib);
+
+        assertSame(SolrServer.class, classLoader.loadClass(SolrServer.class.getName()));
+        assertNotSame(Document.class, classLoader.loadClass(Document.class.getName()));
+        assertTrue(EmbeddedSolrServerFactory.isLuceneVersionSupported(classLoader));
+    }
+
+    @Test
+    public void documentsAreWrittenToTheEmbeddedCore() throws Exception {
+        dataDir = createTempDir("solr-data");
+        System.setProperty(DATA_DIR_PROPERTY, dataDir.getAbsolutePath());
+
+        SolrServer server = new IndexConfiguration("embedded", createConfiguration(solrLib)).getSolrServer();
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField(SolrSearchIndex.FIELD_ID, "doc1");
+        document.addField("content", "embedded solr");
+        server.add(Collections.singletonList(document));
+        server.commit();
+
+        assertEquals(1, server.query(new SolrQuery("content:embedded")).getResults().getNumFound());
+        // the Lucene of OpenCms is still used outside of Solr
+        assertEquals("content:embedded", new QueryParser("content", new StandardAnalyzer()).parse("embedded")
+                .toString());
+    }
+
+    private Map<String, String> createConfiguration(String lib) {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("mode", "embedded");
+        values.put("solrHome", getSolrHome());
+        values.put("solrLib", lib);
+        return values;
+    }
+
+    private String getSolrHome() {
+        return new File(getClass().getResource("/solr-home/solr.xml").getFile()).getParent();
+    }
+
+    private static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(to);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
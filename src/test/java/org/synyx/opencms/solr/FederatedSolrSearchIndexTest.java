@@ -0,0 +1,121 @@
+package org.synyx.opencms.solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.opencms.file.CmsObject;
+import org.opencms.main.CmsException;
+import org.opencms.search.CmsSearchIndex;
+import org.opencms.search.CmsSearchParameters;
+import org.opencms.search.CmsSearchResult;
+import org.opencms.search.CmsSearchResultList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FederatedSolrSearchIndexTest {
+
+    private final Map<String, CmsSearchIndex> members = new HashMap<String, CmsSearchIndex>();
+
+    @Test
+    public void hitsAreMergedByTheirNormalizedScore() throws Exception {
+        FederatedSolrSearchIndex index = createIndex(0);
+
+        CmsSearchResultList results = index.search(MockCms.createCms(), createParameters(10, 1));
+
+        // equal scores keep the order of the members
+        assertEquals(Arrays.asList("a0", "b0", "b1", "a1", "a2", "b2"), getIds(results));
+        assertEquals(6, results.getHitCount());
+        assertFalse(((SolrSearchResultList) results).isPartial());
+    }
+
+    @Test
+    public void hitsAreMergedByTheirSortFields() throws Exception {
+        FederatedSolrSearchIndex index = createIndex(0);
+        CmsSearchParameters params = createParameters(10, 1);
+        params.setSort(new Sort(new SortField("value", SortField.FLOAT, true)));
+
+        CmsSearchResultList results = index.search(MockCms.createCms(), params);
+
+        assertEquals(Arrays.asList("b0", "b1", "a0", "a1", "a2", "b2"), getIds(results));
+    }
+
+    @Test
+    public void pageIsCutOutOfTheMergedHits() throws Exception {
+        FederatedSolrSearchIndex index = createIndex(0);
+
+        CmsSearchResultList results = index.search(MockCms.createCms(), createParameters(2, 2));
+
+        assertEquals(Arrays.asList("b1", "a1"), getIds(results));
+        assertEquals(6, results.getHitCount());
+    }
+
+    @Test
+    public void membersThatDontAnswerInTimeAreLeftOut() throws Exception {
+        FederatedSolrSearchIndex index = createIndex(2000);
+
+        long start = System.currentTimeMillis();
+        SolrSearchResultList results = (SolrSearchResultList) index.search(MockCms.createCms(),
+                createParameters(10, 1));
+
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        assertEquals(Arrays.asList("a0", "a1", "a2"), getIds(results));
+        assertTrue(results.isPartial());
+        assertFalse(results.isHitCountExact());
+    }
+
+    /**
+     * Creates a federated index with the members a and b, answers of b take the given time.
+     */
+    private FederatedSolrSearchIndex createIndex(long latencyOfB) {
+        addMember("a", new StubSolrServer("a", new float[]{1.0f, 0.8f, 0.5f}, 0));
+        addMember("b", new StubSolrServer("b", new float[]{2.0f, 1.8f, 0.2f}, latencyOfB));
+
+        FederatedSolrSearchIndex index = new FederatedSolrSearchIndex() {
+
+            @Override
+            CmsSearchIndex getIndex(String indexName) {
+                return members.get(indexName);
+            }
+
+            @Override
+            CmsObject initMemberCms(CmsObject cms) throws CmsException {
+                // OpenCms is not running, every member search gets a new mock
+                return MockCms.createCms();
+            }
+        };
+        Map<String, String> configuration = new HashMap<String, String>();
+        configuration.put("members", "a, b");
+        configuration.put("memberTimeout", "300");
+        index.initialize(new IndexConfiguration(configuration, null));
+        return index;
+    }
+
+    private void addMember(String name, StubSolrServer solrServer) {
+        TestSolrSearchIndex member = new TestSolrSearchIndex(name);
+        member.initialize(solrServer);
+        members.put(name, member);
+    }
+
+    private CmsSearchParameters createParameters(int matchesPerPage, int page) {
+        CmsSearchParameters params = new CmsSearchParameters();
+        params.setQuery("query");
+        params.setMatchesPerPage(matchesPerPage);
+        params.setSearchPage(page);
+        return params;
+    }
+
+    private List<String> getIds(CmsSearchResultList results) {
+        List<String> ids = new ArrayList<String>();
+        for (CmsSearchResult result : results) {
+            ids.add((String) ((SolrSearchResult) result).getFieldValue(SolrSearchIndex.FIELD_ID));
+        }
+        return ids;
+    }
+}
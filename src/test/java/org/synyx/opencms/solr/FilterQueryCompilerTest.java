@@ -0,0 +1,120 @@
+package org.synyx.opencms.solr;
+
+import java.util.Arrays;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.common.params.CommonParams;
+import org.opencms.search.CmsSearchParameters;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FilterQueryCompilerTest {
+
+    private final StubSolrServer solrServer = new StubSolrServer(0, 0);
+
+    @Test
+    public void equivalentFiltersProduceIdenticalFilterQueries() {
+        String[] first = new FilterQueryCompiler()
+                .add("type", "xmlpage", Occur.MUST)
+                .add("category", "news", Occur.MUST)
+                .addAlternative("parent-folders", "/sites/default/a/")
+                .addAlternative("parent-folders", "/sites/default/b/")
+                .compile();
+        String[] second = new FilterQueryCompiler()
+                .addAlternative("parent-folders", "/sites/default/b/")
+                .add("category", "news", Occur.MUST)
+                .addAlternative("parent-folders", "/sites/default/a/")
+                .add("type", "xmlpage", Occur.MUST)
+                .add("category", "news", Occur.MUST)
+                .compile();
+
+        assertArrayEquals(first, second);
+        assertArrayEquals(new String[]{"+category:news", "+type:xmlpage",
+            "parent-folders:(/sites/default/a/ OR /sites/default/b/)"}, first);
+    }
+
+    @Test
+    public void singleAlternativeIsAPlainFilterQuery() {
+        String[] filterQueries = new FilterQueryCompiler().addAlternative("parent-folders", "/sites/default/")
+                .compile();
+
+        assertArrayEquals(new String[]{"parent-folders:/sites/default/"}, filterQueries);
+    }
+
+    @Test
+    public void occurIsPrefixed() {
+        assertArrayEquals(new String[]{"+a:1", "-b:2", "c:3"}, new FilterQueryCompiler()
+                .add("c", "3", Occur.SHOULD).add("b", "2", Occur.MUST_NOT).add("a", "1", Occur.MUST).compile());
+    }
+
+    @Test
+    public void filterQueriesAreAddedToTheQuery() {
+        SolrQuery first = new SolrQuery();
+        new FilterQueryCompiler().add("b:2").add("a:1").addTo(first);
+        SolrQuery second = new SolrQuery();
+        new FilterQueryCompiler().add("a:1").add("b:2").add("a:1").addTo(second);
+
+        assertArrayEquals(first.getFilterQueries(), second.getFilterQueries());
+        assertArrayEquals(new String[]{"a:1", "b:2"}, first.getFilterQueries());
+    }
+
+    @Test
+    public void equivalentSearchParametersProduceIdenticalFilterQueries() throws Exception {
+        TestSolrSearchIndex index = createIndex();
+        CmsSearchParameters first = createParameters();
+        first.setRoots(Arrays.asList("/a/", "/b/"));
+        first.setCategories(Arrays.asList("news", "events"));
+        first.setResourceTypes(Arrays.asList("xmlpage", "plain"));
+        CmsSearchParameters second = createParameters();
+        second.setRoots(Arrays.asList("/b/", "/a/"));
+        second.setCategories(Arrays.asList("events", "news"));
+        second.setResourceTypes(Arrays.asList("plain", "xmlpage"));
+
+        String[] filterQueries = search(index, first);
+        assertArrayEquals(filterQueries, search(index, second));
+        assertTrue(Arrays.asList(filterQueries).contains(
+                "parent-folders:(" + MockCms.SITE_ROOT + "/a/ OR " + MockCms.SITE_ROOT + "/b/)"));
+    }
+
+    @Test
+    public void availabilityWithinOnePrecisionGivesIdenticalFilterQueries() throws Exception {
+        TestSolrSearchIndex index = createIndex();
+        // a multiple of the precision of 60 seconds
+        long bucket = 1200000000000L;
+
+        index.setCurrentTime(bucket + 1000);
+        String[] early = search(index, createParameters());
+        index.setCurrentTime(bucket + 59000);
+        String[] late = search(index, createParameters());
+        index.setCurrentTime(bucket + 61000);
+        String[] nextBucket = search(index, createParameters());
+
+        assertArrayEquals(early, late);
+        assertFalse(Arrays.equals(early, nextBucket));
+    }
+
+    private TestSolrSearchIndex createIndex() {
+        TestSolrSearchIndex index = new TestSolrSearchIndex("test");
+        index.initialize(solrServer, "availabilityInSolr=true", "availabilityPrecision=60");
+        return index;
+    }
+
+    private CmsSearchParameters createParameters() {
+        CmsSearchParameters params = new CmsSearchParameters();
+        params.setQuery("query");
+        params.setMatchesPerPage(10);
+        params.setSearchPage(1);
+        return params;
+    }
+
+    /**
+     * Searches the index and returns the filter queries sent to Solr.
+     */
+    private String[] search(TestSolrSearchIndex index, CmsSearchParameters params) throws Exception {
+        index.search(MockCms.createCms(), params);
+        return solrServer.getLastParams().getParams(CommonParams.FQ);
+    }
+}
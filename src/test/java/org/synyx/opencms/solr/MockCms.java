@@ -0,0 +1,121 @@
+package org.synyx.opencms.solr;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opencms.file.CmsObject;
+import org.opencms.file.CmsProject;
+import org.opencms.file.CmsRequestContext;
+import org.opencms.file.CmsResource;
+import org.opencms.file.CmsResourceFilter;
+import org.opencms.file.CmsUser;
+import org.opencms.main.CmsException;
+import org.opencms.util.CmsUUID;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Creates mocked OpenCms contexts for the tests. Every resource can be read unless it is stubbed differently.
+ */
+final class MockCms {
+
+    static final String PROJECT_NAME = "Online";
+    static final String SITE_ROOT = "/sites/default";
+
+    // all contexts share the project, as the index only copies contexts of other projects
+    private static final CmsProject ONLINE_PROJECT = createProject();
+    // creating mocks is slow, so every resource is only created once
+    private static final ConcurrentMap<String, CmsResource> RESOURCES = new ConcurrentHashMap<String, CmsResource>();
+
+    private MockCms() {
+    }
+
+    private static CmsProject createProject() {
+        CmsUUID projectId = mock(CmsUUID.class);
+        CmsProject project = mock(CmsProject.class);
+        when(project.getName()).thenReturn(PROJECT_NAME);
+        when(project.getUuid()).thenReturn(projectId);
+        when(project.isOnlineProject()).thenReturn(true);
+        return project;
+    }
+
+    /**
+     * Creates a Cms object of a user in the online project of the default site.
+     * @return the mocked Cms object
+     */
+    static CmsObject createCms() throws CmsException {
+        CmsUUID userId = mock(CmsUUID.class);
+        CmsUser user = mock(CmsUser.class);
+        when(user.getId()).thenReturn(userId);
+
+        CmsRequestContext context = mock(CmsRequestContext.class);
+        when(context.currentProject()).thenReturn(ONLINE_PROJECT);
+        when(context.currentUser()).thenReturn(user);
+        when(context.getSiteRoot()).thenReturn(SITE_ROOT);
+        when(context.getRequestTime()).thenReturn(System.currentTimeMillis());
+        when(context.removeSiteRoot(anyString())).thenAnswer(new Answer<String>() {
+
+            public String answer(InvocationOnMock invocation) {
+                String path = (String) invocation.getArguments()[0];
+                return path.startsWith(SITE_ROOT) ? path.substring(SITE_ROOT.length()) : path;
+            }
+        });
+        when(context.addSiteRoot(anyString())).thenAnswer(new Answer<String>() {
+
+            public String answer(InvocationOnMock invocation) {
+                return SITE_ROOT + invocation.getArguments()[0];
+            }
+        });
+
+        CmsObject cms = mock(CmsObject.class);
+        when(cms.getRequestContext()).thenReturn(context);
+        when(cms.readProject(PROJECT_NAME)).thenReturn(ONLINE_PROJECT);
+        when(cms.readResource(anyString(), any(CmsResourceFilter.class))).thenAnswer(new Answer<CmsResource>() {
+
+            public CmsResource answer(InvocationOnMock invocation) {
+                String rootPath = SITE_ROOT + invocation.getArguments()[0];
+                CmsResource resource = RESOURCES.get(rootPath);
+                if (resource == null) {
+                    resource = createResource(rootPath);
+                    RESOURCES.putIfAbsent(rootPath, resource);
+                }
+                return resource;
+            }
+        });
+        when(cms.readResources(anyString(), any(CmsResourceFilter.class), anyBoolean())).thenReturn(
+                Collections.<CmsResource>emptyList());
+        return cms;
+    }
+
+    /**
+     * Creates a resource that is released and not expired.
+     * @param rootPath the root path of the resource
+     * @return the mocked resource
+     */
+    static CmsResource createResource(String rootPath) {
+        CmsResource resource = mock(CmsResource.class);
+        when(resource.getRootPath()).thenReturn(rootPath);
+        when(resource.getDateReleased()).thenReturn(0L);
+        when(resource.getDateExpired()).thenReturn(Long.MAX_VALUE);
+        when(resource.isFolder()).thenReturn(rootPath.endsWith("/"));
+        return resource;
+    }
+
+    /**
+     * Lets reading a folder of the default site return the given resources.
+     * @param cms the mocked Cms object
+     * @param folder the root path of the folder
+     * @param resources the resources in the folder
+     */
+    static void stubFolder(CmsObject cms, String folder, List<CmsResource> resources) throws CmsException {
+        String sitePath = folder.substring(SITE_ROOT.length());
+        when(cms.readResources(sitePath, CmsResourceFilter.IGNORE_EXPIRATION, false)).thenReturn(resources);
+    }
+}
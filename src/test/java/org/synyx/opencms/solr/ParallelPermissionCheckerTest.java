@@ -0,0 +1,179 @@
+package org.synyx.opencms.solr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.opencms.main.CmsException;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelPermissionCheckerTest {
+
+    private ParallelPermissionChecker checker;
+
+    @After
+    public void tearDown() {
+        if (checker != null) {
+            checker.shutdown();
+        }
+    }
+
+    @Test
+    public void resultsAreReturnedInRankingOrder() throws Exception {
+        checker = new ParallelPermissionChecker("test", 4, 5000);
+        RecordingResolver resolver = new RecordingResolver(null);
+
+        assertReadableEverySecondHit(checker.start(resolver, new String[200], createPaths(200)), 200);
+    }
+
+    @Test
+    public void workersCheckWithACopyOfTheResolver() throws Exception {
+        checker = new ParallelPermissionChecker("test", 2, 5000);
+        RecordingResolver resolver = new RecordingResolver(null);
+
+        assertReadableEverySecondHit(checker.start(resolver, new String[100], createPaths(100)), 100);
+
+        assertTrue(resolver.copies.size() > 0);
+        assertTrue(resolver.copies.size() <= 2);
+        for (RecordingResolver copy : resolver.copies) {
+            assertFalse(copy.threads.contains(Thread.currentThread()));
+        }
+    }
+
+    @Test
+    public void slicesThatTimeOutAreCheckedByTheCallingThread() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        checker = new ParallelPermissionChecker("test", 2, 50);
+        RecordingResolver resolver = new RecordingResolver(release);
+        try {
+            assertReadableEverySecondHit(checker.start(resolver, new String[40], createPaths(40)), 40);
+        } finally {
+            release.countDown();
+        }
+
+        assertTrue(resolver.threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void slicesAreCheckedByTheCallingThreadIfThePoolIsBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        checker = new ParallelPermissionChecker("test", 1, 5000);
+        // the worker and the queue are filled with checks that don't finish
+        List<Thread> blockedSearches = new ArrayList<Thread>();
+        for (int i = 0; i < 3; i++) {
+            blockedSearches.add(startCheck(checker.start(new RecordingResolver(release), new String[1000],
+                    createPaths(1000))));
+        }
+        RecordingResolver resolver = new RecordingResolver(null);
+        try {
+            Thread.sleep(100);
+            assertReadableEverySecondHit(checker.start(resolver, new String[100], createPaths(100)), 100);
+        } finally {
+            release.countDown();
+            for (Thread blockedSearch : blockedSearches) {
+                blockedSearch.join();
+            }
+        }
+
+        assertTrue(resolver.threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void checkerCanBeUsedAfterShutdown() throws Exception {
+        checker = new ParallelPermissionChecker("test", 2, 5000);
+        checker.shutdown();
+        RecordingResolver resolver = new RecordingResolver(null);
+
+        assertReadableEverySecondHit(checker.start(resolver, new String[30], createPaths(30)), 30);
+        assertEquals(Collections.singleton(Thread.currentThread()), resolver.threads);
+    }
+
+    private Thread startCheck(final ParallelPermissionChecker.Check check) {
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                check.isReadable(0);
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private void assertReadableEverySecondHit(ParallelPermissionChecker.Check check, int count) {
+        try {
+            for (int i = 0; i < count; i++) {
+                assertEquals("hit " + i, i % 2 == 0, check.isReadable(i));
+            }
+        } finally {
+            check.cancel();
+        }
+    }
+
+    private static String[] createPaths(int count) {
+        String[] paths = new String[count];
+        for (int i = 0; i < count; i++) {
+            paths[i] = MockCms.SITE_ROOT + "/doc" + i + ".html";
+        }
+        return paths;
+    }
+
+    /**
+     * Allows every document with an even number and records the threads it is used by. Its copies block the worker
+     * threads until they are released.
+     */
+    private static class RecordingResolver extends ReadPermissionResolver {
+
+        private final CountDownLatch workerRelease;
+        private final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        private final Set<RecordingResolver> copies = Collections.synchronizedSet(new HashSet<RecordingResolver>());
+
+        RecordingResolver(CountDownLatch workerRelease) throws CmsException {
+            super(MockCms.createCms(), true, null, -1);
+            this.workerRelease = workerRelease;
+        }
+
+        @Override
+        ReadPermissionResolver copy() throws CmsException {
+            final RecordingResolver resolver = this;
+            RecordingResolver copy = new RecordingResolver(null) {
+
+                @Override
+                public boolean[] hasReadPermissions(String[] types, String[] paths) {
+                    if (workerRelease != null) {
+                        try {
+                            workerRelease.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return resolver.hasReadPermissions(types, paths, this);
+                }
+            };
+            copies.add(copy);
+            return copy;
+        }
+
+        @Override
+        public boolean[] hasReadPermissions(String[] types, String[] paths) {
+            return hasReadPermissions(types, paths, this);
+        }
+
+        private boolean[] hasReadPermissions(String[] types, String[] paths, RecordingResolver user) {
+            user.threads.add(Thread.currentThread());
+            boolean[] result = new boolean[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                String name = paths[i].substring(paths[i].lastIndexOf("/doc") + 4, paths[i].length() - 5);
+                result[i] = Integer.parseInt(name) % 2 == 0;
+            }
+            return result;
+        }
+    }
+}
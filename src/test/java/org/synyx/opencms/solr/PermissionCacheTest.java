@@ -0,0 +1,119 @@
+package org.synyx.opencms.solr;
+
+import java.util.Collections;
+import java.util.Map;
+import org.opencms.main.CmsEvent;
+import org.opencms.main.I_CmsEventListener;
+import org.opencms.util.CmsUUID;
+import org.synyx.opencms.solr.PermissionCache.PermissionDecision;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PermissionCacheTest {
+
+    private static final String FOLDER = "/sites/default/news/";
+    private static final String FILE = FOLDER + "article.html";
+    private static final String OTHER_FILE = "/sites/default/about.html";
+
+    private PermissionCache cache;
+    private CmsUUID userId;
+    private CmsUUID projectId;
+    private PermissionDecision decision;
+
+    @Before
+    public void setUp() {
+        cache = new PermissionCache();
+        userId = mock(CmsUUID.class);
+        projectId = mock(CmsUUID.class);
+        decision = new PermissionDecision(MockCms.createResource(FILE));
+    }
+
+    @Test
+    public void decisionsAreCachedPerContext() {
+        cache.put(userId, projectId, FILE, decision, cache.getGeneration());
+
+        assertSame(decision, cache.get(userId, projectId, FILE));
+        assertNull(cache.get(mock(CmsUUID.class), projectId, FILE));
+    }
+
+    @Test
+    public void modifiedResourcesAreInvalidated() {
+        cache.put(userId, projectId, FILE, decision, cache.getGeneration());
+        cache.put(userId, projectId, OTHER_FILE, decision, cache.getGeneration());
+
+        cache.cmsEvent(createEvent(I_CmsEventListener.EVENT_RESOURCE_MODIFIED, I_CmsEventListener.KEY_RESOURCE,
+                MockCms.createResource(FILE)));
+
+        assertNull(cache.get(userId, projectId, FILE));
+        assertNotNull(cache.get(userId, projectId, OTHER_FILE));
+    }
+
+    @Test
+    public void modifiedFoldersInvalidateTheResourcesBelow() {
+        cache.put(userId, projectId, FILE, decision, cache.getGeneration());
+        cache.put(userId, projectId, OTHER_FILE, decision, cache.getGeneration());
+
+        cache.cmsEvent(createEvent(I_CmsEventListener.EVENT_RESOURCES_MODIFIED, I_CmsEventListener.KEY_RESOURCES,
+                Collections.singletonList(MockCms.createResource(FOLDER))));
+
+        assertNull(cache.get(userId, projectId, FILE));
+        assertNotNull(cache.get(userId, projectId, OTHER_FILE));
+    }
+
+    @Test
+    public void decisionsCanBeCachedAgainAfterAnInvalidation() {
+        cache.cmsEvent(createEvent(I_CmsEventListener.EVENT_RESOURCE_MODIFIED, I_CmsEventListener.KEY_RESOURCE,
+                MockCms.createResource(FILE)));
+
+        cache.put(userId, projectId, FILE, decision, cache.getGeneration());
+
+        assertSame(decision, cache.get(userId, projectId, FILE));
+    }
+
+    @Test
+    public void decisionsReadDuringAnInvalidationAreNotCached() {
+        long generation = cache.getGeneration();
+        cache.cmsEvent(createEvent(I_CmsEventListener.EVENT_RESOURCE_MODIFIED, I_CmsEventListener.KEY_RESOURCE,
+                MockCms.createResource(FILE)));
+
+        cache.put(userId, projectId, FILE, decision, generation);
+        cache.put(userId, projectId, OTHER_FILE, decision, generation);
+
+        assertNull(cache.get(userId, projectId, FILE));
+        assertNotNull(cache.get(userId, projectId, OTHER_FILE));
+    }
+
+    @Test
+    public void decisionsReadDuringAClearAreNotCached() {
+        long generation = cache.getGeneration();
+        cache.cmsEvent(createEvent(I_CmsEventListener.EVENT_PUBLISH_PROJECT, I_CmsEventListener.KEY_RESOURCE, null));
+
+        cache.put(userId, projectId, OTHER_FILE, decision, generation);
+
+        assertNull(cache.get(userId, projectId, OTHER_FILE));
+    }
+
+    @Test
+    public void unknownChangesClearTheCache() {
+        cache.put(userId, projectId, OTHER_FILE, decision, cache.getGeneration());
+
+        cache.cmsEvent(createEvent(I_CmsEventListener.EVENT_RESOURCE_MODIFIED, I_CmsEventListener.KEY_RESOURCE,
+                "unknown"));
+
+        assertNull(cache.get(userId, projectId, OTHER_FILE));
+    }
+
+    private CmsEvent createEvent(int type, String key, Object value) {
+        Map<String, Object> data = Collections.singletonMap(key, value);
+        CmsEvent event = mock(CmsEvent.class);
+        when(event.getType()).thenReturn(type);
+        when(event.getData()).thenReturn(data);
+        return event;
+    }
+}
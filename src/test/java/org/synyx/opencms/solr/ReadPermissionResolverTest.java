@@ -0,0 +1,119 @@
+package org.synyx.opencms.solr;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.opencms.file.CmsObject;
+import org.opencms.file.CmsResource;
+import org.opencms.file.CmsResourceFilter;
+import org.opencms.search.fields.CmsSearchFieldConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ReadPermissionResolverTest {
+
+    private CmsObject cms;
+
+    @Before
+    public void setUp() throws Exception {
+        cms = MockCms.createCms();
+    }
+
+    @Test
+    public void fewHitsInAFolderAreReadOneByOne() throws Exception {
+        String folder = MockCms.SITE_ROOT + "/few/";
+        MockCms.stubFolder(cms, folder, createResources(folder, 10));
+
+        assertReadable(resolve(folder, 2));
+
+        verify(cms, never()).readResources(anyString(), any(CmsResourceFilter.class), anyBoolean());
+        verify(cms, times(2)).readResource(anyString(), any(CmsResourceFilter.class));
+    }
+
+    @Test
+    public void smallFoldersAreReadAsAWhole() throws Exception {
+        String folder = MockCms.SITE_ROOT + "/small/";
+        MockCms.stubFolder(cms, folder, createResources(folder, 10));
+
+        assertReadable(resolve(folder, 10));
+        // the size of the folder is known now, it is small enough for a few hits
+        assertReadable(resolve(folder, 3));
+
+        verify(cms, times(2)).readResources("/small/", CmsResourceFilter.IGNORE_EXPIRATION, false);
+        verify(cms, never()).readResource(anyString(), any(CmsResourceFilter.class));
+    }
+
+    @Test
+    public void foldersOfUnknownSizeAreNotReadForAFewHits() throws Exception {
+        String folder = MockCms.SITE_ROOT + "/unknown/";
+        MockCms.stubFolder(cms, folder, createResources(folder, 1000));
+
+        assertReadable(resolve(folder, 3));
+        assertReadable(resolve(folder, 3));
+
+        verify(cms, never()).readResources(anyString(), any(CmsResourceFilter.class), anyBoolean());
+        verify(cms, times(6)).readResource(anyString(), any(CmsResourceFilter.class));
+    }
+
+    @Test
+    public void largeFoldersAreOnlyReadUntilTheirSizeIsKnown() throws Exception {
+        String folder = MockCms.SITE_ROOT + "/large/";
+        MockCms.stubFolder(cms, folder, createResources(folder, 1000));
+
+        assertReadable(resolve(folder, 10));
+        assertReadable(resolve(folder, 10));
+        assertReadable(resolve(folder, 10));
+
+        verify(cms, times(1)).readResources("/large/", CmsResourceFilter.IGNORE_EXPIRATION, false);
+        verify(cms, times(20)).readResource(anyString(), any(CmsResourceFilter.class));
+    }
+
+    @Test
+    public void hitsMissingInTheFolderAreNotReadable() throws Exception {
+        String folder = MockCms.SITE_ROOT + "/restricted/";
+        MockCms.stubFolder(cms, folder, createResources(folder, 2));
+
+        boolean[] permissions = resolve(folder, 10);
+
+        assertTrue(permissions[0]);
+        assertTrue(permissions[1]);
+        for (int i = 2; i < permissions.length; i++) {
+            assertFalse(permissions[i]);
+        }
+    }
+
+    /**
+     * Resolves the permissions of the first documents in a folder.
+     */
+    private boolean[] resolve(String folder, int count) {
+        String[] types = new String[count];
+        String[] paths = new String[count];
+        for (int i = 0; i < count; i++) {
+            types[i] = CmsSearchFieldConfiguration.VFS_DOCUMENT_KEY_PREFIX;
+            paths[i] = folder + "doc" + i + ".html";
+        }
+        return new ReadPermissionResolver(cms, true, null, -1).hasReadPermissions(types, paths);
+    }
+
+    private List<CmsResource> createResources(String folder, int count) {
+        List<CmsResource> resources = new ArrayList<CmsResource>(count);
+        for (int i = 0; i < count; i++) {
+            resources.add(MockCms.createResource(folder + "doc" + i + ".html"));
+        }
+        return resources;
+    }
+
+    private void assertReadable(boolean[] permissions) {
+        for (boolean permission : permissions) {
+            assertTrue(permission);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.synyx.opencms.solr;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReplicaRoutingSolrServerTest {
+
+    private StubSolrServer updateServer;
+    private StubSolrServer first;
+    private StubSolrServer second;
+    private ReplicaRoutingSolrServer router;
+
+    @Before
+    public void setUp() {
+        updateServer = new StubSolrServer(1, 0);
+        first = new StubSolrServer(1, 0);
+        second = new StubSolrServer(1, 0);
+    }
+
+    @After
+    public void tearDown() {
+        if (router != null) {
+            router.shutdown();
+        }
+        HttpClientRegistry.shutdown();
+    }
+
+    @Test
+    public void unreachableReplicaIsEjectedAndTheQueryRetried() throws Exception {
+        router = createRouter(60000);
+        first.setFailure(new ConnectException("Connection refused"));
+
+        query();
+
+        assertEquals(1, first.getRequestCount());
+        assertEquals(1, second.getRequestCount());
+        assertFalse(getStatistics("first").isAlive());
+        assertTrue(getStatistics("second").isAlive());
+    }
+
+    @Test
+    public void readTimeoutIsNeitherEjectedNorRetried() throws Exception {
+        router = createRouter(60000);
+        first.setFailure(new SocketTimeoutException("Read timed out"));
+
+        try {
+            query();
+            fail("read timeout expected");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+
+        assertEquals(0, second.getRequestCount());
+        assertTrue(getStatistics("first").isAlive());
+    }
+
+    @Test
+    public void wrappedReadTimeoutIsNeitherEjectedNorRetried() throws Exception {
+        router = createRouter(60000);
+        first.setFailure(new SolrServerException(new SocketTimeoutException("Read timed out")));
+
+        try {
+            query();
+            fail("read timeout expected");
+        } catch (SolrServerException e) {
+            assertTrue(e.getRootCause() instanceof SocketTimeoutException);
+        }
+
+        assertEquals(0, second.getRequestCount());
+        assertTrue(getStatistics("first").isAlive());
+    }
+
+    @Test
+    public void ejectedReplicaIsReadmittedByTheHealthCheck() throws Exception {
+        router = createRouter(10);
+        first.setFailure(new ConnectException("Connection refused"));
+        query();
+        assertFalse(getStatistics("first").isAlive());
+
+        first.setFailure(null);
+        long timeout = System.currentTimeMillis() + 5000;
+        while (!getStatistics("first").isAlive() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(5);
+        }
+
+        assertTrue(getStatistics("first").isAlive());
+    }
+
+    @Test
+    public void shutdownStopsTheHealthCheck() throws Exception {
+        router = createRouter(10);
+        assertTrue(router.isHealthCheckScheduled());
+
+        router.shutdown();
+
+        assertFalse(router.isHealthCheckScheduled());
+        // running queries can still finish
+        query();
+    }
+
+    @Test
+    public void replacedRouterIsShutDown() {
+        ReplicaRoutingSolrServer previous = getRegisteredRouter("index", 5000);
+        assertSame(previous, getRegisteredRouter("index", 5000));
+
+        ReplicaRoutingSolrServer changed = getRegisteredRouter("index", 1000);
+
+        assertNotSame(previous, changed);
+        assertFalse(previous.isHealthCheckScheduled());
+        assertTrue(changed.isHealthCheckScheduled());
+    }
+
+    @Test
+    public void routerIsKeptWhileAnotherIndexUsesIt() {
+        ReplicaRoutingSolrServer shared = getRegisteredRouter("index", 5000);
+        assertSame(shared, getRegisteredRouter("other", 5000));
+
+        getRegisteredRouter("index", 1000);
+
+        assertTrue(shared.isHealthCheckScheduled());
+    }
+
+    private ReplicaRoutingSolrServer createRouter(long healthCheckIntervalMillis) {
+        Map<String, SolrServer> replicas = new LinkedHashMap<String, SolrServer>();
+        replicas.put("first", first);
+        replicas.put("second", second);
+        return new ReplicaRoutingSolrServer(updateServer, replicas, healthCheckIntervalMillis);
+    }
+
+    private ReplicaRoutingSolrServer getRegisteredRouter(String indexName, long healthCheckIntervalMillis) {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        values.put("url", "http://localhost:8983/solr");
+        values.put("queryUrls", "http://localhost:8984/solr,http://localhost:8985/solr");
+        values.put("healthCheckInterval", String.valueOf(healthCheckIntervalMillis));
+        SolrServer server = new IndexConfiguration(indexName, values).getSolrServer();
+        return (ReplicaRoutingSolrServer) server;
+    }
+
+    private void query() throws SolrServerException, IOException {
+        router.request(new QueryRequest(new SolrQuery("*:*")));
+    }
+
+    private ReplicaRoutingSolrServer.ReplicaStatistics getStatistics(String url) {
+        List<ReplicaRoutingSolrServer.ReplicaStatistics> statistics = router.getStatistics();
+        for (ReplicaRoutingSolrServer.ReplicaStatistics replica : statistics) {
+            if (replica.getUrl().equals(url)) {
+                return replica;
+            }
+        }
+        throw new IllegalArgumentException(url);
+    }
+}
@@ -0,0 +1,126 @@
+package org.synyx.opencms.solr;
+
+import java.util.Date;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.solr.common.SolrDocument;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchCursorTest {
+
+    private static final Sort SORT = new Sort(new SortField[] {
+        new SortField("dateLastModified", SortField.STRING, true),
+        new SortField("title", SortField.STRING)});
+
+    @Test
+    public void startTokenIsTheFirstPage() {
+        SearchCursor cursor = SearchCursor.parse(SearchCursor.START);
+
+        assertTrue(cursor.isStart());
+        assertEquals(0, cursor.getOffset());
+        assertEquals(0, cursor.getSkip());
+        assertNull(cursor.toFilterQuery(SORT));
+        assertEquals(SearchCursor.START, cursor.toToken());
+    }
+
+    @Test
+    public void tokensKeepTheValueTypes() {
+        SolrDocument document = new SolrDocument();
+        document.setField("date", new Date(1300000000000L));
+        document.setField("long", Long.valueOf(42));
+        document.setField("int", Integer.valueOf(-7));
+        document.setField("float", Float.valueOf(1.5f));
+        document.setField("double", Double.valueOf(2.25));
+        document.setField("string", "a, b & \"c\"");
+        document.setField(SolrSearchIndex.FIELD_ID, "id/1");
+        Sort sort = new Sort(new SortField[] {
+            new SortField("date", SortField.STRING),
+            new SortField("long", SortField.LONG),
+            new SortField("int", SortField.INT),
+            new SortField("float", SortField.FLOAT),
+            new SortField("double", SortField.DOUBLE),
+            new SortField("string", SortField.STRING)});
+
+        String token = SearchCursor.after(document, sort, 20).toToken();
+        SearchCursor cursor = SearchCursor.parse(token);
+
+        assertFalse(cursor.isStart());
+        assertEquals(20, cursor.getOffset());
+        assertEquals(token, cursor.toToken());
+        assertEquals(SearchCursor.after(document, sort, 20).toFilterQuery(sort), cursor.toFilterQuery(sort));
+    }
+
+    @Test
+    public void filterQueryMatchesTheDocumentsAfterTheCursor() {
+        SearchCursor cursor = SearchCursor.after(createDocument(new Date(0), "Title \"1\"", "id1"), SORT, 10);
+
+        assertEquals("{!cache=false tag=cursor}"
+                + "(+dateLastModified:{* TO \"1970-01-01T00:00:00.000Z\"})"
+                + " OR (+dateLastModified:\"1970-01-01T00:00:00.000Z\" +title:{\"Title \\\"1\\\"\" TO *})"
+                + " OR (+dateLastModified:\"1970-01-01T00:00:00.000Z\" +title:\"Title \\\"1\\\"\" "
+                + "+id:{\"id1\" TO *})", cursor.toFilterQuery(SORT));
+        assertTrue(SearchCursor.isFilterQuery(cursor.toFilterQuery(SORT)));
+        assertFalse(SearchCursor.isFilterQuery("title:test"));
+    }
+
+    @Test
+    public void hitsWithoutSortValueAreSkipped() {
+        SearchCursor previous = SearchCursor.after(createDocument(new Date(0), "Title", "id1"), SORT, 10);
+
+        assertNull(SearchCursor.after(createDocument(new Date(0), null, "id2"), SORT, 20));
+        SearchCursor cursor = SearchCursor.parse(previous.skip(12, 20).toToken());
+
+        // the position of the previous cursor is kept
+        assertEquals(previous.toFilterQuery(SORT), cursor.toFilterQuery(SORT));
+        assertEquals(12, cursor.getSkip());
+        assertEquals(20, cursor.getOffset());
+        assertEquals(25, cursor.skip(13, 30).getSkip());
+    }
+
+    @Test
+    public void hitsWithoutSortValueOnTheFirstPageAreSkippedFromTheStart() {
+        SearchCursor cursor = SearchCursor.parse(SearchCursor.parse(SearchCursor.START).skip(10, 8).toToken());
+
+        assertFalse(cursor.isStart());
+        assertNull(cursor.toFilterQuery(SORT));
+        assertEquals(10, cursor.getSkip());
+        assertEquals(8, cursor.getOffset());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tokensWithUnknownTypesAreRejected() {
+        SearchCursor.parse("10,x42");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tokensWithoutOffsetAreRejected() {
+        SearchCursor.parse("abc,s42");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tokensWithNegativeSkipAreRejected() {
+        SearchCursor.parse("10~-5,s42");
+    }
+
+    @Test
+    public void relevanceCanNotBePagedWithACursor() {
+        assertFalse(SearchCursor.isSupported(null));
+        assertFalse(SearchCursor.isSupported(Sort.RELEVANCE));
+        assertTrue(SearchCursor.isSupported(SORT));
+    }
+
+    private SolrDocument createDocument(Date date, String title, String id) {
+        SolrDocument document = new SolrDocument();
+        document.setField("dateLastModified", date);
+        if (title != null) {
+            document.setField("title", title);
+        }
+        document.setField(SolrSearchIndex.FIELD_ID, id);
+        return document;
+    }
+}
@@ -0,0 +1,194 @@
+package org.synyx.opencms.solr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private static final int CALLERS = 5;
+
+    private SingleFlight<Object> singleFlight;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        singleFlight = new SingleFlight<Object>();
+        executor = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallersShareOneExecution() throws Exception {
+        final Object result = new Object();
+        BlockingTask task = new BlockingTask(result, null);
+
+        List<Future<Object>> futures = callConcurrently("key", task);
+        task.release.countDown();
+
+        for (Future<Object> future : futures) {
+            assertSame(result, future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, task.executions.get());
+        assertEquals(1, singleFlight.getExecutionCount());
+        assertEquals(CALLERS - 1, singleFlight.getCoalescedCount());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void exceptionsArePassedToAllCallers() throws Exception {
+        IllegalStateException exception = new IllegalStateException("failed");
+        BlockingTask task = new BlockingTask(null, exception);
+
+        List<Future<Object>> futures = callConcurrently("key", task);
+        task.release.countDown();
+
+        for (Future<Object> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("exception expected");
+            } catch (ExecutionException e) {
+                assertSame(exception, e.getCause());
+            }
+        }
+        assertEquals(1, task.executions.get());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void callersExecuteTheTaskThemselvesIfTheFirstCallerIsInterrupted() throws Exception {
+        final Object result = new Object();
+        BlockingTask task = new BlockingTask(result, null);
+
+        List<Future<Object>> futures = callConcurrently("key", task);
+        // interrupts the thread of the first caller, like the timeout of an asynchronous search could
+        futures.get(0).cancel(true);
+        task.release.countDown();
+
+        for (Future<Object> future : futures.subList(1, futures.size())) {
+            assertSame(result, future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(CALLERS, task.executions.get());
+    }
+
+    @Test
+    public void callersStopWaitingAtTheirTimeout() throws Exception {
+        BlockingTask task = new BlockingTask(new Object(), null);
+        Future<Object> first = call("key", task);
+        assertTrue(task.started.await(5, TimeUnit.SECONDS));
+
+        try {
+            singleFlight.execute("key", task, 50);
+            fail("the first caller is still running");
+        } catch (TimeoutException e) {
+            // expected
+        } finally {
+            task.release.countDown();
+        }
+
+        assertSame(task.result, first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, task.executions.get());
+    }
+
+    @Test
+    public void finishedExecutionsAreNotReused() throws Exception {
+        BlockingTask task = new BlockingTask(new Object(), null);
+        task.release.countDown();
+
+        singleFlight.execute("key", task);
+        singleFlight.execute("key", task);
+
+        assertEquals(2, task.executions.get());
+        assertEquals(0, singleFlight.getCoalescedCount());
+    }
+
+    @Test
+    public void differentKeysAreExecutedSeparately() throws Exception {
+        BlockingTask first = new BlockingTask(new Object(), null);
+        BlockingTask second = new BlockingTask(new Object(), null);
+
+        Future<Object> firstResult = call("first", first);
+        Future<Object> secondResult = call("second", second);
+        first.started.await(5, TimeUnit.SECONDS);
+        second.started.await(5, TimeUnit.SECONDS);
+        first.release.countDown();
+        second.release.countDown();
+
+        assertSame(first.result, firstResult.get(5, TimeUnit.SECONDS));
+        assertSame(second.result, secondResult.get(5, TimeUnit.SECONDS));
+        assertEquals(2, singleFlight.getExecutionCount());
+    }
+
+    /**
+     * Starts the callers and returns once all of them are waiting for the execution of the first one.
+     */
+    private List<Future<Object>> callConcurrently(String key, BlockingTask task) throws Exception {
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        futures.add(call(key, task));
+        assertTrue(task.started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < CALLERS; i++) {
+            futures.add(call(key, task));
+        }
+        long timeout = System.currentTimeMillis() + 5000;
+        while (singleFlight.getCoalescedCount() < CALLERS - 1 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(5);
+        }
+        return futures;
+    }
+
+    private Future<Object> call(final String key, final BlockingTask task) {
+        return executor.submit(new Callable<Object>() {
+
+            public Object call() throws Exception {
+                return singleFlight.execute(key, task);
+            }
+        });
+    }
+
+    /**
+     * Returns its result or throws its exception once it is released.
+     */
+    private static class BlockingTask implements Callable<Object> {
+
+        private final Object result;
+        private final Exception exception;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger executions = new AtomicInteger();
+
+        BlockingTask(Object result, Exception exception) {
+            this.result = result;
+            this.exception = exception;
+        }
+
+        public Object call() throws Exception {
+            executions.incrementAndGet();
+            started.countDown();
+            release.await();
+            if (exception != null) {
+                throw exception;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.synyx.opencms.solr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.opencms.file.CmsObject;
+import org.opencms.search.CmsSearchParameters;
+import org.opencms.search.CmsSearchResultList;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs many searches on one index at the same time. As the searches are not serialized, they have to wait for Solr at
+ * the same time.
+ */
+public class SolrSearchIndexConcurrencyTest {
+
+    private static final int SOLR_LATENCY_MILLIS = 20;
+    private static final int SEARCHES_PER_THREAD = 20;
+
+    private StubSolrServer solrServer;
+    private TestSolrSearchIndex index;
+
+    @Before
+    public void setUp() {
+        solrServer = new StubSolrServer(50, SOLR_LATENCY_MILLIS);
+        index = new TestSolrSearchIndex("test");
+        index.initialize(solrServer, "rowSize=50");
+    }
+
+    @Test
+    public void searchesWaitForSolrAtTheSameTime() throws Exception {
+        // the requests fail unless all 8 searches are inside Solr at once, which needs them not to wait for each other
+        solrServer.requireConcurrentRequests(8);
+
+        runSearches(8);
+
+        assertEquals(8, solrServer.getMaxActiveRequests());
+    }
+
+    @Test
+    public void searchesSurviveReinitialization() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread reinitializer = new Thread() {
+
+            @Override
+            public void run() {
+                int i = 0;
+                while (done.getCount() > 0) {
+                    index.initialize(solrServer, "rowSize=50", "permissionCheckThreads=" + (i++ % 3),
+                            "resultCacheSize=" + (i % 2) * 100);
+                }
+            }
+        };
+        reinitializer.start();
+        try {
+            runSearches(8);
+        } finally {
+            done.countDown();
+            reinitializer.join();
+        }
+    }
+
+    @Test
+    public void failedReinitializationKeepsTheCurrentState() throws Exception {
+        index.initialize(solrServer, "rowSize=50", "resultCacheSize=100", "permissionCheckThreads=2");
+        QueryResultCache queryResultCache = index.getQueryResultCache();
+        StoredDocumentLookup documentLookup = index.getDocumentLookup();
+
+        try {
+            index.initialize(solrServer, "rowSize=50", "resultCacheSize=10", "fieldConverter.price=unknown");
+            fail("the field converter does not exist");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        assertSame(queryResultCache, index.getQueryResultCache());
+        assertSame(documentLookup, index.getDocumentLookup());
+        assertEquals(50, index.getSettings().getRowSize());
+        runSearches(2);
+    }
+
+    /**
+     * Runs the searches and checks their results.
+     */
+    private void runSearches(int threadCount) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < threadCount; t++) {
+                final CmsObject cms = MockCms.createCms();
+                futures.add(executor.submit(new Callable<Integer>() {
+
+                    public Integer call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < SEARCHES_PER_THREAD; i++) {
+                            CmsSearchParameters params = new CmsSearchParameters();
+                            params.setQuery("query" + i);
+                            params.setMatchesPerPage(10);
+                            params.setSearchPage(1 + i % 3);
+                            CmsSearchResultList results = index.search(cms, params);
+                            assertEquals(10, results.size());
+                            assertEquals(50, results.getHitCount());
+                        }
+                        return SEARCHES_PER_THREAD;
+                    }
+                }));
+            }
+
+            start.countDown();
+            for (Future<Integer> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.synyx.opencms.solr;
+
+import org.opencms.search.CmsSearchException;
+import org.opencms.search.CmsSearchParameters;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SolrSearchIndexDeadlineTest {
+
+    private static final int DEADLINE_MILLIS = 50;
+
+    private StubSolrServer solrServer;
+    private TestSolrSearchIndex index;
+
+    @Before
+    public void setUp() {
+        solrServer = new StubSolrServer(20, 5000);
+        index = new TestSolrSearchIndex("test");
+    }
+
+    @Test
+    public void searchGivesUpWhenTheDeadlineIsOver() throws Exception {
+        index.initialize(solrServer, "rowSize=20", "queryDeadline=" + DEADLINE_MILLIS);
+
+        assertSearchGivesUp();
+    }
+
+    @Test
+    public void streamedSearchGivesUpWhenTheDeadlineIsOver() throws Exception {
+        index.initialize(solrServer, "rowSize=20", "streamingSearch=true", "queryDeadline=" + DEADLINE_MILLIS);
+
+        assertSearchGivesUp();
+    }
+
+    @Test
+    public void streamedSearchWithinTheDeadlineReturnsTheHits() throws Exception {
+        solrServer.setLatencyMillis(0);
+        index.initialize(solrServer, "rowSize=20", "streamingSearch=true", "queryDeadline=5000");
+
+        assertEquals(10, index.search(MockCms.createCms(), createParameters()).size());
+    }
+
+    private void assertSearchGivesUp() throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            index.search(MockCms.createCms(), createParameters());
+            fail("the search should not wait for Solr");
+        } catch (CmsSearchException e) {
+            // expected
+        } catch (SolrSearchIndexException e) {
+            // expected
+        }
+        long duration = System.currentTimeMillis() - start;
+        assertTrue("search took " + duration + " ms", duration < 2000);
+    }
+
+    private CmsSearchParameters createParameters() {
+        CmsSearchParameters params = new CmsSearchParameters();
+        params.setQuery("query");
+        params.setMatchesPerPage(10);
+        params.setSearchPage(1);
+        return params;
+    }
+}
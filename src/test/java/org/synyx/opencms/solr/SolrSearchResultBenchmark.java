@@ -0,0 +1,137 @@
+package org.synyx.opencms.solr;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.common.SolrDocument;
+import org.opencms.search.fields.CmsSearchField;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the allocation of creating the search results of a 1000-hit result with the field map backed by the
+ * Solr document against copying every stored field into a map of Strings, as the results did before. The documents
+ * look like the ones of an OpenCms site: a large content field, multi-valued categories and keywords, several dates.
+ * A template typically reads the path, the title, the description and the excerpt. Not run by the build, start it
+ * with <code>mvn test -Dtest=SolrSearchResultBenchmark</code>.
+ */
+public class SolrSearchResultBenchmark {
+
+    private static final int HITS = 1000;
+    private static final int ITERATIONS = 50;
+    private static final int CONTENT_LENGTH = 20000;
+
+    @Test
+    public void compareEagerAndLazyFields() {
+        List<SolrDocument> documents = createDocuments();
+        measure("eager copy", new EagerResults(), documents);
+        measure("lazy view ", new LazyResults(), documents);
+    }
+
+    private void measure(String name, Results results, List<SolrDocument> documents) {
+        // warm up
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(HITS, results.render(documents));
+        }
+
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            results.render(documents);
+        }
+        double millis = (System.nanoTime() - start) / 1000000d / ITERATIONS;
+        long allocated = (getAllocatedBytes() - allocatedBefore) / ITERATIONS;
+        System.out.println(String.format("%s: %8.2f ms, %10d bytes allocated per %d hits", name, millis, allocated,
+                HITS));
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static List<SolrDocument> createDocuments() {
+        char[] content = new char[CONTENT_LENGTH];
+        Arrays.fill(content, 'x');
+        List<SolrDocument> documents = new ArrayList<SolrDocument>(HITS);
+        for (int i = 0; i < HITS; i++) {
+            SolrDocument document = new SolrDocument();
+            document.setField(SolrSearchIndex.FIELD_ID, "id" + i);
+            document.setField(CmsSearchField.FIELD_PATH, "/sites/default/folder" + i / 10 + "/page" + i + ".html");
+            document.setField(CmsSearchField.FIELD_TYPE, "xmlpage");
+            document.setField(CmsSearchField.FIELD_TITLE, "Page " + i);
+            document.setField(CmsSearchField.FIELD_DESCRIPTION, "The description of page " + i);
+            document.setField(CmsSearchField.FIELD_CONTENT, new String(content));
+            document.setField(CmsSearchField.FIELD_CATEGORY, Arrays.asList("news", "events", "folder" + i / 10,
+                    "category" + i % 7, "category" + i % 13));
+            document.setField(CmsSearchField.FIELD_KEYWORDS, Arrays.asList("keyword" + i % 5, "keyword" + i % 11,
+                    "keyword" + i % 17));
+            document.setField(CmsSearchField.FIELD_DATE_CREATED, new Date(1300000000000L + i));
+            document.setField(CmsSearchField.FIELD_DATE_LASTMODIFIED, new Date(1300000000000L + i * 2));
+            document.setField("dateReleased", new Date(1300000000000L));
+            document.setField("dateExpired", new Date(1400000000000L));
+            document.setField("locale", "en");
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    private abstract static class Results {
+
+        /**
+         * Creates the results and reads the fields a template usually shows.
+         * @return the number of results
+         */
+        int render(List<SolrDocument> documents) {
+            int count = 0;
+            for (SolrDocument document : documents) {
+                if (renderHit(document)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Creates the result for a document and reads its fields.
+         * @return true if the title and the description have been found
+         */
+        abstract boolean renderHit(SolrDocument document);
+    }
+
+    /**
+     * Copies all fields like the results did before they were backed by the document.
+     */
+    private static class EagerResults extends Results {
+
+        boolean renderHit(SolrDocument document) {
+            Map<String, String> fields = new HashMap<String, String>();
+            for (String fieldName : document.getFieldNames()) {
+                String value = document.getFieldValue(fieldName).toString();
+                if (value.length() > 0 && !CmsSearchField.FIELD_PATH.equals(fieldName)
+                        && !CmsSearchField.FIELD_DATE_CREATED.equals(fieldName)
+                        && !CmsSearchField.FIELD_DATE_LASTMODIFIED.equals(fieldName)) {
+                    fields.put(fieldName, value);
+                }
+            }
+            return document.getFieldValue(CmsSearchField.FIELD_PATH) != null
+                    && fields.get(CmsSearchField.FIELD_TITLE) != null
+                    && fields.get(CmsSearchField.FIELD_DESCRIPTION) != null;
+        }
+    }
+
+    private static class LazyResults extends Results {
+
+        boolean renderHit(SolrDocument document) {
+            SolrSearchResult result = new SolrSearchResult(100, document, "excerpt");
+            return result.getPath() != null && result.getExcerpt() != null
+                    && result.getField(CmsSearchField.FIELD_TITLE) != null
+                    && result.getField(CmsSearchField.FIELD_DESCRIPTION) != null;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.synyx.opencms.solr;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.common.SolrDocument;
+import org.opencms.search.fields.CmsSearchField;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class SolrSearchResultTest {
+
+    @Test
+    public void excerptIsCreatedFromTheHighlighting() {
+        SolrSearchResult result = new SolrSearchResult(80, createDocument(), createHighlights());
+
+        assertEquals("a <em>b</em> c", result.getExcerpt());
+    }
+
+    @Test
+    public void copiesAreIndependentOfTheOriginal() {
+        SolrSearchResult result = new SolrSearchResult(80, createDocument(), createHighlights());
+
+        SolrSearchResult copy = new SolrSearchResult(result);
+        assertEquals(80, copy.getScore());
+        assertEquals("/sites/default/index.html", copy.getPath());
+        assertEquals("a <em>b</em> c", copy.getExcerpt());
+        assertEquals(Arrays.asList("one", "two"), copy.getValues("category"));
+
+        ((List<?>) copy.getFieldValue("category")).clear();
+        assertEquals(Arrays.asList("one", "two"), result.getValues("category"));
+        assertNotSame(result.getFieldValue("category"), copy.getFieldValue("category"));
+        assertEquals("a <em>b</em> c", result.getExcerpt());
+    }
+
+    @Test
+    public void copiesKeepTheExcerpt() {
+        SolrSearchResult result = new SolrSearchResult(80, createDocument(), "excerpt");
+
+        assertEquals("excerpt", new SolrSearchResult(result).getExcerpt());
+        assertNull(new SolrSearchResult(result).getFieldValue("unknown"));
+    }
+
+    private SolrDocument createDocument() {
+        SolrDocument document = new SolrDocument();
+        document.setField(CmsSearchField.FIELD_PATH, "/sites/default/index.html");
+        document.setField("category", Arrays.asList("one", "two"));
+        return document;
+    }
+
+    private Map<String, List<String>> createHighlights() {
+        return Collections.singletonMap("content", Arrays.asList("a <em>b</em>", " c"));
+    }
+}
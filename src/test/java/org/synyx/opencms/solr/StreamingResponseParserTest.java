@@ -0,0 +1,107 @@
+package org.synyx.opencms.solr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingResponseParserTest {
+
+    @Test
+    public void documentsArePassedToTheCallbackInOrder() throws IOException {
+        RecordingCallback callback = new RecordingCallback();
+        NamedList<Object> response = new StreamingResponseParser(callback).processResponse(
+                new ByteArrayInputStream(createResponse(100, 250)), null);
+
+        assertEquals(250L, callback.numFound);
+        assertEquals(0L, callback.start);
+        assertEquals(100, callback.documents.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("/sites/default/doc" + i + ".html", callback.documents.get(i).getFieldValue("path"));
+        }
+
+        QueryResponse queryResponse = new QueryResponse(response, null);
+        assertEquals(250L, queryResponse.getResults().getNumFound());
+        assertTrue(queryResponse.getResults().isEmpty());
+    }
+
+    @Test
+    public void smallResultsAreRead() throws IOException {
+        // less than 31 documents are encoded without the additional size
+        RecordingCallback callback = new RecordingCallback();
+        new StreamingResponseParser(callback).processResponse(new ByteArrayInputStream(createResponse(3, 3)), null);
+
+        assertEquals(3, callback.documents.size());
+        assertNull(callback.maxScore);
+    }
+
+    @Test
+    public void emptyResultsAreRead() throws IOException {
+        RecordingCallback callback = new RecordingCallback();
+        new StreamingResponseParser(callback).processResponse(new ByteArrayInputStream(createResponse(0, 0)), null);
+
+        assertEquals(0L, callback.numFound);
+        assertTrue(callback.documents.isEmpty());
+    }
+
+    /**
+     * Creates a javabin response like the one Solr writes for a query.
+     */
+    static byte[] createResponse(int documentCount, long numFound) throws IOException {
+        return createResponse(documentCount, numFound, "some content");
+    }
+
+    static byte[] createResponse(int documentCount, long numFound, String content) throws IOException {
+        SolrDocumentList documents = new SolrDocumentList();
+        documents.setNumFound(numFound);
+        documents.setStart(0);
+        for (int i = 0; i < documentCount; i++) {
+            SolrDocument document = new SolrDocument();
+            document.setField("path", "/sites/default/doc" + i + ".html");
+            document.setField("type", "xmlpage");
+            document.setField("title", "Document " + i);
+            document.setField("content", content);
+            documents.add(document);
+        }
+        NamedList<Object> header = new SimpleOrderedMap<Object>();
+        header.add("status", 0);
+        header.add("QTime", 1);
+        NamedList<Object> response = new NamedList<Object>();
+        response.add("responseHeader", header);
+        response.add("response", documents);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JavaBinCodec().marshal(response, out);
+        return out.toByteArray();
+    }
+
+    private static class RecordingCallback implements StreamingResponseParser.Callback {
+
+        private long numFound = -1;
+        private long start = -1;
+        private Float maxScore;
+        private final List<SolrDocument> documents = new ArrayList<SolrDocument>();
+
+        public void streamDocListInfo(long numFound, long start, Float maxScore) {
+            this.numFound = numFound;
+            this.start = start;
+            this.maxScore = maxScore;
+        }
+
+        public void streamSolrDocument(SolrDocument document) {
+            documents.add(document);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.synyx.opencms.solr;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares reading a whole response with streaming it through the {@link StreamingResponseParser} when only the
+ * first page of 10 hits is needed. Prints the time, the bytes allocated and the bytes still referenced after
+ * reading one response, for several row sizes. Not run by the build, start it with
+ * <code>mvn test -Dtest=StreamingSearchBenchmark</code>.
+ */
+public class StreamingSearchBenchmark {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int ITERATIONS = 50;
+
+    @Test
+    public void compareFullAndStreamingParsing() throws IOException {
+        char[] content = new char[10000];
+        Arrays.fill(content, 'x');
+        for (int rowSize : new int[] {100, 1000, 5000}) {
+            byte[] response = StreamingResponseParserTest.createResponse(rowSize, rowSize, new String(content));
+            measure("full      rows=" + rowSize, new FullRead(response));
+            measure("streaming rows=" + rowSize, new StreamingRead(response));
+        }
+    }
+
+    private void measure(String name, Read read) throws IOException {
+        // warm up
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(PAGE_SIZE, read.run().size());
+        }
+
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            read.run();
+        }
+        double millis = (System.nanoTime() - start) / 1000000d / ITERATIONS;
+        long allocated = (getAllocatedBytes() - allocatedBefore) / ITERATIONS;
+
+        long usedBefore = getUsedHeap();
+        Object retained = read.retained();
+        long used = getUsedHeap() - usedBefore;
+        System.out.println(String.format("%s: %8.2f ms, %10d bytes allocated, %10d bytes retained", name, millis,
+                allocated, used));
+        if (retained == null) {
+            throw new IllegalStateException();
+        }
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long getUsedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private abstract static class Read {
+
+        protected final byte[] response;
+
+        Read(byte[] response) {
+            this.response = response;
+        }
+
+        /**
+         * Reads the response and returns the documents of the page.
+         */
+        abstract List<SolrDocument> run() throws IOException;
+
+        /**
+         * Reads the response and returns everything the search keeps until the page is rendered.
+         */
+        abstract Object retained() throws IOException;
+    }
+
+    private static class FullRead extends Read {
+
+        FullRead(byte[] response) {
+            super(response);
+        }
+
+        List<SolrDocument> run() throws IOException {
+            return ((SolrDocumentList) retained()).subList(0, PAGE_SIZE);
+        }
+
+        Object retained() throws IOException {
+            QueryResponse queryResponse = new QueryResponse(new BinaryResponseParser().processResponse(
+                    new ByteArrayInputStream(response), null), null);
+            return queryResponse.getResults();
+        }
+    }
+
+    private static class StreamingRead extends Read {
+
+        StreamingRead(byte[] response) {
+            super(response);
+        }
+
+        List<SolrDocument> run() throws IOException {
+            return ((PageCallback) retained()).documents;
+        }
+
+        Object retained() throws IOException {
+            PageCallback callback = new PageCallback();
+            new StreamingResponseParser(callback).processResponse(new ByteArrayInputStream(response), null);
+            return callback;
+        }
+    }
+
+    /**
+     * Keeps the documents of the first page, like the {@link StreamingHitCollector} does when all hits are readable.
+     */
+    private static class PageCallback implements StreamingResponseParser.Callback {
+
+        private final List<SolrDocument> documents = new ArrayList<SolrDocument>(PAGE_SIZE);
+
+        public void streamDocListInfo(long numFound, long start, Float maxScore) {
+        }
+
+        public void streamSolrDocument(SolrDocument document) {
+            if (documents.size() < PAGE_SIZE) {
+                documents.add(document);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.synyx.opencms.solr;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.opencms.search.fields.CmsSearchField;
+import org.opencms.search.fields.CmsSearchFieldConfiguration;
+
+/**
+ * An in-process stand-in for a Solr server. Every request waits for the configured latency and returns the same
+ * documents, or fails if a failure has been set.
+ */
+class StubSolrServer extends SolrServer {
+
+    private final int documentCount;
+    private final String idPrefix;
+    private final float[] scores;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger maxActiveRequests = new AtomicInteger();
+    private volatile CountDownLatch concurrentRequests;
+    private volatile long latencyMillis;
+    private volatile Exception failure;
+    private volatile SolrParams lastParams;
+
+    /**
+     * Creates a new server.
+     * @param documentCount the number of documents every response contains
+     * @param latencyMillis the time every request takes
+     */
+    StubSolrServer(int documentCount, long latencyMillis) {
+        this("doc", documentCount, null, latencyMillis);
+    }
+
+    /**
+     * Creates a new server whose documents have the given scores. The scores are also stored in the field
+     * <code>value</code> of the documents.
+     * @param idPrefix the prefix of the document ids, which end with the position of the document
+     * @param scores the scores of the documents in the order Solr returns them
+     * @param latencyMillis the time every request takes
+     */
+    StubSolrServer(String idPrefix, float[] scores, long latencyMillis) {
+        this(idPrefix, scores.length, scores, latencyMillis);
+    }
+
+    private StubSolrServer(String idPrefix, int documentCount, float[] scores, long latencyMillis) {
+        this.idPrefix = idPrefix;
+        this.documentCount = documentCount;
+        this.scores = scores;
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException {
+        requestCount.incrementAndGet();
+        lastParams = request.getParams();
+        int active = activeRequests.incrementAndGet();
+        try {
+            int max = maxActiveRequests.get();
+            while (active > max && !maxActiveRequests.compareAndSet(max, active)) {
+                max = maxActiveRequests.get();
+            }
+            awaitConcurrentRequests();
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolrServerException(e);
+        } finally {
+            activeRequests.decrementAndGet();
+        }
+        Exception currentFailure = failure;
+        if (currentFailure instanceof IOException) {
+            throw (IOException) currentFailure;
+        }
+        if (currentFailure instanceof SolrServerException) {
+            throw (SolrServerException) currentFailure;
+        }
+        if (currentFailure instanceof RuntimeException) {
+            throw (RuntimeException) currentFailure;
+        }
+        return createResponse();
+    }
+
+    private void awaitConcurrentRequests() throws InterruptedException, SolrServerException {
+        CountDownLatch latch = concurrentRequests;
+        if (latch != null) {
+            latch.countDown();
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new SolrServerException(latch.getCount() + " requests did not arrive at the same time");
+            }
+        }
+    }
+
+    /**
+     * Lets the next requests wait until the given number of requests is inside the server at the same time. The
+     * requests fail if they don't arrive within 10 seconds, e.g. because the searches wait for each other.
+     * @param requests the number of requests that have to run at the same time
+     */
+    void requireConcurrentRequests(int requests) {
+        this.concurrentRequests = new CountDownLatch(requests);
+    }
+
+    /**
+     * Returns the largest number of requests that were inside the server at the same time.
+     */
+    int getMaxActiveRequests() {
+        return maxActiveRequests.get();
+    }
+
+    void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Lets all further requests fail.
+     * @param failure the exception to throw or null to answer requests again
+     */
+    void setFailure(Exception failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * Returns the parameters of the last request.
+     */
+    SolrParams getLastParams() {
+        return lastParams;
+    }
+
+    int getRequestCount() {
+        return requestCount.get();
+    }
+
+    private NamedList<Object> createResponse() {
+        SolrDocumentList documents = new SolrDocumentList();
+        documents.setNumFound(documentCount);
+        documents.setStart(0);
+        documents.setMaxScore(scores != null && scores.length > 0 ? scores[0] : 1f);
+        for (int i = 0; i < documentCount; i++) {
+            SolrDocument document = new SolrDocument();
+            document.setField(SolrSearchIndex.FIELD_ID, idPrefix + i);
+            document.setField(CmsSearchField.FIELD_PATH, "/sites/default/folder" + i + "/index.html");
+            document.setField(CmsSearchField.FIELD_TYPE, CmsSearchFieldConfiguration.VFS_DOCUMENT_KEY_PREFIX);
+            if (scores != null) {
+                document.setField(SolrSearchIndex.FIELD_SCORE, scores[i]);
+                document.setField("value", scores[i]);
+            } else {
+                document.setField(SolrSearchIndex.FIELD_SCORE, 1f - i / (float) (documentCount + 1));
+            }
+            documents.add(document);
+        }
+        NamedList<Object> header = new SimpleOrderedMap<Object>();
+        header.add("status", 0);
+        header.add("QTime", (int) latencyMillis);
+        NamedList<Object> response = new NamedList<Object>();
+        response.add("responseHeader", header);
+        response.add("response", documents);
+        return response;
+    }
+}
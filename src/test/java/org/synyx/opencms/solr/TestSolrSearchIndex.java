@@ -0,0 +1,82 @@
+package org.synyx.opencms.solr;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
+import org.opencms.file.CmsObject;
+import org.opencms.main.CmsException;
+import org.opencms.search.CmsSearchParameters;
+
+/**
+ * An index that sends the query string unchanged and can be initialized without OpenCms, for a Solr server that is
+ * created by the test.
+ */
+class TestSolrSearchIndex extends SolrSearchIndex {
+
+    private final String name;
+    private volatile long currentTime = -1;
+
+    TestSolrSearchIndex(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Initializes the index with the given values.
+     * @param solrServer the server all requests are sent to
+     * @param configuration the values of the index, e.g. <code>rowSize=100</code>
+     */
+    void initialize(SolrServer solrServer, String... configuration) {
+        Map<String, String> configurationMap = new HashMap<String, String>();
+        for (String entry : configuration) {
+            int separator = entry.indexOf('=');
+            configurationMap.put(entry.substring(0, separator), entry.substring(separator + 1));
+        }
+        initialize(new IndexConfiguration(configurationMap, solrServer));
+    }
+
+    /**
+     * Lets the availability filter of the searches use the given time instead of the current one.
+     * @param currentTime the time in milliseconds or -1 for the current time
+     */
+    void setCurrentTime(long currentTime) {
+        this.currentTime = currentTime;
+    }
+
+    @Override
+    long currentTimeMillis() {
+        return currentTime != -1 ? currentTime : super.currentTimeMillis();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getProject() {
+        return MockCms.PROJECT_NAME;
+    }
+
+    @Override
+    public boolean isCheckingPermissions() {
+        return true;
+    }
+
+    @Override
+    ReadPermissionResolver createPermissionResolver(CmsObject searchCms, SearchSettings settings) {
+        return new ReadPermissionResolver(searchCms, isCheckingPermissions(), null, -1) {
+
+            @Override
+            ReadPermissionResolver copy() throws CmsException {
+                // OpenCms is not running, the worker threads get a new mock
+                return new ReadPermissionResolver(MockCms.createCms(), isCheckingPermissions(), null, -1);
+            }
+        };
+    }
+
+    @Override
+    public void addQueryToSolrQuery(SolrQuery solrQuery, CmsSearchParameters params) {
+        solrQuery.setQuery(params.getQuery());
+    }
+}
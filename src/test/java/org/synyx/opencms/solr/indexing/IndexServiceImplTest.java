@@ -0,0 +1,120 @@
+package org.synyx.opencms.solr.indexing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+import org.synyx.opencms.solr.IndexConfiguration;
+
+import static org.junit.Assert.assertEquals;
+
+public class IndexServiceImplTest {
+
+    private final DocumentServer solrServer = new DocumentServer("a", "b", "c");
+    private final IndexServiceImpl indexService = new IndexServiceImpl(
+            new IndexConfiguration(new HashMap<String, String>(), solrServer));
+
+    @Test
+    public void documentsAreUpdatedWithTheirStoredFields() {
+        indexService.addUpdateDocuments(Arrays.asList(createUpdate("a"), createUpdate("b"), createUpdate("x")));
+
+        assertEquals(Arrays.asList("a", "b"), solrServer.getAddedIds());
+        assertEquals("updated", solrServer.added.get(0).getFieldValue("title"));
+        assertEquals("content of a", solrServer.added.get(0).getFieldValue("content"));
+    }
+
+    @Test
+    public void documentsAreFetchedOneByOneIfTheBatchFails() {
+        solrServer.failBatches = true;
+
+        indexService.addUpdateDocuments(Arrays.asList(createUpdate("a"), createUpdate("b"), createUpdate("c")));
+
+        assertEquals(Arrays.asList("a", "b", "c"), solrServer.getAddedIds());
+    }
+
+    @Test
+    public void onlyTheDocumentsThatCantBeFetchedAreSkipped() {
+        solrServer.failBatches = true;
+        solrServer.brokenId = "b";
+
+        indexService.addUpdateDocuments(Arrays.asList(createUpdate("a"), createUpdate("b"), createUpdate("c")));
+
+        assertEquals(Arrays.asList("a", "c"), solrServer.getAddedIds());
+    }
+
+    private UpdateDocument createUpdate(String id) {
+        UpdateDocument update = new UpdateDocument(id);
+        update.addField("title", "updated");
+        return update;
+    }
+
+    /**
+     * Answers queries for single ids with the stored document and keeps the documents that are added.
+     */
+    private static class DocumentServer extends SolrServer {
+
+        private final List<String> ids;
+        private final List<SolrInputDocument> added = new ArrayList<SolrInputDocument>();
+        private volatile boolean failBatches;
+        private volatile String brokenId;
+
+        DocumentServer(String... ids) {
+            this.ids = Arrays.asList(ids);
+        }
+
+        @Override
+        public NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException {
+            NamedList<Object> response = new NamedList<Object>();
+            if (request instanceof UpdateRequest) {
+                List<SolrInputDocument> documents = ((UpdateRequest) request).getDocuments();
+                if (documents != null) {
+                    added.addAll(documents);
+                }
+                return response;
+            }
+
+            // the lookup queries id:(a OR b OR c)
+            String query = request.getParams().get(CommonParams.Q);
+            List<String> queriedIds = Arrays.asList(query.substring(query.indexOf('(') + 1, query.length() - 1)
+                    .split(" OR "));
+            if (queriedIds.size() > 1 && failBatches) {
+                throw new SolrServerException("too many boolean clauses");
+            }
+            if (queriedIds.contains(brokenId)) {
+                throw new SolrServerException("can't read " + brokenId);
+            }
+            SolrDocumentList documents = new SolrDocumentList();
+            for (String id : queriedIds) {
+                if (ids.contains(id)) {
+                    SolrDocument document = new SolrDocument();
+                    document.setField("id", id);
+                    document.setField("title", "title of " + id);
+                    document.setField("content", "content of " + id);
+                    documents.add(document);
+                }
+            }
+            documents.setNumFound(documents.size());
+            response.add("response", documents);
+            return response;
+        }
+
+        List<String> getAddedIds() {
+            List<String> addedIds = new ArrayList<String>();
+            for (SolrInputDocument document : added) {
+                addedIds.add((String) document.getFieldValue("id"));
+            }
+            return addedIds;
+        }
+    }
+}